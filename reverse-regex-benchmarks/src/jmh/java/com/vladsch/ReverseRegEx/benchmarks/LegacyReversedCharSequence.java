@@ -0,0 +1,51 @@
+package com.vladsch.ReverseRegEx.benchmarks;
+
+/**
+ * Copy of the single ReversedCharSequence wrapper used before the String, char[] and CharBuffer specializations,
+ * bounds checked in charAt and again in mapIndex with a virtual getEndIndex() call
+ */
+final class LegacyReversedCharSequence implements CharSequence {
+    private final CharSequence myChars;
+    private final int myStartIndex;
+    private final int myEndIndex;
+
+    LegacyReversedCharSequence(CharSequence chars, int start, int end) {
+        myChars = chars;
+        myStartIndex = start;
+        myEndIndex = end;
+    }
+
+    int getEndIndex() {
+        return myEndIndex;
+    }
+
+    int mapIndex(final int index) {
+        final int end = getEndIndex();
+        if (index < 0 || index >= end) throw new IndexOutOfBoundsException("" + index + " not in [0," + end + ")");
+        return end - 1 - index;
+    }
+
+    @Override
+    public int length() {
+        return myEndIndex - myStartIndex;
+    }
+
+    @Override
+    public char charAt(int index) {
+        if (index < 0 || index >= length()) throw new IndexOutOfBoundsException("" + index + " not in [0," + length() + ")");
+        return myChars.charAt(mapIndex(index));
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        if (start < 0 || end > length())
+            throw new IndexOutOfBoundsException("[" + start + ", " + end + ") not in [0," + length() + "]");
+        final int startIndex = myEndIndex - end;
+        return new LegacyReversedCharSequence(myChars, startIndex, startIndex + end - start);
+    }
+
+    @Override
+    public String toString() {
+        return new StringBuilder(length()).append(this).toString();
+    }
+}
@@ -0,0 +1,52 @@
+package com.vladsch.ReverseRegEx.benchmarks;
+
+import com.vladsch.ReverseRegEx.util.ReverseMatcher;
+import com.vladsch.ReverseRegEx.util.ReversePattern;
+import com.vladsch.ReverseRegEx.util.ReversedCharSequence;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Cost of creating a reverse matcher for a pattern, with and without re-compiling the reversed java.util.regex.Pattern
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ReverseMatcherBenchmark {
+    @Param({ "\\b(id)\\b\\s*=\\s*(.+?)\\s*;$", "([a-zA-z_][a-zA-z_0-9]*)\\s*=\\s*\\1\\.([a-zA-z_][a-zA-z_0-9]*)\\(\\)" })
+    public String regEx;
+
+    private ReversePattern reversePattern;
+    private String text;
+
+    @Setup
+    public void setup() {
+        reversePattern = ReversePattern.compile(regEx);
+        reversePattern.compiled();
+        text = "  abc = abc.trim()\n  def = def.trimEnd()\n  test.id  = def;\n";
+    }
+
+    /**
+     * what every matcher used to cost, compiling the reversed pattern for each matcher
+     */
+    @Benchmark
+    public Matcher matcherRecompiled() {
+        return Pattern.compile(reversePattern.pattern(), reversePattern.flags()).matcher(ReversedCharSequence.of(text));
+    }
+
+    @Benchmark
+    public ReverseMatcher matcher() {
+        return reversePattern.matcher(text);
+    }
+
+    @Benchmark
+    public boolean matcherFind() {
+        return reversePattern.matcher(text).find();
+    }
+}
@@ -0,0 +1,30 @@
+package com.vladsch.ReverseRegEx.benchmarks;
+
+import com.vladsch.ReverseRegEx.util.ReversePattern;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of parsing and reversing a pattern, run with -prof gc to see allocation per reversal
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ReversePatternCompileBenchmark {
+    @Param({
+            "\\b(id)\\b\\s*=\\s*(.+?)\\s*;$",
+            "([a-zA-z_][a-zA-z_0-9]*)\\s*=\\s*\\1\\.([a-zA-z_][a-zA-z_0-9]*)\\(\\)",
+            "(a(b))(c)\\Q(a(b))(c)\\3\\2\\1\\E\\3\\2\\1",
+            "^(1(abc)\\2)(def)\\3\\2\\1(?=xyz)",
+    })
+    public String regEx;
+
+    @Benchmark
+    public String reverse() {
+        return ReversePattern.compile(regEx).pattern();
+    }
+}
@@ -0,0 +1,76 @@
+package com.vladsch.ReverseRegEx.benchmarks;
+
+import com.vladsch.ReverseRegEx.util.ReversePattern;
+import com.vladsch.ReverseRegEx.util.ReversedCharSequence;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.CharBuffer;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+
+/**
+ * Reversed char access by input type, legacy is the single wrapper used before the specialized sequences
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ReversedCharSequenceBenchmark {
+    @Param({ "legacy", "string", "chars", "charBuffer", "wrapped" })
+    public String input;
+
+    private CharSequence reversed;
+    private Matcher matcher;
+
+    @Setup
+    public void setup() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            sb.append("  abc").append(i).append(" = abc.trim()\n  test.id  = def").append(i).append(";\n");
+        }
+        String text = sb.toString();
+
+        switch (input) {
+            case "legacy":
+                reversed = new LegacyReversedCharSequence(text, 0, text.length());
+                break;
+            case "string":
+                reversed = ReversedCharSequence.of(text);
+                break;
+            case "chars":
+                reversed = ReversedCharSequence.of(text.toCharArray());
+                break;
+            case "charBuffer":
+                reversed = ReversedCharSequence.of(CharBuffer.wrap(text.toCharArray()));
+                break;
+            case "wrapped":
+                reversed = ReversedCharSequence.of(sb);
+                break;
+            default:
+                throw new IllegalStateException("Unknown input " + input);
+        }
+
+        matcher = ReversePattern.compile("(?m)\\b(id)\\b\\s*=\\s*(.+?)\\s*;$").compiled().matcher(reversed);
+    }
+
+    @Benchmark
+    public int charAt() {
+        CharSequence chars = reversed;
+        int sum = 0;
+        int iMax = chars.length();
+        for (int i = 0; i < iMax; i++) {
+            sum += chars.charAt(i);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public int findAll() {
+        matcher.reset();
+        int count = 0;
+        while (matcher.find()) count++;
+        return count;
+    }
+}
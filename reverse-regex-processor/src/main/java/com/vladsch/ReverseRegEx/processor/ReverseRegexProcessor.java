@@ -0,0 +1,207 @@
+package com.vladsch.ReverseRegEx.processor;
+
+import com.vladsch.ReverseRegEx.util.ReversePattern;
+import com.vladsch.ReverseRegEx.util.ReverseRegex;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.Filer;
+import javax.annotation.processing.Messager;
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Reverses {@link ReverseRegex} annotated String constants at compile time
+ * <p>
+ * For every class with annotated constants generates a ClassName_ReverseRegex class in the same package,
+ * nested classes use Outer_Inner_ReverseRegex, with a public static final {@link ReversePattern} per constant
+ * created by {@link ReversePattern#precompiled} from the reversed pattern, group maps and named groups.
+ */
+@SupportedAnnotationTypes("com.vladsch.ReverseRegEx.util.ReverseRegex")
+public class ReverseRegexProcessor extends AbstractProcessor {
+    public static final String GENERATED_SUFFIX = "_ReverseRegex";
+
+    private Messager myMessager;
+    private Filer myFiler;
+
+    @Override
+    public synchronized void init(final ProcessingEnvironment processingEnv) {
+        super.init(processingEnv);
+        myMessager = processingEnv.getMessager();
+        myFiler = processingEnv.getFiler();
+    }
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(final Set<? extends TypeElement> annotations, final RoundEnvironment roundEnv) {
+        Map<TypeElement, List<VariableElement>> classFields = new LinkedHashMap<>();
+
+        for (Element element : roundEnv.getElementsAnnotatedWith(ReverseRegex.class)) {
+            if (element.getKind() != ElementKind.FIELD) continue;
+
+            VariableElement field = (VariableElement) element;
+            if (!(field.getConstantValue() instanceof String)) {
+                myMessager.printMessage(Diagnostic.Kind.ERROR, "@ReverseRegex field must be a compile time constant String", field);
+                continue;
+            }
+
+            classFields.computeIfAbsent((TypeElement) field.getEnclosingElement(), k -> new ArrayList<>()).add(field);
+        }
+
+        for (Map.Entry<TypeElement, List<VariableElement>> entry : classFields.entrySet()) {
+            generate(entry.getKey(), entry.getValue());
+        }
+        return true;
+    }
+
+    private void generate(final TypeElement typeElement, final List<VariableElement> fields) {
+        String packageName = packageOf(typeElement).getQualifiedName().toString();
+        String className = generatedSimpleName(typeElement);
+
+        StringBuilder sb = new StringBuilder();
+        if (!packageName.isEmpty()) {
+            sb.append("package ").append(packageName).append(";\n\n");
+        }
+
+        sb.append("import com.vladsch.ReverseRegEx.util.ReversePattern;\n\n");
+        sb.append("/**\n * Generated by ").append(ReverseRegexProcessor.class.getName()).append(" from ").append(typeElement.getQualifiedName()).append(", do not edit\n */\n");
+        sb.append("public final class ").append(className).append(" {\n");
+        sb.append("    private ").append(className).append("() {\n    }\n");
+
+        boolean hadError = false;
+        for (VariableElement field : fields) {
+            ReverseRegex annotation = field.getAnnotation(ReverseRegex.class);
+            String name = annotation.name().isEmpty() ? field.getSimpleName().toString() : annotation.name();
+            String pattern = (String) field.getConstantValue();
+
+            if (!SourceVersion.isName(name)) {
+                myMessager.printMessage(Diagnostic.Kind.ERROR, "@ReverseRegex name \"" + name + "\" is not a valid Java identifier", field);
+                hadError = true;
+                continue;
+            }
+
+            ReversePattern regEx;
+            try {
+                regEx = ReversePattern.compile(pattern, annotation.flags());
+            } catch (PatternSyntaxException e) {
+                myMessager.printMessage(Diagnostic.Kind.ERROR, "@ReverseRegex invalid pattern: " + e.getMessage(), field);
+                hadError = true;
+                continue;
+            }
+
+            sb.append("\n    public static final ReversePattern ").append(name).append(" = ReversePattern.precompiled(\n");
+            sb.append("            ").append(javaString(regEx.originalPattern())).append(",\n");
+            sb.append("            ").append(regEx.flags()).append(",\n");
+            sb.append("            ").append(javaString(regEx.pattern())).append(",\n");
+
+            sb.append("            new int[] {");
+            for (int i = 1; i < regEx.getCapturingGroupCount(); i++) {
+                sb.append(i > 1 ? ", " : " ").append(regEx.getReversedGroupIndex(i));
+            }
+            sb.append(" },\n");
+
+            Map<String, Integer> namedGroups = regEx.namedGroups();
+            sb.append("            new String[] {");
+            String sep = " ";
+            for (String groupName : namedGroups.keySet()) {
+                sb.append(sep).append(javaString(groupName));
+                sep = ", ";
+            }
+            sb.append(" },\n");
+
+            sb.append("            new int[] {");
+            sep = " ";
+            for (Integer groupNumber : namedGroups.values()) {
+                sb.append(sep).append(groupNumber);
+                sep = ", ";
+            }
+            sb.append(" });\n");
+        }
+
+        sb.append("}\n");
+
+        if (hadError) return;
+
+        String qualifiedName = packageName.isEmpty() ? className : packageName + "." + className;
+        try {
+            JavaFileObject sourceFile = myFiler.createSourceFile(qualifiedName, typeElement);
+            try (Writer writer = sourceFile.openWriter()) {
+                writer.write(sb.toString());
+            }
+        } catch (IOException e) {
+            myMessager.printMessage(Diagnostic.Kind.ERROR, "Failed to write " + qualifiedName + ": " + e.getMessage(), typeElement);
+        }
+    }
+
+    private static PackageElement packageOf(Element element) {
+        while (!(element instanceof PackageElement)) {
+            element = element.getEnclosingElement();
+        }
+        return (PackageElement) element;
+    }
+
+    static String generatedSimpleName(final TypeElement typeElement) {
+        StringBuilder sb = new StringBuilder(typeElement.getSimpleName());
+        Element enclosing = typeElement.getEnclosingElement();
+        while (enclosing instanceof TypeElement) {
+            sb.insert(0, '_').insert(0, enclosing.getSimpleName());
+            enclosing = enclosing.getEnclosingElement();
+        }
+        return sb.append(GENERATED_SUFFIX).toString();
+    }
+
+    static String javaString(final String s) {
+        StringBuilder sb = new StringBuilder(s.length() + 2);
+        sb.append('"');
+        int iMax = s.length();
+        for (int i = 0; i < iMax; i++) {
+            char c = s.charAt(i);
+            switch (c) {
+                case '"':
+                    sb.append("\\\"");
+                    break;
+                case '\\':
+                    sb.append("\\\\");
+                    break;
+                case '\n':
+                    sb.append("\\n");
+                    break;
+                case '\r':
+                    sb.append("\\r");
+                    break;
+                case '\t':
+                    sb.append("\\t");
+                    break;
+                default:
+                    if (c < ' ' || c > '~') {
+                        sb.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        sb.append(c);
+                    }
+                    break;
+            }
+        }
+        sb.append('"');
+        return sb.toString();
+    }
+}
@@ -0,0 +1,116 @@
+package com.vladsch.ReverseRegEx.processor;
+
+import com.vladsch.ReverseRegEx.util.ReversePattern;
+import org.junit.Test;
+
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+import java.io.ByteArrayOutputStream;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.*;
+
+public class ReverseRegexProcessorTest {
+    private static final String SOURCE = "" +
+            "package test;\n" +
+            "\n" +
+            "import com.vladsch.ReverseRegEx.util.ReverseRegex;\n" +
+            "\n" +
+            "public class Patterns {\n" +
+            "    @ReverseRegex\n" +
+            "    public static final String ASSIGN = \"([a-zA-z_][a-zA-z_0-9]*)\\\\s*=\\\\s*\\\\1\\\\.([a-zA-z_][a-zA-z_0-9]*)\\\\(\\\\)\";\n" +
+            "\n" +
+            "    @ReverseRegex(flags = java.util.regex.Pattern.CASE_INSENSITIVE, name = \"NAMED\")\n" +
+            "    static final String NAMED_REGEX = \"(a)(?<B>b)(c)\\\\3\\\\k<B>\\\\1\\\"\";\n" +
+            "\n" +
+            "    public static class Inner {\n" +
+            "        @ReverseRegex\n" +
+            "        public static final String ID = \"\\\\b(id)\\\\b\\\\s*=\\\\s*(.+?)\\\\s*;$\";\n" +
+            "    }\n" +
+            "}\n";
+
+    private static Class<?>[] compile(String source, String... classNames) throws Exception {
+        Path dir = Files.createTempDirectory("reverse-regex-processor");
+        Path sourceFile = dir.resolve("test/Patterns.java");
+        Files.createDirectories(sourceFile.getParent());
+        Files.write(sourceFile, source.getBytes(StandardCharsets.UTF_8));
+
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        ByteArrayOutputStream err = new ByteArrayOutputStream();
+        int result = compiler.run(null, null, err,
+                "-classpath", System.getProperty("java.class.path"),
+                "-processor", ReverseRegexProcessor.class.getName(),
+                "-d", dir.toString(),
+                "-s", dir.toString(),
+                sourceFile.toString());
+
+        assertEquals(err.toString(), 0, result);
+
+        URLClassLoader loader = new URLClassLoader(new URL[] { dir.toUri().toURL() }, ReverseRegexProcessorTest.class.getClassLoader());
+        Class<?>[] classes = new Class<?>[classNames.length];
+        for (int i = 0; i < classNames.length; i++) {
+            classes[i] = loader.loadClass(classNames[i]);
+        }
+        return classes;
+    }
+
+    private static void assertSamePattern(ReversePattern expected, ReversePattern actual) {
+        assertEquals(expected.originalPattern(), actual.originalPattern());
+        assertEquals(expected.pattern(), actual.pattern());
+        assertEquals(expected.flags(), actual.flags());
+        assertEquals(expected.getCapturingGroupCount(), actual.getCapturingGroupCount());
+        for (int i = 0; i < expected.getCapturingGroupCount(); i++) {
+            assertEquals(expected.getReversedGroupIndex(i), actual.getReversedGroupIndex(i));
+            assertEquals(expected.getOriginalGroupIndex(i), actual.getOriginalGroupIndex(i));
+        }
+        assertEquals(expected.namedGroups(), actual.namedGroups());
+    }
+
+    @Test
+    public void test_generated() throws Exception {
+        Class<?>[] classes = compile(SOURCE, "test.Patterns_ReverseRegex", "test.Patterns_Inner_ReverseRegex");
+
+        ReversePattern assign = (ReversePattern) classes[0].getField("ASSIGN").get(null);
+        assertSamePattern(ReversePattern.compile("([a-zA-z_][a-zA-z_0-9]*)\\s*=\\s*\\1\\.([a-zA-z_][a-zA-z_0-9]*)\\(\\)"), assign);
+
+        ReversePattern named = (ReversePattern) classes[0].getField("NAMED").get(null);
+        assertSamePattern(ReversePattern.compile("(a)(?<B>b)(c)\\3\\k<B>\\1\"", Pattern.CASE_INSENSITIVE), named);
+        assertEquals(2, named.getOriginalNamedGroupIndex("B"));
+
+        ReversePattern id = (ReversePattern) classes[1].getField("ID").get(null);
+        assertSamePattern(ReversePattern.compile("\\b(id)\\b\\s*=\\s*(.+?)\\s*;$"), id);
+        assertEquals("id", id.matcher("test.id  = def;").find() ? "id" : null);
+    }
+
+    @Test
+    public void test_invalidPattern() throws Exception {
+        Path dir = Files.createTempDirectory("reverse-regex-processor");
+        Path sourceFile = dir.resolve("Invalid.java");
+        Files.write(sourceFile, ("" +
+                "public class Invalid {\n" +
+                "    @com.vladsch.ReverseRegEx.util.ReverseRegex\n" +
+                "    static final String BAD = \"(abc\";\n" +
+                "}\n").getBytes(StandardCharsets.UTF_8));
+
+        ByteArrayOutputStream err = new ByteArrayOutputStream();
+        int result = ToolProvider.getSystemJavaCompiler().run(null, null, err,
+                "-classpath", System.getProperty("java.class.path"),
+                "-processor", ReverseRegexProcessor.class.getName(),
+                "-d", dir.toString(),
+                "-s", dir.toString(),
+                sourceFile.toString());
+
+        assertNotEquals(0, result);
+        assertTrue(err.toString(), err.toString().contains("@ReverseRegex invalid pattern"));
+    }
+
+    @Test
+    public void test_javaString() throws Exception {
+        assertEquals("\"a\\\\b\\\"c\\n\\u00e9\"", ReverseRegexProcessor.javaString("a\\b\"c\n\u00e9"));
+    }
+}
@@ -0,0 +1,152 @@
+package com.vladsch.ReverseRegEx.util;
+
+/**
+ * Reversed chars which are copied into a char[] once they have been read enough times
+ * <p>
+ * Reading through a reversed view of segments, UTF-8 bytes or a generic CharSequence costs more per char than an
+ * array. When several patterns or many finds run over the same input, this sequence counts chars read through the
+ * wrapped sequence and copies it with {@link ReverseCharSequence#getChars} after {@code scanThreshold} times its
+ * length. Inputs up to {@code eagerLength} are copied on first access and inputs over {@code maximumLength} are
+ * never copied.
+ * <p>
+ * Index mapping is that of the wrapped sequence so match offsets are the same whether or not it was copied.
+ * The read count is not synchronized, like a Matcher this sequence should be used by one thread at a time.
+ */
+public final class AdaptiveReversedSequence implements ReverseCharSequence {
+    public static final int DEFAULT_SCAN_THRESHOLD = 2;
+    public static final int DEFAULT_EAGER_LENGTH = 256;
+    public static final int DEFAULT_MAXIMUM_LENGTH = 16 * 1024 * 1024;
+
+    private final ReverseCharSequence myChars;
+    private final int myScanThreshold;
+    private final int myEagerLength;
+    private final int myMaximumLength;
+    private final long myReadLimit;
+    private long myReadCount;
+    private char[] myMaterialized;
+
+    public AdaptiveReversedSequence(final ReverseCharSequence chars) {
+        this(chars, DEFAULT_SCAN_THRESHOLD, DEFAULT_EAGER_LENGTH, DEFAULT_MAXIMUM_LENGTH);
+    }
+
+    /**
+     * @param chars         reversed chars, not modified while this sequence is used
+     * @param scanThreshold number of times the length of chars read before copying them
+     * @param eagerLength   chars with at most this length are copied on first access
+     * @param maximumLength chars with more than this length are never copied
+     */
+    public AdaptiveReversedSequence(final ReverseCharSequence chars, final int scanThreshold, final int eagerLength, final int maximumLength) {
+        if (scanThreshold < 0) throw new IllegalArgumentException("scanThreshold " + scanThreshold + " must be >= 0");
+        if (eagerLength < 0) throw new IllegalArgumentException("eagerLength " + eagerLength + " must be >= 0");
+        if (maximumLength < 0) throw new IllegalArgumentException("maximumLength " + maximumLength + " must be >= 0");
+
+        final int length = chars.length();
+        myChars = chars;
+        myScanThreshold = scanThreshold;
+        myEagerLength = eagerLength;
+        myMaximumLength = maximumLength;
+        if (length > maximumLength) {
+            myReadLimit = Long.MAX_VALUE;
+        } else if (length <= eagerLength) {
+            myReadLimit = 0;
+        } else {
+            myReadLimit = (long) scanThreshold * length;
+        }
+    }
+
+    public ReverseCharSequence getSequence() {
+        return myChars;
+    }
+
+    public int getScanThreshold() {
+        return myScanThreshold;
+    }
+
+    public int getEagerLength() {
+        return myEagerLength;
+    }
+
+    public int getMaximumLength() {
+        return myMaximumLength;
+    }
+
+    /**
+     * @return number of chars read through the wrapped sequence
+     */
+    public long getReadCount() {
+        return myReadCount;
+    }
+
+    /**
+     * @return true if chars were copied
+     */
+    public boolean isMaterialized() {
+        return myMaterialized != null;
+    }
+
+    private char[] materialize() {
+        char[] chars = new char[myChars.length()];
+        myChars.getChars(0, chars.length, chars, 0);
+        myMaterialized = chars;
+        return chars;
+    }
+
+    @Override
+    public CharSequence getReversedChars() {
+        return myChars.getReversedChars();
+    }
+
+    @Override
+    public IndexMapper getIndexMapper() {
+        return myChars.getIndexMapper();
+    }
+
+    @Override
+    public int mapIndex(final int index) {
+        return myChars.mapIndex(index);
+    }
+
+    @Override
+    public int mapBoundary(final int index) {
+        return myChars.mapBoundary(index);
+    }
+
+    @Override
+    public int length() {
+        return myChars.length();
+    }
+
+    @Override
+    public char charAt(final int index) {
+        char[] chars = myMaterialized;
+        if (chars == null) {
+            if (myReadCount < myReadLimit) {
+                myReadCount++;
+                return myChars.charAt(index);
+            }
+            chars = materialize();
+        }
+        return chars[index];
+    }
+
+    @Override
+    public CharSequence subSequence(final int start, final int end) {
+        return myChars.subSequence(start, end);
+    }
+
+    @Override
+    public void getChars(final int srcBegin, final int srcEnd, final char[] dst, final int dstBegin) {
+        final char[] chars = myMaterialized;
+        if (chars == null) {
+            myChars.getChars(srcBegin, srcEnd, dst, dstBegin);
+        } else {
+            System.arraycopy(chars, srcBegin, dst, dstBegin, srcEnd - srcBegin);
+        }
+    }
+
+    @Override
+    public String toString() {
+        final char[] chars = myMaterialized;
+        return chars == null ? myChars.toString() : new String(chars);
+    }
+}
@@ -0,0 +1,44 @@
+package com.vladsch.ReverseRegEx.util;
+
+import java.util.Objects;
+
+/**
+ * Range of a CharSequence without copying its chars, used for group views of match text
+ * <p>
+ * The chars are referenced and must not be modified while the view is used.
+ */
+final class CharSubSequence implements CharSequence {
+    private final CharSequence myChars;
+    private final int myStart;
+    private final int myEnd;
+
+    CharSubSequence(final CharSequence chars, final int start, final int end) {
+        Objects.checkFromToIndex(start, end, chars.length());
+        myChars = chars;
+        myStart = start;
+        myEnd = end;
+    }
+
+    @Override
+    public int length() {
+        return myEnd - myStart;
+    }
+
+    @Override
+    public char charAt(final int index) {
+        return myChars.charAt(myStart + Objects.checkIndex(index, myEnd - myStart));
+    }
+
+    @Override
+    public CharSequence subSequence(final int start, final int end) {
+        Objects.checkFromToIndex(start, end, myEnd - myStart);
+        return new CharSubSequence(myChars, myStart + start, myStart + end);
+    }
+
+    @Override
+    public String toString() {
+        final CharSequence chars = myChars;
+        if (chars instanceof String) return ((String) chars).substring(myStart, myEnd);
+        return new StringBuilder(myEnd - myStart).append(chars, myStart, myEnd).toString();
+    }
+}
@@ -1,5 +1,6 @@
 package com.vladsch.ReverseRegEx.util;
 
+import java.io.IOException;
 import java.util.regex.MatchResult;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -9,6 +10,13 @@ import java.util.regex.Pattern;
  */
 public class ForwardMatcher implements RegExMatcher {
     private Matcher myMatcher;
+    // input of the matcher, null if not known
+    private CharSequence myText;
+    // range of input restored by reset(), myRangeEnd is -1 for all of input
+    private int myRangeStart;
+    private int myRangeEnd = -1;
+    // cursor of forEachMatch, null until needed
+    private MatchCursor myCursor;
 
     /**
      * Constructor of reversed matcher that takes a ReversedRegEx instance and an input character sequence.
@@ -20,14 +28,59 @@ public class ForwardMatcher implements RegExMatcher {
         myMatcher = matcher;
     }
 
+    /**
+     * @param matcher matcher to wrap
+     * @param input   input of matcher, referenced by match results instead of a copy
+     */
+    public ForwardMatcher(Matcher matcher, CharSequence input) {
+        myMatcher = matcher;
+        myText = input;
+    }
+
+    /**
+     * Matcher of a range of input, see {@link RegExPattern#matcher(CharSequence, int, int)}
+     *
+     * @param matcher matcher of input to wrap
+     * @param input   input of matcher, referenced by match results instead of a copy
+     * @param start   start index of range in input
+     * @param end     end index of range in input
+     */
+    public ForwardMatcher(Matcher matcher, CharSequence input, int start, int end) {
+        myMatcher = matcher;
+        myText = input;
+        myRangeStart = start;
+        myRangeEnd = end;
+        matcher.region(start, end);
+    }
+
     @Override
     public Pattern pattern() {
         return myMatcher.pattern();
     }
 
+    /**
+     * @return immutable result of the current match, referencing the input if it is known or with a copy of it if not
+     */
     @Override
     public MatchResult toMatchResult() {
-        return this;
+        final CharSequence text = myText;
+        return text == null ? myMatcher.toMatchResult() : RegExMatchResult.of(text, myMatcher);
+    }
+
+    @Override
+    public int forEachMatch(final MatchVisitor visitor) {
+        MatchCursor cursor = myCursor;
+        if (cursor == null) {
+            cursor = new RegExMatchCursor(this);
+            myCursor = cursor;
+        }
+
+        int count = 0;
+        while (myMatcher.find()) {
+            count++;
+            if (!visitor.visit(cursor)) break;
+        }
+        return count;
     }
 
     @Override
@@ -41,20 +94,47 @@ public class ForwardMatcher implements RegExMatcher {
         return myMatcher.appendTail(sb);
     }
 
+    @Override
+    public RegExMatcher appendReplacement(final StringBuilder sb, final String replacement) {
+        myMatcher.appendReplacement(sb, replacement);
+        return this;
+    }
+
+    @Override
+    public StringBuilder appendTail(final StringBuilder sb) {
+        return myMatcher.appendTail(sb);
+    }
+
     public RegExMatcher usePattern(final Pattern pattern) {
         myMatcher.usePattern(pattern);
         return this;
     }
 
+    /**
+     * Reset the matcher, the region of a range matcher is set to its range
+     *
+     * @return this
+     */
     @Override
     public RegExMatcher reset() {
         myMatcher.reset();
+        if (myRangeEnd != -1) myMatcher.region(myRangeStart, myRangeEnd);
         return this;
     }
 
+    /**
+     * Reset with new input, all of which is matched
+     *
+     * @param input char sequence to use as input for matching
+     *
+     * @return this
+     */
     @Override
     public RegExMatcher reset(final CharSequence input) {
         myMatcher.reset(input);
+        myText = input;
+        myRangeStart = 0;
+        myRangeEnd = -1;
         return this;
     }
 
@@ -93,6 +173,23 @@ public class ForwardMatcher implements RegExMatcher {
         return myMatcher.group(name);
     }
 
+    /**
+     * @return view of group in the input, or a copy if the input is not known
+     */
+    @Override
+    public CharSequence groupView(final int group) {
+        final int start = myMatcher.start(group);
+        if (start == -1) return null;
+        return myText == null ? myMatcher.group(group) : new CharSubSequence(myText, start, myMatcher.end(group));
+    }
+
+    @Override
+    public CharSequence groupView(final String name) {
+        final int start = myMatcher.start(name);
+        if (start == -1) return null;
+        return myText == null ? myMatcher.group(name) : new CharSubSequence(myText, start, myMatcher.end(name));
+    }
+
     @Override
     public int groupCount() {
         return myMatcher.groupCount();
@@ -122,14 +219,65 @@ public class ForwardMatcher implements RegExMatcher {
         return Matcher.quoteReplacement(s);
     }
 
+    /**
+     * @param replacement replacement string
+     *
+     * @return input with all matches replaced, text outside the range of a range matcher is unchanged
+     */
     @Override
     public String replaceAll(final String replacement) {
-        return myMatcher.replaceAll(replacement);
+        // Matcher.replaceAll() resets the region
+        return myRangeEnd == -1 ? myMatcher.replaceAll(replacement) : replaceAll(replacement, new StringBuilder()).toString();
     }
 
     @Override
     public String replaceFirst(final String replacement) {
-        return myMatcher.replaceFirst(replacement);
+        return myRangeEnd == -1 ? myMatcher.replaceFirst(replacement) : replaceFirst(replacement, new StringBuilder()).toString();
+    }
+
+    @Override
+    public StringBuilder replaceAll(final String replacement, final StringBuilder sb) {
+        final Matcher matcher = myMatcher;
+        reset();
+        while (matcher.find()) {
+            matcher.appendReplacement(sb, replacement);
+        }
+        return matcher.appendTail(sb);
+    }
+
+    @Override
+    public StringBuilder replaceFirst(final String replacement, final StringBuilder sb) {
+        final Matcher matcher = myMatcher;
+        reset();
+        if (matcher.find()) matcher.appendReplacement(sb, replacement);
+        return matcher.appendTail(sb);
+    }
+
+    /**
+     * Reset and append the input with all matches replaced to out, one match at a time through a reused buffer
+     */
+    @Override
+    public <A extends Appendable> A replaceAll(final String replacement, final A out) throws IOException {
+        return replace(replacement, out, true);
+    }
+
+    @Override
+    public <A extends Appendable> A replaceFirst(final String replacement, final A out) throws IOException {
+        return replace(replacement, out, false);
+    }
+
+    private <A extends Appendable> A replace(final String replacement, final A out, final boolean all) throws IOException {
+        final Matcher matcher = myMatcher;
+        final StringBuilder sb = new StringBuilder();
+        reset();
+        while (matcher.find()) {
+            matcher.appendReplacement(sb, replacement);
+            out.append(sb);
+            sb.setLength(0);
+            if (!all) break;
+        }
+        out.append(matcher.appendTail(sb));
+        return out;
     }
 
     @Override
@@ -20,6 +20,9 @@
 
 package com.vladsch.ReverseRegEx.util;
 
+import java.util.Collection;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
 import java.util.regex.Pattern;
 
 public final class ForwardPattern implements RegExPattern {
@@ -28,6 +31,8 @@ public final class ForwardPattern implements RegExPattern {
      */
     private Pattern myPattern;
 
+    private static final PatternCache<ForwardPattern> CACHE = new PatternCache<>(PatternCache.DEFAULT_MAXIMUM_SIZE, ForwardPattern::compile);
+
     private ForwardPattern(final Pattern pattern) {
         myPattern = pattern;
     }
@@ -53,13 +58,60 @@ public final class ForwardPattern implements RegExPattern {
         return regEx;
     }
 
+    /**
+     * Compile all patterns in parallel on the given executor
+     * <p>
+     * Does not fail fast, a pattern with a syntax error has its {@link java.util.regex.PatternSyntaxException}
+     * in the results and does not affect compilation of the others.
+     *
+     * @param patterns patterns to compile
+     * @param f        flags for all patterns
+     * @param executor executor to run compilation tasks
+     *
+     * @return compile results in input order
+     */
+    public static PatternCompileResults<ForwardPattern> compileAll(Collection<String> patterns, int f, Executor executor) {
+        return PatternCompileResults.compileAll(patterns, f, executor, ForwardPattern::compile);
+    }
+
+    public static PatternCompileResults<ForwardPattern> compileAll(Collection<String> patterns, int f) {
+        return compileAll(patterns, f, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Get a shared pattern from the pattern cache, compiling it only if it is not already cached
+     *
+     * @param p pattern
+     *
+     * @return forward pattern
+     */
+    public static ForwardPattern compileCached(String p) {
+        return CACHE.get(p, 0);
+    }
+
+    public static ForwardPattern compileCached(String p, int f) {
+        return CACHE.get(p, f);
+    }
+
+    /**
+     * @return pattern cache used by {@link #compileCached(String, int)} and {@link #matches(String, CharSequence)}
+     */
+    public static PatternCache<ForwardPattern> cache() {
+        return CACHE;
+    }
+
     @Override
     public ForwardMatcher matcher(CharSequence input) {
-        return new ForwardMatcher(myPattern.matcher(input));
+        return new ForwardMatcher(myPattern.matcher(input), input);
+    }
+
+    @Override
+    public ForwardMatcher matcher(CharSequence input, int from, int to) {
+        return new ForwardMatcher(myPattern.matcher(input), input, from, to);
     }
 
     public static boolean matches(String regex, CharSequence input) {
-        RegExPattern p = compile(regex);
+        RegExPattern p = compileCached(regex);
         RegExMatcher m = p.matcher(input);
         return m.matches();
     }
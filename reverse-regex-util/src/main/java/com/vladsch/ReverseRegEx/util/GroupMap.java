@@ -0,0 +1,131 @@
+package com.vladsch.ReverseRegEx.util;
+
+import java.util.Arrays;
+
+/**
+ * Immutable capturing group maps and named groups of a {@link ReversePattern}
+ * <p>
+ * Original to reversed group numbers, reversed to original group numbers and named group numbers are kept
+ * in one array of the narrowest type which can hold the group count. Equal maps are shared through {@link #of}.
+ * All group numbers are 0 based.
+ */
+final class GroupMap {
+    private static final String[] NO_NAMES = new String[0];
+    private static final WeakInterner<GroupMap> INTERNER = new WeakInterner<>();
+
+    static final GroupMap EMPTY = new GroupMap(0, new byte[0], null, null, NO_NAMES);
+
+    private final int myGroupCount;
+    // table of groupCount original to reversed, groupCount reversed to original, names.length named group numbers
+    // only one of the arrays is not null
+    private final byte[] myBytes;
+    private final char[] myChars;
+    private final int[] myInts;
+    private final String[] myNames;
+    private final int myHashCode;
+
+    private GroupMap(final int groupCount, final byte[] bytes, final char[] chars, final int[] ints, final String[] names) {
+        myGroupCount = groupCount;
+        myBytes = bytes;
+        myChars = chars;
+        myInts = ints;
+        myNames = names;
+        myHashCode = 31 * (31 * groupCount + (bytes != null ? Arrays.hashCode(bytes) : chars != null ? Arrays.hashCode(chars) : Arrays.hashCode(ints))) + Arrays.hashCode(names);
+    }
+
+    /**
+     * @param groupCount         number of capturing groups, not including group 0
+     * @param originalToReversed reversed group of each original group, at least groupCount long
+     * @param names              named group names, in original pattern order
+     * @param nameGroups         original group of each named group, at least names.length long
+     *
+     * @return shared group map
+     */
+    static GroupMap of(final int groupCount, final int[] originalToReversed, final String[] names, final int[] nameGroups) {
+        if (groupCount == 0 && names.length == 0) return EMPTY;
+        String[] groupNames = names.length == 0 ? NO_NAMES : names;
+
+        int size = 2 * groupCount + names.length;
+        int[] table = new int[size];
+        for (int i = 0; i < groupCount; i++) {
+            table[i] = originalToReversed[i];
+            table[groupCount + originalToReversed[i]] = i;
+        }
+        System.arraycopy(nameGroups, 0, table, 2 * groupCount, names.length);
+
+        GroupMap groupMap;
+        if (groupCount <= 1 << 8) {
+            byte[] bytes = new byte[size];
+            for (int i = 0; i < size; i++) bytes[i] = (byte) table[i];
+            groupMap = new GroupMap(groupCount, bytes, null, null, groupNames);
+        } else if (groupCount <= 1 << 16) {
+            char[] chars = new char[size];
+            for (int i = 0; i < size; i++) chars[i] = (char) table[i];
+            groupMap = new GroupMap(groupCount, null, chars, null, groupNames);
+        } else {
+            groupMap = new GroupMap(groupCount, null, null, table, groupNames);
+        }
+        return INTERNER.intern(groupMap);
+    }
+
+    private int get(final int index) {
+        return myBytes != null ? myBytes[index] & 0xFF : myChars != null ? myChars[index] : myInts[index];
+    }
+
+    int getGroupCount() {
+        return myGroupCount;
+    }
+
+    int getReversedGroup(final int group) {
+        return get(group);
+    }
+
+    int getOriginalGroup(final int group) {
+        return get(myGroupCount + group);
+    }
+
+    int getNameCount() {
+        return myNames.length;
+    }
+
+    String getName(final int index) {
+        return myNames[index];
+    }
+
+    int getNameGroup(final int index) {
+        return get(2 * myGroupCount + index);
+    }
+
+    int getNameIndex(final String name) {
+        for (int i = 0; i < myNames.length; i++) {
+            if (myNames[i].equals(name)) return i;
+        }
+        return -1;
+    }
+
+    /**
+     * @return number of distinct group maps currently shared
+     */
+    static int internedCount() {
+        return INTERNER.size();
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+        if (this == o) return true;
+        if (!(o instanceof GroupMap)) return false;
+
+        GroupMap other = (GroupMap) o;
+        return myHashCode == other.myHashCode
+                && myGroupCount == other.myGroupCount
+                && Arrays.equals(myBytes, other.myBytes)
+                && Arrays.equals(myChars, other.myChars)
+                && Arrays.equals(myInts, other.myInts)
+                && Arrays.equals(myNames, other.myNames);
+    }
+
+    @Override
+    public int hashCode() {
+        return myHashCode;
+    }
+}
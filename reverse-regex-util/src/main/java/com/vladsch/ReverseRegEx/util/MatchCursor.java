@@ -0,0 +1,37 @@
+package com.vladsch.ReverseRegEx.util;
+
+/**
+ * Read-only view of the current match of a matcher, passed to a {@link MatchVisitor} by
+ * {@link RegExMatcher#forEachMatch(MatchVisitor)}
+ * <p>
+ * The same instance is passed for every match and is only valid during the call. Indices are those of the original
+ * text and group numbers are original group numbers, for a reverse match too.
+ */
+public interface MatchCursor {
+    int start();
+
+    int end();
+
+    /**
+     * @param group group number
+     *
+     * @return start of group, -1 if the group did not match
+     */
+    int start(int group);
+
+    /**
+     * @param group group number
+     *
+     * @return end of group, -1 if the group did not match
+     */
+    int end(int group);
+
+    int groupCount();
+
+    /**
+     * @param group group number
+     *
+     * @return group text as a view of the input, or null if the group did not match
+     */
+    CharSequence groupView(int group);
+}
@@ -0,0 +1,34 @@
+package com.vladsch.ReverseRegEx.util;
+
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.regex.MatchResult;
+
+/**
+ * Spliterator of the results of successive finds of a matcher, finds are done as elements are requested
+ * so a short-circuiting stream operation stops the search
+ */
+final class MatchResultSpliterator extends Spliterators.AbstractSpliterator<MatchResult> {
+    private final RegExMatcher myMatcher;
+
+    MatchResultSpliterator(final RegExMatcher matcher) {
+        super(Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL);
+        myMatcher = matcher;
+    }
+
+    @Override
+    public boolean tryAdvance(final Consumer<? super MatchResult> action) {
+        if (!myMatcher.find()) return false;
+        action.accept(myMatcher.toMatchResult());
+        return true;
+    }
+
+    @Override
+    public void forEachRemaining(final Consumer<? super MatchResult> action) {
+        final RegExMatcher matcher = myMatcher;
+        while (matcher.find()) {
+            action.accept(matcher.toMatchResult());
+        }
+    }
+}
@@ -0,0 +1,14 @@
+package com.vladsch.ReverseRegEx.util;
+
+/**
+ * Callback of {@link RegExMatcher#forEachMatch(MatchVisitor)}
+ */
+@FunctionalInterface
+public interface MatchVisitor {
+    /**
+     * @param match current match, the same instance for all matches and only valid during the call
+     *
+     * @return true to continue with the next match, false to stop
+     */
+    boolean visit(MatchCursor match);
+}
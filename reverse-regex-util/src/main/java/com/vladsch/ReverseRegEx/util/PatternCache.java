@@ -0,0 +1,173 @@
+package com.vladsch.ReverseRegEx.util;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Thread-safe, size bounded cache of compiled patterns keyed by (pattern, flags)
+ * <p>
+ * Entries are spread over independently locked segments, each evicting its least recently used
+ * pattern when full, so concurrent lookups of different patterns do not contend on a single lock.
+ * Patterns are compiled outside of the segment lock, if two threads miss on the same key at the same time
+ * both will compile but only the first result is kept and returned to both.
+ *
+ * @param <T> type of compiled pattern
+ */
+public final class PatternCache<T extends RegExPattern> {
+    public static final int DEFAULT_MAXIMUM_SIZE = 1024;
+    public static final int DEFAULT_CONCURRENCY_LEVEL = 16;
+
+    public interface PatternCompiler<T extends RegExPattern> {
+        T compile(String pattern, int flags);
+    }
+
+    private final PatternCompiler<T> myCompiler;
+    private final Segment<T>[] mySegments;
+    private final int mySegmentMask;
+    private final int myMaximumSize;
+    private final LongAdder myHitCount = new LongAdder();
+    private final LongAdder myMissCount = new LongAdder();
+    private final LongAdder myEvictionCount = new LongAdder();
+
+    public PatternCache(final int maximumSize, final PatternCompiler<T> compiler) {
+        this(maximumSize, DEFAULT_CONCURRENCY_LEVEL, compiler);
+    }
+
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    public PatternCache(final int maximumSize, final int concurrencyLevel, final PatternCompiler<T> compiler) {
+        if (maximumSize <= 0) throw new IllegalArgumentException("maximumSize " + maximumSize + " must be > 0");
+        if (concurrencyLevel <= 0) throw new IllegalArgumentException("concurrencyLevel " + concurrencyLevel + " must be > 0");
+
+        // power of 2 segments, no more than there are entries
+        int segments = 1;
+        while (segments < concurrencyLevel && segments * 2 <= maximumSize) {
+            segments <<= 1;
+        }
+
+        myCompiler = compiler;
+        myMaximumSize = maximumSize;
+        mySegmentMask = segments - 1;
+        mySegments = new Segment[segments];
+
+        // distribute maximumSize so total capacity is exactly maximumSize
+        int capacity = maximumSize / segments;
+        int extra = maximumSize % segments;
+        for (int i = 0; i < segments; i++) {
+            mySegments[i] = new Segment<>(i < extra ? capacity + 1 : capacity, myEvictionCount);
+        }
+    }
+
+    /**
+     * Get the cached pattern for the given pattern string and flags, compiling and caching it on a miss
+     *
+     * @param pattern pattern string
+     * @param flags   pattern flags
+     *
+     * @return compiled pattern
+     *
+     * @throws java.util.regex.PatternSyntaxException if pattern is not valid, invalid patterns are not cached
+     */
+    public T get(final String pattern, final int flags) {
+        PatternKey key = new PatternKey(pattern, flags);
+        Segment<T> segment = segmentFor(key);
+
+        T regEx;
+        synchronized (segment) {
+            regEx = segment.get(key);
+        }
+
+        if (regEx != null) {
+            myHitCount.increment();
+            return regEx;
+        }
+
+        myMissCount.increment();
+        T compiled = myCompiler.compile(pattern, flags);
+
+        synchronized (segment) {
+            regEx = segment.putIfAbsent(key, compiled);
+        }
+        return regEx == null ? compiled : regEx;
+    }
+
+    public int size() {
+        int size = 0;
+        for (Segment<T> segment : mySegments) {
+            synchronized (segment) {
+                size += segment.size();
+            }
+        }
+        return size;
+    }
+
+    public int maximumSize() {
+        return myMaximumSize;
+    }
+
+    public long hitCount() {
+        return myHitCount.sum();
+    }
+
+    public long missCount() {
+        return myMissCount.sum();
+    }
+
+    public long evictionCount() {
+        return myEvictionCount.sum();
+    }
+
+    /**
+     * Remove all cached patterns, statistics are not reset
+     */
+    public void clear() {
+        for (Segment<T> segment : mySegments) {
+            synchronized (segment) {
+                segment.clear();
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "PatternCache{" +
+                "size=" + size() +
+                ", maximumSize=" + myMaximumSize +
+                ", hits=" + hitCount() +
+                ", misses=" + missCount() +
+                ", evictions=" + evictionCount() +
+                '}';
+    }
+
+    private Segment<T> segmentFor(final PatternKey key) {
+        int h = key.hashCode();
+        h ^= (h >>> 16);
+        return mySegments[h & mySegmentMask];
+    }
+
+    /**
+     * Access ordered map which evicts its least recently used entry when over capacity,
+     * all access must be synchronized on the segment
+     */
+    private static final class Segment<T> extends LinkedHashMap<PatternKey, T> {
+        private static final long serialVersionUID = 1L;
+
+        private final int myCapacity;
+        private final LongAdder myEvictionCount;
+
+        Segment(final int capacity, final LongAdder evictionCount) {
+            super(16, 0.75f, true);
+            myCapacity = capacity;
+            myEvictionCount = evictionCount;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<PatternKey, T> eldest) {
+            if (size() > myCapacity) {
+                myEvictionCount.increment();
+                return true;
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,291 @@
+package com.vladsch.ReverseRegEx.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Versioned binary encoding of {@link ReversePattern} and {@link ForwardPattern}
+ * <p>
+ * A reverse pattern is decoded with {@link ReversePattern#precompiled} from its reversed pattern, group map and
+ * named groups without parsing the pattern again, its java.util.regex.Pattern is compiled on first use.
+ * A forward pattern is only its pattern and flags so decoding it compiles the pattern.
+ * <p>
+ * Pattern layout, big-endian:
+ * <pre>
+ * byte   format version
+ * byte   kind, 'R' reverse or 'F' forward
+ * string pattern
+ * int    flags
+ * reverse only:
+ *   string reversed pattern, or int -1 if the same as pattern
+ *   int    group count n, n * group reversed group number of original group 1..n
+ *   int    named group count m, m * (string name, group original group number)
+ * group:  unsigned byte if n &lt;= 255, unsigned short if n &lt;= 65535, otherwise int
+ * string: int length, byte 0 and length * Latin-1 byte or byte 1 and length * char
+ * </pre>
+ * A pattern collection is an int count followed by the patterns.
+ * <p>
+ * Lengths and counts are checked before arrays are allocated, corrupt input throws {@link StreamCorruptedException}
+ * or {@link java.io.EOFException} and not OutOfMemoryError.
+ */
+public final class PatternCodec {
+    public static final int FORMAT_VERSION = 1;
+
+    private static final byte KIND_REVERSE = 'R';
+    private static final byte KIND_FORWARD = 'F';
+
+    private static final byte STRING_LATIN1 = 0;
+    private static final byte STRING_UTF16 = 1;
+
+    private static final int READ_CHUNK_SIZE = 8192;
+
+    private PatternCodec() {
+    }
+
+    /**
+     * @param out     output
+     * @param pattern reverse or forward pattern
+     *
+     * @throws IOException              if the output fails
+     * @throws IllegalArgumentException if the pattern is not a {@link ReversePattern} or {@link ForwardPattern}
+     */
+    public static void write(final DataOutput out, final RegExPattern pattern) throws IOException {
+        if (pattern instanceof ReversePattern) {
+            ReversePattern regEx = (ReversePattern) pattern;
+            out.writeByte(FORMAT_VERSION);
+            out.writeByte(KIND_REVERSE);
+            writeString(out, regEx.originalPattern());
+            out.writeInt(regEx.flags());
+
+            if (regEx.pattern().equals(regEx.originalPattern())) {
+                out.writeInt(-1);
+            } else {
+                writeString(out, regEx.pattern());
+            }
+
+            int groups = regEx.getCapturingGroupCount() - 1;
+            out.writeInt(groups);
+            for (int i = 1; i <= groups; i++) {
+                writeGroup(out, groups, regEx.getReversedGroupIndex(i));
+            }
+
+            Map<String, Integer> namedGroups = regEx.namedGroups();
+            out.writeInt(namedGroups.size());
+            for (Map.Entry<String, Integer> entry : namedGroups.entrySet()) {
+                writeString(out, entry.getKey());
+                writeGroup(out, groups, entry.getValue());
+            }
+        } else if (pattern instanceof ForwardPattern) {
+            out.writeByte(FORMAT_VERSION);
+            out.writeByte(KIND_FORWARD);
+            writeString(out, pattern.pattern());
+            out.writeInt(pattern.flags());
+        } else {
+            throw new IllegalArgumentException("Unsupported pattern class " + pattern.getClass().getName());
+        }
+    }
+
+    /**
+     * @param in input
+     *
+     * @return decoded pattern
+     *
+     * @throws IOException if the input fails or is not a pattern of a supported format version
+     */
+    public static RegExPattern read(final DataInput in) throws IOException {
+        int version = in.readUnsignedByte();
+        if (version != FORMAT_VERSION) throw new StreamCorruptedException("Unsupported pattern format version " + version);
+
+        int kind = in.readByte();
+        String pattern = readString(in);
+        if (pattern == null) throw new StreamCorruptedException("Missing pattern");
+        int flags = in.readInt();
+
+        switch (kind) {
+            case KIND_REVERSE: {
+                String reversed = readString(in);
+                if (reversed == null) reversed = pattern;
+
+                // each capturing group has an opening parenthesis in the reversed pattern
+                int groups = in.readInt();
+                if (groups < 0 || groups > reversed.length()) throw new StreamCorruptedException("Invalid group count " + groups);
+
+                int[] originalToReversed = new int[groups];
+                for (int i = 0; i < groups; i++) {
+                    originalToReversed[i] = readGroup(in, groups);
+                }
+
+                int namedGroups = in.readInt();
+                if (namedGroups < 0 || namedGroups > groups) throw new StreamCorruptedException("Invalid named group count " + namedGroups);
+
+                String[] groupNames = new String[namedGroups];
+                int[] groupNumbers = new int[namedGroups];
+                for (int i = 0; i < namedGroups; i++) {
+                    groupNames[i] = readString(in);
+                    groupNumbers[i] = readGroup(in, groups);
+                }
+
+                try {
+                    return ReversePattern.precompiled(pattern, flags, reversed, originalToReversed, groupNames, groupNumbers);
+                } catch (IllegalArgumentException e) {
+                    throw new StreamCorruptedException(e.getMessage());
+                }
+            }
+
+            case KIND_FORWARD:
+                return ForwardPattern.compile(pattern, flags);
+
+            default:
+                throw new StreamCorruptedException("Unknown pattern kind " + kind);
+        }
+    }
+
+    /**
+     * Read only the pattern of an encoded pattern, to index encoded patterns without decoding them
+     *
+     * @param in input
+     *
+     * @return original pattern
+     *
+     * @throws IOException if the input fails or is not a pattern of a supported format version
+     */
+    static String readPattern(final DataInput in) throws IOException {
+        int version = in.readUnsignedByte();
+        if (version != FORMAT_VERSION) throw new StreamCorruptedException("Unsupported pattern format version " + version);
+
+        in.readByte();
+        String pattern = readString(in);
+        if (pattern == null) throw new StreamCorruptedException("Missing pattern");
+        return pattern;
+    }
+
+    public static ReversePattern readReversePattern(final DataInput in) throws IOException {
+        return read(in, ReversePattern.class);
+    }
+
+    public static ForwardPattern readForwardPattern(final DataInput in) throws IOException {
+        return read(in, ForwardPattern.class);
+    }
+
+    private static <T extends RegExPattern> T read(final DataInput in, final Class<T> type) throws IOException {
+        RegExPattern pattern = read(in);
+        if (!type.isInstance(pattern)) throw new StreamCorruptedException("Expected " + type.getSimpleName() + " but got " + pattern.getClass().getSimpleName());
+        return type.cast(pattern);
+    }
+
+    public static void writeAll(final DataOutput out, final Collection<? extends RegExPattern> patterns) throws IOException {
+        out.writeInt(patterns.size());
+        for (RegExPattern pattern : patterns) {
+            write(out, pattern);
+        }
+    }
+
+    public static List<RegExPattern> readAll(final DataInput in) throws IOException {
+        int count = in.readInt();
+        if (count < 0) throw new StreamCorruptedException("Invalid pattern count " + count);
+
+        ArrayList<RegExPattern> patterns = new ArrayList<>(Math.min(count, 1024));
+        for (int i = 0; i < count; i++) {
+            patterns.add(read(in));
+        }
+        return patterns;
+    }
+
+    public static byte[] toBytes(final RegExPattern pattern) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try {
+            write(new DataOutputStream(bytes), pattern);
+        } catch (IOException e) {
+            // not thrown by ByteArrayOutputStream
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    public static RegExPattern fromBytes(final byte[] bytes) throws IOException {
+        return read(new DataInputStream(new ByteArrayInputStream(bytes)));
+    }
+
+    private static void writeGroup(final DataOutput out, final int groups, final int group) throws IOException {
+        if (groups <= 0xFF) {
+            out.writeByte(group);
+        } else if (groups <= 0xFFFF) {
+            out.writeShort(group);
+        } else {
+            out.writeInt(group);
+        }
+    }
+
+    private static int readGroup(final DataInput in, final int groups) throws IOException {
+        if (groups <= 0xFF) {
+            return in.readUnsignedByte();
+        } else if (groups <= 0xFFFF) {
+            return in.readUnsignedShort();
+        } else {
+            return in.readInt();
+        }
+    }
+
+    private static void writeString(final DataOutput out, final String s) throws IOException {
+        int length = s.length();
+        boolean latin1 = true;
+        for (int i = 0; i < length; i++) {
+            if (s.charAt(i) > 0xFF) {
+                latin1 = false;
+                break;
+            }
+        }
+
+        out.writeInt(length);
+        if (latin1) {
+            out.writeByte(STRING_LATIN1);
+            out.writeBytes(s);
+        } else {
+            out.writeByte(STRING_UTF16);
+            out.writeChars(s);
+        }
+    }
+
+    /**
+     * @return string or null if the length is -1
+     */
+    private static String readString(final DataInput in) throws IOException {
+        int length = in.readInt();
+        if (length == -1) return null;
+        if (length < 0) throw new StreamCorruptedException("Invalid string length " + length);
+
+        // arrays grow as input is read so a corrupt length ends with EOFException instead of a huge allocation
+        int encoding = in.readByte();
+        if (encoding == STRING_LATIN1) {
+            byte[] bytes = new byte[Math.min(length, READ_CHUNK_SIZE)];
+            in.readFully(bytes);
+            while (bytes.length < length) {
+                int read = bytes.length;
+                bytes = Arrays.copyOf(bytes, (int) Math.min(length, 2L * read));
+                in.readFully(bytes, read, bytes.length - read);
+            }
+            return new String(bytes, StandardCharsets.ISO_8859_1);
+        } else if (encoding == STRING_UTF16) {
+            char[] chars = new char[Math.min(length, READ_CHUNK_SIZE)];
+            for (int i = 0; i < length; i++) {
+                if (i == chars.length) chars = Arrays.copyOf(chars, (int) Math.min(length, 2L * i));
+                chars[i] = in.readChar();
+            }
+            return new String(chars);
+        } else {
+            throw new StreamCorruptedException("Unknown string encoding " + encoding);
+        }
+    }
+}
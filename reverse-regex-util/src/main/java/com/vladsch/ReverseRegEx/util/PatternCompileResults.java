@@ -0,0 +1,130 @@
+package com.vladsch.ReverseRegEx.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Results of bulk pattern compilation, in input order
+ * <p>
+ * Each input pattern has either a compiled pattern or the {@link PatternSyntaxException} it failed with.
+ *
+ * @param <T> type of compiled pattern
+ */
+public final class PatternCompileResults<T extends RegExPattern> {
+    // target number of tasks per processor so uneven pattern sizes still balance
+    private static final int TASKS_PER_PROCESSOR = 4;
+
+    private final List<String> myPatterns;
+    private final RegExPattern[] myCompiled;
+    private final PatternSyntaxException[] myErrors;
+    private volatile int myErrorCount;
+
+    private PatternCompileResults(final List<String> patterns) {
+        myPatterns = patterns;
+        myCompiled = new RegExPattern[patterns.size()];
+        myErrors = new PatternSyntaxException[patterns.size()];
+    }
+
+    public int size() {
+        return myPatterns.size();
+    }
+
+    public String getPattern(final int index) {
+        return myPatterns.get(index);
+    }
+
+    /**
+     * @param index index of pattern in input collection order
+     *
+     * @return compiled pattern or null if it failed to compile
+     */
+    @SuppressWarnings("unchecked")
+    public T get(final int index) {
+        return (T) myCompiled[index];
+    }
+
+    /**
+     * @param index index of pattern in input collection order
+     *
+     * @return syntax error of the pattern or null if it compiled
+     */
+    public PatternSyntaxException getError(final int index) {
+        return myErrors[index];
+    }
+
+    public boolean hasErrors() {
+        return myErrorCount > 0;
+    }
+
+    public int getErrorCount() {
+        return myErrorCount;
+    }
+
+    /**
+     * @return compiled patterns in input order, with null for patterns which failed to compile
+     */
+    @SuppressWarnings("unchecked")
+    public List<T> getPatterns() {
+        return Collections.unmodifiableList(Arrays.asList((T[]) myCompiled));
+    }
+
+    /**
+     * Compile patterns on the executor, split into contiguous index ranges, and wait for all to complete
+     *
+     * @param patterns patterns to compile
+     * @param flags    flags for all patterns
+     * @param executor executor to run compilation tasks
+     * @param compiler pattern compiler
+     * @param <T>      type of compiled pattern
+     *
+     * @return results in input order
+     */
+    static <T extends RegExPattern> PatternCompileResults<T> compileAll(final Collection<String> patterns, final int flags, final Executor executor, final PatternCache.PatternCompiler<T> compiler) {
+        PatternCompileResults<T> results = new PatternCompileResults<>(Collections.unmodifiableList(new ArrayList<>(patterns)));
+        int size = results.size();
+        if (size == 0) return results;
+
+        int tasks = Math.min(size, Runtime.getRuntime().availableProcessors() * TASKS_PER_PROCESSOR);
+        int chunk = (size + tasks - 1) / tasks;
+
+        ArrayList<CompletableFuture<Void>> futures = new ArrayList<>(tasks);
+        for (int start = 0; start < size; start += chunk) {
+            int from = start;
+            int to = Math.min(size, start + chunk);
+            futures.add(CompletableFuture.runAsync(() -> results.compileRange(from, to, flags, compiler), executor));
+        }
+
+        try {
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            if (cause instanceof Error) throw (Error) cause;
+            throw e;
+        }
+
+        int errorCount = 0;
+        for (PatternSyntaxException error : results.myErrors) {
+            if (error != null) errorCount++;
+        }
+        results.myErrorCount = errorCount;
+        return results;
+    }
+
+    private void compileRange(final int from, final int to, final int flags, final PatternCache.PatternCompiler<T> compiler) {
+        for (int i = from; i < to; i++) {
+            try {
+                myCompiled[i] = compiler.compile(myPatterns.get(i), flags);
+            } catch (PatternSyntaxException e) {
+                myErrors[i] = e;
+            }
+        }
+    }
+}
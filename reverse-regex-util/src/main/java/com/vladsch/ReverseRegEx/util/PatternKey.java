@@ -0,0 +1,38 @@
+package com.vladsch.ReverseRegEx.util;
+
+/**
+ * (pattern, flags) key of compiled pattern caches
+ */
+final class PatternKey {
+    private final String myPattern;
+    private final int myFlags;
+    private final int myHash;
+
+    PatternKey(final String pattern, final int flags) {
+        myPattern = pattern;
+        myFlags = flags;
+        myHash = 31 * pattern.hashCode() + flags;
+    }
+
+    String getPattern() {
+        return myPattern;
+    }
+
+    int getFlags() {
+        return myFlags;
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+        if (this == o) return true;
+        if (!(o instanceof PatternKey)) return false;
+
+        PatternKey key = (PatternKey) o;
+        return myFlags == key.myFlags && myPattern.equals(key.myPattern);
+    }
+
+    @Override
+    public int hashCode() {
+        return myHash;
+    }
+}
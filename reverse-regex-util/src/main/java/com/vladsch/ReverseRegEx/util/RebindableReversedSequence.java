@@ -0,0 +1,126 @@
+package com.vladsch.ReverseRegEx.util;
+
+import java.nio.CharBuffer;
+import java.util.Objects;
+
+/**
+ * Reversed view of a range of chars which can be bound to other chars without allocating
+ * <p>
+ * Used by {@link ReverseMatcher} for its input so resetting the matcher does not allocate a reversed sequence.
+ * Surrogate pairs are kept in order, like {@link ReversedCharSequence}, to match reversed patterns.
+ * Unlike {@link ReversedCharSequence} it is mutable: its chars and index mapping change when it is bound again,
+ * so it keeps identity equals and hashCode. {@link #subSequence(int, int)} returns an immutable
+ * {@link ReversedCharSequence} which compares by content.
+ * <p>
+ * A String or heap CharBuffer is kept by its type when bound and read directly, like {@link ReversedCharSequence#of},
+ * only a surrogate goes through the CharSequence to check for its pair.
+ */
+final class RebindableReversedSequence extends ReverseIndexMapperBase implements ReverseCharSequence {
+    private CharSequence myChars;
+    // one of myString, myArray or neither is set for the bound chars
+    private String myString;
+    private char[] myArray;
+    private int myArrayOffset;
+    private int myStartIndex;
+    private int myEndIndex;
+
+    RebindableReversedSequence() {
+        myChars = "";
+    }
+
+    /**
+     * @param chars chars to reverse
+     * @param start start index in chars
+     * @param end   end index in chars
+     *
+     * @return this
+     */
+    RebindableReversedSequence bind(final CharSequence chars, final int start, final int end) {
+        Objects.checkFromToIndex(start, end, chars.length());
+        myChars = chars;
+        myStartIndex = start;
+        myEndIndex = end;
+
+        if (chars instanceof String) {
+            myString = (String) chars;
+            myArray = null;
+        } else if (chars instanceof CharBuffer && ((CharBuffer) chars).hasArray()) {
+            CharBuffer buffer = (CharBuffer) chars;
+            myString = null;
+            myArray = buffer.array();
+            myArrayOffset = buffer.arrayOffset() + buffer.position();
+        } else {
+            myString = null;
+            myArray = null;
+        }
+        return this;
+    }
+
+    @Override
+    public CharSequence getReversedChars() {
+        return myChars;
+    }
+
+    public int getStartIndex() {
+        return myStartIndex;
+    }
+
+    @Override
+    public int getEndIndex() {
+        return myEndIndex;
+    }
+
+    @Override
+    public int length() {
+        return myEndIndex - myStartIndex;
+    }
+
+    @Override
+    public char charAt(final int index) {
+        final int i = myEndIndex - 1 - Objects.checkIndex(index, myEndIndex - myStartIndex);
+        final char c;
+        if (myString != null) {
+            c = myString.charAt(i);
+        } else if (myArray != null) {
+            c = myArray[myArrayOffset + i];
+        } else {
+            return ReversedCharSequence.pairedChar(myChars, myStartIndex, myEndIndex, i);
+        }
+        return Character.isSurrogate(c) ? ReversedCharSequence.pairedChar(myChars, myStartIndex, myEndIndex, i) : c;
+    }
+
+    @Override
+    public int mapIndex(final int index) {
+        return ReversedCharSequence.pairedIndex(myChars, myStartIndex, myEndIndex, myEndIndex - 1 - Objects.checkIndex(index, myEndIndex - myStartIndex));
+    }
+
+    @Override
+    public ReversedCharSequence subSequence(final int start, final int end) {
+        Objects.checkFromToIndex(start, end, myEndIndex - myStartIndex);
+        return ReversedCharSequence.of(myChars, myEndIndex - end, myEndIndex - start);
+    }
+
+    @Override
+    public void getChars(final int srcBegin, final int srcEnd, final char[] dst, int dstBegin) {
+        Objects.checkFromToIndex(srcBegin, srcEnd, myEndIndex - myStartIndex);
+        Objects.checkFromIndexSize(dstBegin, srcEnd - srcBegin, dst.length);
+        for (int i = myEndIndex - 1 - srcBegin, iMin = myEndIndex - srcEnd; i >= iMin; i--) {
+            dst[dstBegin++] = charAt(myEndIndex - 1 - i);
+        }
+    }
+
+    /**
+     * @return original chars of range [start, end) of this sequence
+     */
+    String reversedString(final int start, final int end) {
+        Objects.checkFromToIndex(start, end, myEndIndex - myStartIndex);
+        return myChars.subSequence(myEndIndex - end, myEndIndex - start).toString();
+    }
+
+    @Override
+    public String toString() {
+        char[] chars = new char[length()];
+        getChars(0, chars.length, chars, 0);
+        return new String(chars);
+    }
+}
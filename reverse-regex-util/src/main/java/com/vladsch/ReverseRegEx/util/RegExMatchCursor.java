@@ -0,0 +1,47 @@
+package com.vladsch.ReverseRegEx.util;
+
+/**
+ * Read-only cursor of a matcher, one per matcher so visiting matches does not allocate
+ */
+final class RegExMatchCursor implements MatchCursor {
+    private final RegExMatcher myMatcher;
+
+    RegExMatchCursor(final RegExMatcher matcher) {
+        myMatcher = matcher;
+    }
+
+    @Override
+    public int start() {
+        return myMatcher.start();
+    }
+
+    @Override
+    public int end() {
+        return myMatcher.end();
+    }
+
+    @Override
+    public int start(final int group) {
+        return myMatcher.start(group);
+    }
+
+    @Override
+    public int end(final int group) {
+        return myMatcher.end(group);
+    }
+
+    @Override
+    public int groupCount() {
+        return myMatcher.groupCount();
+    }
+
+    @Override
+    public CharSequence groupView(final int group) {
+        return myMatcher.groupView(group);
+    }
+
+    @Override
+    public String toString() {
+        return "MatchCursor[" + start() + ", " + end() + ")";
+    }
+}
@@ -0,0 +1,122 @@
+package com.vladsch.ReverseRegEx.util;
+
+import java.util.regex.MatchResult;
+
+/**
+ * Immutable result of a match, returned by {@link ReverseMatcher#toMatchResult()} and {@link ForwardMatcher#toMatchResult()}
+ * <p>
+ * Start and end of all groups are kept as indices of the original text in original group numbers, so a reverse
+ * match needs no mapping when accessed. Bounds of the match and of a single capturing group are fields of the
+ * result, only a result with more groups has an array of group bounds. The text is referenced and group strings
+ * are created when requested, the text must not be modified while the result is used.
+ */
+public final class RegExMatchResult implements MatchResult {
+    private final CharSequence myText;
+    private final int myGroupCount;
+    // bounds of the match, start is -1 if there was no match
+    private final int myStart;
+    private final int myEnd;
+    // bounds of group 1 if it is the only group, -1 for a group which did not match
+    private final int myStart1;
+    private final int myEnd1;
+    // start and end of group i at 2 * i - 2 and 2 * i - 1 if there is more than one group, otherwise null
+    private final int[] myBounds;
+
+    private RegExMatchResult(final CharSequence text, final int groupCount, final int start, final int end, final int start1, final int end1, final int[] bounds) {
+        myText = text;
+        myGroupCount = groupCount;
+        myStart = start;
+        myEnd = end;
+        myStart1 = start1;
+        myEnd1 = end1;
+        myBounds = bounds;
+    }
+
+    /**
+     * @param text  original text of the match
+     * @param match current match, in indices of text
+     *
+     * @return immutable copy of the bounds of match, or a result without a match if there is none
+     */
+    static RegExMatchResult of(final CharSequence text, final MatchResult match) {
+        final int start;
+        try {
+            start = match.start();
+        } catch (IllegalStateException ignored) {
+            return new RegExMatchResult(text, 0, -1, -1, -1, -1, null);
+        }
+
+        final int groupCount = match.groupCount();
+        if (groupCount == 0) return new RegExMatchResult(text, 0, start, match.end(), -1, -1, null);
+        if (groupCount == 1) return new RegExMatchResult(text, 1, start, match.end(), match.start(1), match.end(1), null);
+
+        final int[] bounds = new int[2 * groupCount];
+        for (int i = 1; i <= groupCount; i++) {
+            bounds[2 * i - 2] = match.start(i);
+            bounds[2 * i - 1] = match.end(i);
+        }
+        return new RegExMatchResult(text, groupCount, start, match.end(), -1, -1, bounds);
+    }
+
+    /**
+     * @return original text of the match
+     */
+    public CharSequence text() {
+        return myText;
+    }
+
+    private void checkMatch() {
+        if (myStart == -1) throw new IllegalStateException("No match available");
+    }
+
+    private int bound(final int group, final int end) {
+        checkMatch();
+        if (group < 0 || group > myGroupCount) throw new IndexOutOfBoundsException("No group " + group);
+        if (group == 0) return end == 0 ? myStart : myEnd;
+        if (myBounds == null) return end == 0 ? myStart1 : myEnd1;
+        return myBounds[2 * group - 2 + end];
+    }
+
+    @Override
+    public int start() {
+        checkMatch();
+        return myStart;
+    }
+
+    @Override
+    public int start(final int group) {
+        return bound(group, 0);
+    }
+
+    @Override
+    public int end() {
+        checkMatch();
+        return myEnd;
+    }
+
+    @Override
+    public int end(final int group) {
+        return bound(group, 1);
+    }
+
+    @Override
+    public String group() {
+        return group(0);
+    }
+
+    @Override
+    public String group(final int group) {
+        final int start = bound(group, 0);
+        return start == -1 ? null : myText.subSequence(start, bound(group, 1)).toString();
+    }
+
+    @Override
+    public int groupCount() {
+        return myGroupCount;
+    }
+
+    @Override
+    public String toString() {
+        return myStart == -1 ? "RegExMatchResult[no match]" : "RegExMatchResult[" + myStart + ", " + myEnd + ")";
+    }
+}
@@ -1,17 +1,62 @@
 package com.vladsch.ReverseRegEx.util;
 
+import java.io.IOException;
 import java.util.regex.MatchResult;
 import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 public interface RegExMatcher extends MatchResult {
     Pattern pattern();
 
     MatchResult toMatchResult();
 
+    /**
+     * Stream of immutable results of successive finds, as {@link java.util.regex.Matcher#results()}
+     * <p>
+     * The matcher is not reset, finds are done as elements are consumed so short-circuiting operations stop the
+     * search. The matcher should not be used until the stream is done.
+     *
+     * @return stream of match results in the order they are found
+     */
+    default Stream<MatchResult> results() {
+        return StreamSupport.stream(new MatchResultSpliterator(this), false);
+    }
+
+    /**
+     * Call visitor with each successive find without allocating per match
+     * <p>
+     * The matcher is not reset. The cursor passed to the visitor is reused for every match.
+     *
+     * @param visitor visitor of matches, returns false to stop
+     *
+     * @return number of matches visited
+     */
+    default int forEachMatch(MatchVisitor visitor) {
+        final MatchCursor cursor = new RegExMatchCursor(this);
+        int count = 0;
+        while (find()) {
+            count++;
+            if (!visitor.visit(cursor)) break;
+        }
+        return count;
+    }
+
     RegExMatcher appendReplacement(StringBuffer sb, String replacement);
 
     StringBuffer appendTail(StringBuffer sb);
 
+    default RegExMatcher appendReplacement(StringBuilder sb, String replacement) {
+        final StringBuffer buffer = new StringBuffer();
+        appendReplacement(buffer, replacement);
+        sb.append(buffer);
+        return this;
+    }
+
+    default StringBuilder appendTail(StringBuilder sb) {
+        return sb.append(appendTail(new StringBuffer()));
+    }
+
     RegExMatcher reset();
 
     RegExMatcher reset(CharSequence input);
@@ -36,6 +81,20 @@ public interface RegExMatcher extends MatchResult {
 
     String group(String name);
 
+    /**
+     * @param group group number
+     *
+     * @return group text as a view of the input without copying it, or null if the group did not match. The default
+     *         returns a copy from {@link #group(int)}.
+     */
+    default CharSequence groupView(int group) {
+        return group(group);
+    }
+
+    default CharSequence groupView(String name) {
+        return group(name);
+    }
+
     @Override
     int groupCount();
 
@@ -51,6 +110,49 @@ public interface RegExMatcher extends MatchResult {
 
     String replaceFirst(String replacement);
 
+    /**
+     * Reset and append the input with all matches replaced to sb
+     *
+     * @param replacement replacement string
+     * @param sb          output
+     *
+     * @return sb
+     */
+    default StringBuilder replaceAll(String replacement, StringBuilder sb) {
+        reset();
+        while (find()) {
+            appendReplacement(sb, replacement);
+        }
+        return appendTail(sb);
+    }
+
+    default StringBuilder replaceFirst(String replacement, StringBuilder sb) {
+        reset();
+        if (find()) appendReplacement(sb, replacement);
+        return appendTail(sb);
+    }
+
+    /**
+     * Reset and append the input with all matches replaced to out
+     *
+     * @param replacement replacement string
+     * @param out         output
+     * @param <A>         type of output
+     *
+     * @return out
+     *
+     * @throws IOException if appending to out fails
+     */
+    default <A extends Appendable> A replaceAll(String replacement, A out) throws IOException {
+        out.append(replaceAll(replacement, new StringBuilder()));
+        return out;
+    }
+
+    default <A extends Appendable> A replaceFirst(String replacement, A out) throws IOException {
+        out.append(replaceFirst(replacement, new StringBuilder()));
+        return out;
+    }
+
     RegExMatcher region(int start, int end);
 
     int regionStart();
@@ -7,6 +7,30 @@ public interface RegExPattern {
 
     RegExMatcher matcher(CharSequence input);
 
+    /**
+     * Matcher of a range of input without a sub-sequence or view of the range
+     * <p>
+     * The range bounds the matcher as a region does, with opaque and anchoring bounds. Match offsets and region
+     * bounds are indices in input.
+     * <p>
+     * The range is kept by {@link RegExMatcher#reset()}, which sets the region to the range, and replaced by
+     * {@link RegExMatcher#reset(CharSequence)}. {@link RegExMatcher#replaceAll(String)},
+     * {@link RegExMatcher#replaceFirst(String)} and their overloads return all of input, with matches in the range
+     * replaced and text outside the range unchanged.
+     * <p>
+     * The default sets the region of {@link #matcher(CharSequence)} to the range, which is not kept by
+     * {@link RegExMatcher#reset()}. Implementations override it to keep the range.
+     *
+     * @param input input chars
+     * @param from  start index of range in input
+     * @param to    end index of range in input
+     *
+     * @return matcher of input range
+     */
+    default RegExMatcher matcher(CharSequence input, int from, int to) {
+        return matcher(input).region(from, to);
+    }
+
     String[] split(CharSequence input, int limit);
 
     String[] split(CharSequence input);
@@ -0,0 +1,138 @@
+package com.vladsch.ReverseRegEx.util;
+
+import java.io.IOException;
+import java.util.ArrayList;
+
+/**
+ * Parsed replacement string of {@link ReverseMatcher} replace methods
+ * <p>
+ * Syntax is that of {@link java.util.regex.Matcher#appendReplacement(StringBuffer, String)}: {@code $n} and
+ * {@code ${name}} are group references and {@code \} escapes the next char. Group references are resolved to
+ * original group numbers so a replacement is expanded in forward order from the original text, without reversing
+ * the replacement or the result.
+ */
+final class ReplacementTemplate {
+    private final String myReplacement;
+    // literal i is followed by group reference i, the last literal has no reference
+    private final String[] myLiterals;
+    private final int[] myGroups;
+
+    private ReplacementTemplate(final String replacement, final String[] literals, final int[] groups) {
+        myReplacement = replacement;
+        myLiterals = literals;
+        myGroups = groups;
+    }
+
+    String getReplacement() {
+        return myReplacement;
+    }
+
+    /**
+     * @return number of group references
+     */
+    int getGroupCount() {
+        return myGroups.length;
+    }
+
+    /**
+     * @param index index of group reference
+     *
+     * @return original group number of reference
+     */
+    int getGroup(final int index) {
+        return myGroups[index];
+    }
+
+    /**
+     * @param replacement replacement string
+     * @param pattern     pattern of the matcher, for group names
+     * @param groupCount  number of groups of the pattern
+     *
+     * @return parsed replacement
+     *
+     * @throws IllegalArgumentException  if replacement has a malformed escape or group reference
+     * @throws IndexOutOfBoundsException if replacement references a group which does not exist
+     */
+    static ReplacementTemplate parse(final String replacement, final ReversePattern pattern, final int groupCount) {
+        ArrayList<String> literals = new ArrayList<>();
+        ArrayList<Integer> groups = new ArrayList<>();
+        StringBuilder literal = new StringBuilder();
+        final int length = replacement.length();
+        int i = 0;
+
+        while (i < length) {
+            char c = replacement.charAt(i++);
+            if (c == '\\') {
+                if (i == length) throw new IllegalArgumentException("character to be escaped is missing");
+                literal.append(replacement.charAt(i++));
+            } else if (c == '$') {
+                if (i == length) throw new IllegalArgumentException("Illegal group reference: group index is missing");
+
+                int group;
+                c = replacement.charAt(i++);
+                if (c == '{') {
+                    final int nameStart = i;
+                    while (i < length && isNameChar(replacement.charAt(i))) i++;
+                    if (i == nameStart) throw new IllegalArgumentException("named capturing group has 0 length name");
+                    if (i == length || replacement.charAt(i) != '}') throw new IllegalArgumentException("named capturing group is missing trailing '}'");
+
+                    final String name = replacement.substring(nameStart, i++);
+                    group = pattern.getOriginalNamedGroupIndex(name);
+                    if (group < 0) throw new IllegalArgumentException("No group with name {" + name + "}");
+                } else {
+                    group = c - '0';
+                    if (group < 0 || group > 9) throw new IllegalArgumentException("Illegal group reference");
+
+                    // the largest group number which exists
+                    while (i < length) {
+                        final int digit = replacement.charAt(i) - '0';
+                        if (digit < 0 || digit > 9) break;
+                        final int next = group * 10 + digit;
+                        if (next > groupCount) break;
+                        group = next;
+                        i++;
+                    }
+                    if (group > groupCount) throw new IndexOutOfBoundsException("No group " + group);
+                }
+
+                literals.add(literal.toString());
+                groups.add(group);
+                literal.setLength(0);
+            } else {
+                literal.append(c);
+            }
+        }
+        literals.add(literal.toString());
+
+        int[] groupArray = new int[groups.size()];
+        for (int j = 0; j < groupArray.length; j++) {
+            groupArray[j] = groups.get(j);
+        }
+        return new ReplacementTemplate(replacement, literals.toArray(new String[0]), groupArray);
+    }
+
+    private static boolean isNameChar(final char c) {
+        return c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z' || c >= '0' && c <= '9';
+    }
+
+    /**
+     * Append the expanded replacement
+     *
+     * @param out    output
+     * @param text   original text
+     * @param bounds start and end in text of each group reference, -1 for a group which did not match
+     * @param offset index of the first reference bound in bounds
+     *
+     * @throws IOException if appending fails
+     */
+    void append(final Appendable out, final CharSequence text, final int[] bounds, final int offset) throws IOException {
+        final String[] literals = myLiterals;
+        final int iMax = myGroups.length;
+        for (int i = 0; i < iMax; i++) {
+            if (!literals[i].isEmpty()) out.append(literals[i]);
+            final int start = bounds[offset + 2 * i];
+            if (start != -1) out.append(text, start, bounds[offset + 2 * i + 1]);
+        }
+        if (!literals[iMax].isEmpty()) out.append(literals[iMax]);
+    }
+}
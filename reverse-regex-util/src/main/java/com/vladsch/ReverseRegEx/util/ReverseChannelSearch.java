@@ -0,0 +1,258 @@
+package com.vladsch.ReverseRegEx.util;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+import java.util.function.Predicate;
+
+/**
+ * Reverse search of a SeekableByteChannel read backward in blocks, for files too large to map
+ * <p>
+ * Bytes are ISO-8859-1 chars, as for {@link ReversedCharSequence#ofLatin1}, so match offsets are byte offsets in the
+ * channel. ASCII patterns match ASCII bytes of UTF-8 text.
+ * <p>
+ * A {@link ReverseMatcher} searches a window of bytes ending at the search position. When a find hits the start of
+ * the window, {@link ReverseMatcher#hitEnd()}, the result could change with more input so an earlier block is read
+ * into the window and the find is repeated. Only the last {@code maxMatchLength} bytes of a searched window and
+ * {@code contextLength} bytes after the search position are kept, so memory is bounded by
+ * {@code blockSize + maxMatchLength + contextLength}.
+ * <p>
+ * {@code maxMatchLength} bounds the input examined from the end of a match, including lookaround before it. A match
+ * which needs more can be missed or reported shorter. {@code contextLength} bytes after the search position are
+ * visible to lookaround after a match and to {@code $} and {@code \b}, at least one is always kept.
+ * <p>
+ * A search is not thread safe, like a Matcher it should be used by one thread at a time.
+ */
+public final class ReverseChannelSearch {
+    public static final int DEFAULT_BLOCK_SIZE = 64 * 1024;
+    public static final int DEFAULT_MAX_MATCH_LENGTH = 4 * 1024;
+    public static final int DEFAULT_CONTEXT_LENGTH = 64;
+
+    private final ReversePattern myPattern;
+    private final int myBlockSize;
+    private final int myMaxMatchLength;
+    private final int myContextLength;
+    private byte[] myBuffer;
+
+    public ReverseChannelSearch(final ReversePattern pattern) {
+        this(pattern, DEFAULT_BLOCK_SIZE, DEFAULT_MAX_MATCH_LENGTH, DEFAULT_CONTEXT_LENGTH);
+    }
+
+    /**
+     * @param pattern        pattern to search
+     * @param blockSize      bytes read from the channel at a time
+     * @param maxMatchLength maximum number of bytes examined from the end of a match
+     * @param contextLength  bytes after the search position kept for lookaround, at least 1
+     */
+    public ReverseChannelSearch(final ReversePattern pattern, final int blockSize, final int maxMatchLength, final int contextLength) {
+        if (blockSize < 1) throw new IllegalArgumentException("blockSize " + blockSize + " must be > 0");
+        if (maxMatchLength < 1) throw new IllegalArgumentException("maxMatchLength " + maxMatchLength + " must be > 0");
+        if (contextLength < 1) throw new IllegalArgumentException("contextLength " + contextLength + " must be > 0");
+        if ((long) blockSize + maxMatchLength + contextLength > Integer.MAX_VALUE - 8)
+            throw new IllegalArgumentException("blockSize + maxMatchLength + contextLength exceeds maximum array size");
+
+        myPattern = pattern;
+        myBlockSize = blockSize;
+        myMaxMatchLength = maxMatchLength;
+        myContextLength = contextLength;
+    }
+
+    public ReversePattern getPattern() {
+        return myPattern;
+    }
+
+    public int getBlockSize() {
+        return myBlockSize;
+    }
+
+    public int getMaxMatchLength() {
+        return myMaxMatchLength;
+    }
+
+    public int getContextLength() {
+        return myContextLength;
+    }
+
+    /**
+     * Search from the end of the channel to its start
+     *
+     * @param channel channel to search, its position is changed
+     * @param handler called with each match in reverse order, return false to stop the search
+     *
+     * @return number of matches passed to handler
+     *
+     * @throws IOException if reading the channel fails
+     */
+    public long search(final SeekableByteChannel channel, final Predicate<? super Match> handler) throws IOException {
+        return search(channel, 0, channel.size(), handler);
+    }
+
+    /**
+     * Search from end to start of a range of the channel
+     * <p>
+     * Up to {@code contextLength} bytes after the range are visible to lookaround, as with transparent bounds of a
+     * region. Bytes before the range are not read, its start is the start of input.
+     *
+     * @param channel channel to search, its position is changed
+     * @param start   start offset of range in channel
+     * @param end     end offset of range in channel
+     * @param handler called with each match in reverse order, return false to stop the search
+     *
+     * @return number of matches passed to handler
+     *
+     * @throws IOException if reading the channel fails
+     */
+    public long search(final SeekableByteChannel channel, final long start, final long end, final Predicate<? super Match> handler) throws IOException {
+        final long size = channel.size();
+        if (start < 0 || start > end || end > size)
+            throw new IndexOutOfBoundsException("[" + start + ", " + end + ") not in [0, " + size + "]");
+
+        // window is right aligned in the buffer, [capacity - windowLength, capacity)
+        final int capacity = myBlockSize + myMaxMatchLength + myContextLength;
+        if (myBuffer == null || myBuffer.length != capacity) myBuffer = new byte[capacity];
+        final byte[] buffer = myBuffer;
+
+        final Match match = new Match();
+        ReverseMatcher matcher = null;
+        long count = 0;
+        // matches end at or before searchPos, window is [windowStart, windowEnd)
+        long searchPos = end;
+        long windowEnd = Math.min(size, end + myContextLength);
+        long windowStart = windowEnd;
+        // position of the last empty match, so it is not found again after the window changes
+        long emptyAt = -1;
+
+        while (true) {
+            // keep context after search position and read a block before the window
+            final long keepEnd = Math.min(windowEnd, searchPos + myContextLength);
+            if (keepEnd < windowEnd) {
+                final int keep = (int) (keepEnd - windowStart);
+                System.arraycopy(buffer, capacity - (int) (windowEnd - windowStart), buffer, capacity - keep, keep);
+                windowEnd = keepEnd;
+            }
+
+            // the first window also reads the context after the range
+            final long readStart = Math.max(start, Math.min(windowStart, searchPos) - myBlockSize);
+            final int windowLength = (int) (windowEnd - readStart);
+            read(channel, readStart, buffer, capacity - windowLength, (int) (windowStart - readStart));
+            windowStart = readStart;
+
+            final ReverseCharSequence text = ReversedCharSequence.ofLatin1(ByteBuffer.wrap(buffer, capacity - windowLength, windowLength));
+            if (matcher == null) {
+                matcher = new ReverseMatcher(myPattern, text);
+                matcher.useTransparentBounds(true);
+                matcher.useAnchoringBounds(false);
+            } else {
+                matcher.reset(text);
+            }
+
+            final boolean atStart = windowStart == start;
+            // ends of matches beyond this bound are not changed by more input
+            final long stableEnd = windowStart + myMaxMatchLength;
+            matcher.region(0, (int) (searchPos - windowStart));
+            match.myMatcher = matcher;
+            match.myOffset = windowStart;
+
+            boolean more = false;
+            while (matcher.find()) {
+                final long matchStart = windowStart + matcher.start();
+                final long matchEnd = windowStart + matcher.end();
+                if (matchStart == matchEnd && matchStart == emptyAt) continue;
+
+                if (!atStart && matcher.hitEnd() && matchEnd <= stableEnd) {
+                    more = true;
+                    break;
+                }
+
+                count++;
+                searchPos = matchStart;
+                if (matchStart == matchEnd) emptyAt = matchStart;
+                if (!handler.test(match)) return count;
+            }
+
+            if (atStart) return count;
+            if (!more && !matcher.hitEnd()) {
+                // no match can end in the window, none can start before it
+                searchPos = windowStart;
+            }
+            searchPos = Math.min(searchPos, stableEnd);
+        }
+    }
+
+    private static void read(final SeekableByteChannel channel, final long position, final byte[] buffer, final int offset, final int length) throws IOException {
+        final ByteBuffer bytes = ByteBuffer.wrap(buffer, offset, length);
+        channel.position(position);
+        while (bytes.hasRemaining()) {
+            if (channel.read(bytes) < 0) throw new EOFException("Channel ended at " + (position + bytes.position() - offset) + " before " + (position + length));
+        }
+    }
+
+    /**
+     * Current match of a search, valid only while it is passed to the handler
+     * <p>
+     * Offsets are channel offsets, -1 for a group which did not match.
+     */
+    public static final class Match {
+        ReverseMatcher myMatcher;
+        long myOffset;
+
+        Match() {
+        }
+
+        private long offset(final int index) {
+            return index < 0 ? -1 : myOffset + index;
+        }
+
+        public long start() {
+            return offset(myMatcher.start());
+        }
+
+        public long start(final int group) {
+            return offset(myMatcher.start(group));
+        }
+
+        public long end() {
+            return offset(myMatcher.end());
+        }
+
+        public long end(final int group) {
+            return offset(myMatcher.end(group));
+        }
+
+        public String group() {
+            return myMatcher.group();
+        }
+
+        public String group(final int group) {
+            return myMatcher.group(group);
+        }
+
+        public String group(final String name) {
+            return myMatcher.group(name);
+        }
+
+        public int groupCount() {
+            return myMatcher.groupCount();
+        }
+
+        /**
+         * @return matcher of the window the match was found in, its offsets are relative to {@link #windowOffset()}
+         */
+        public ReverseMatcher matcher() {
+            return myMatcher;
+        }
+
+        /**
+         * @return channel offset of index 0 of the matcher's input
+         */
+        public long windowOffset() {
+            return myOffset;
+        }
+
+        @Override
+        public String toString() {
+            return "[" + start() + ", " + end() + ") " + group();
+        }
+    }
+}
@@ -1,5 +1,23 @@
 package com.vladsch.ReverseRegEx.util;
 
+import java.util.Objects;
+
 public interface ReverseCharSequence extends CharSequence, ReverseIndexHolder {
     CharSequence getReversedChars();
+
+    /**
+     * Copy chars of this sequence into an array, same as {@link String#getChars(int, int, char[], int)}
+     *
+     * @param srcBegin index of first char to copy
+     * @param srcEnd   index after last char to copy
+     * @param dst      destination array
+     * @param dstBegin start index in destination array
+     */
+    default void getChars(int srcBegin, int srcEnd, char[] dst, int dstBegin) {
+        Objects.checkFromToIndex(srcBegin, srcEnd, length());
+        Objects.checkFromIndexSize(dstBegin, srcEnd - srcBegin, dst.length);
+        for (int i = srcBegin; i < srcEnd; i++) {
+            dst[dstBegin++] = charAt(i);
+        }
+    }
 }
@@ -1,5 +1,7 @@
 package com.vladsch.ReverseRegEx.util;
 
+import java.io.IOException;
+import java.util.Arrays;
 import java.util.regex.MatchResult;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -9,27 +11,63 @@ import java.util.regex.Pattern;
  * also changes the group numbers from original pattern to reversed pattern groups
  */
 public class ReverseMatcher implements RegExMatcher {
+    // larger replace buffers are dropped after use so replacing in a huge input does not keep them for the life of the matcher
+    private static final int MAX_RETAINED_BUFFER = 16 * 1024;
+
     private ReversePattern myReversePattern;
     private ReverseCharSequence myText;
     private Matcher myMatcher;
+    // reversed view of input which is not a ReverseCharSequence, rebound on reset
+    private RebindableReversedSequence myInput;
+    // original chars of myText for match results, null until needed
+    private CharSequence myOriginalText;
+    // cursor of forEachMatch, null until needed
+    private MatchCursor myCursor;
+    // last parsed replacement, bounds of matches and scratch buffer of replace methods, null until needed
+    private ReplacementTemplate myTemplate;
+    private int[] myBounds;
+    private StringBuilder myReplacement;
 
     /**
      * Constructor of reversed matcher that takes a ReversedRegEx instance and an input character sequence.
-     * if input is not an instance of ReverseCharSequence then it is wrapped in ReversedCharSequence class.
+     * if input is not an instance of ReverseCharSequence then it is wrapped in a reversed view owned by the matcher.
      *
      * @param reversePattern reversed regex instance
      * @param input          char sequence to use as input for matching
      */
     public ReverseMatcher(final ReversePattern reversePattern, final CharSequence input) {
         myReversePattern = reversePattern;
-        myText = input instanceof ReverseCharSequence ? (ReverseCharSequence) input : ReversedCharSequence.of(input);
-        myMatcher = Pattern.compile(myReversePattern.pattern(), myReversePattern.flags()).matcher(myText);
+        myText = input instanceof ReverseCharSequence ? (ReverseCharSequence) input : reversed(input, 0, input.length());
+        myMatcher = myReversePattern.compiled().matcher(myText);
+    }
+
+    /**
+     * Constructor of reversed matcher of a range of input, match offsets are indices in input, see
+     * {@link RegExPattern#matcher(CharSequence, int, int)}
+     *
+     * @param reversePattern reversed regex instance
+     * @param input          original chars, even if it is a ReverseCharSequence
+     * @param start          start index of range in input
+     * @param end            end index of range in input
+     */
+    public ReverseMatcher(final ReversePattern reversePattern, final CharSequence input, final int start, final int end) {
+        myReversePattern = reversePattern;
+        myText = reversed(input, start, end);
+        myMatcher = myReversePattern.compiled().matcher(myText);
+    }
+
+    private ReverseCharSequence reversed(final CharSequence input, final int start, final int end) {
+        if (myInput == null) myInput = new RebindableReversedSequence();
+        return myInput.bind(input, start, end);
     }
 
     public ReversePattern reversedRegEx() {
         return myReversePattern;
     }
 
+    /**
+     * @return reversed text, when the input was not a ReverseCharSequence this is a view which changes on reset
+     */
     public ReverseCharSequence reversedText() {
         return myText;
     }
@@ -38,33 +76,103 @@ public class ReverseMatcher implements RegExMatcher {
         return myText.getReversedChars();
     }
 
+    private CharSequence originalText() {
+        CharSequence text = myOriginalText;
+        if (text == null) {
+            text = myText.getReversedChars();
+            myOriginalText = text;
+        }
+        return text;
+    }
+
     @Override
     public Pattern pattern() {
         return myMatcher.pattern();
     }
 
+    /**
+     * @return immutable result of the current match with original group numbers and indices, referencing the text
+     */
     @Override
-    public MatchResult toMatchResult() {
-        return this;
+    public RegExMatchResult toMatchResult() {
+        return RegExMatchResult.of(originalText(), this);
+    }
+
+    @Override
+    public int forEachMatch(final MatchVisitor visitor) {
+        MatchCursor cursor = myCursor;
+        if (cursor == null) {
+            cursor = new RegExMatchCursor(this);
+            myCursor = cursor;
+        }
+
+        int count = 0;
+        while (myMatcher.find()) {
+            count++;
+            if (!visitor.visit(cursor)) break;
+        }
+        return count;
     }
 
     /**
-     * Does not reverse the string buffer, only the replacement param
-     * when all appending is done the buffer result should be reversed
+     * Does not reverse the string buffer, appends the reversed text before the match and the reversed expanded
+     * replacement. When all appending is done the buffer result should be reversed, {@link #replaceAll(String, Appendable)}
+     * assembles the result in forward order.
      *
      * @param sb          target string buffer
-     * @param replacement replacement string
+     * @param replacement replacement string, group references are original group numbers and names
      *
      * @return this for chaining
      */
     @Override
     public ReverseMatcher appendReplacement(final StringBuffer sb, final String replacement) {
-        myMatcher.appendReplacement(sb, reversedString(replacement));
+        final ReplacementTemplate template = template(replacement);
+        final int[] bounds = storeBounds(template, 0);
+        myMatcher.appendReplacement(sb, "");
+        sb.append(reversedReplacement(template, bounds));
+        return this;
+    }
+
+    /**
+     * Same as {@link #appendReplacement(StringBuffer, String)} without synchronization
+     *
+     * @param sb          target string builder
+     * @param replacement replacement string, group references are original group numbers and names
+     *
+     * @return this for chaining
+     */
+    @Override
+    public ReverseMatcher appendReplacement(final StringBuilder sb, final String replacement) {
+        final ReplacementTemplate template = template(replacement);
+        final int[] bounds = storeBounds(template, 0);
+        myMatcher.appendReplacement(sb, "");
+        sb.append(reversedReplacement(template, bounds));
         return this;
     }
 
     /**
-     * Does not reverse the string buffer, only the replacement param
+     * @return replacement expanded from the original text and reversed, in a buffer reused by the matcher
+     */
+    private StringBuilder reversedReplacement(final ReplacementTemplate template, final int[] bounds) {
+        StringBuilder expanded = myReplacement;
+        if (expanded == null) {
+            expanded = new StringBuilder();
+            myReplacement = expanded;
+        }
+        expanded.setLength(0);
+        try {
+            template.append(expanded, originalText(), bounds, 2);
+        } catch (IOException e) {
+            // StringBuilder does not throw
+            throw new IllegalStateException(e);
+        }
+        expanded.reverse();
+        if (expanded.capacity() > MAX_RETAINED_BUFFER) myReplacement = null;
+        return expanded;
+    }
+
+    /**
+     * Does not reverse the string buffer
      *
      * @param sb target string buffer
      *
@@ -75,21 +183,135 @@ public class ReverseMatcher implements RegExMatcher {
         return myMatcher.appendTail(sb);
     }
 
+    @Override
+    public StringBuilder appendTail(final StringBuilder sb) {
+        return myMatcher.appendTail(sb);
+    }
+
+    private ReplacementTemplate template(final String replacement) {
+        ReplacementTemplate template = myTemplate;
+        if (template == null || !template.getReplacement().equals(replacement)) {
+            template = ReplacementTemplate.parse(replacement, myReversePattern, myMatcher.groupCount());
+            myTemplate = template;
+        }
+        return template;
+    }
+
+    /**
+     * Store start and end of the match and of each group reference of template in myBounds
+     *
+     * @param template replacement
+     * @param offset   index in myBounds
+     *
+     * @return myBounds
+     */
+    private int[] storeBounds(final ReplacementTemplate template, final int offset) {
+        final int groupCount = template.getGroupCount();
+        int[] bounds = myBounds;
+        if (bounds == null || bounds.length < offset + 2 + 2 * groupCount) {
+            bounds = bounds == null ? new int[Math.max(16, 2 + 2 * groupCount)] : Arrays.copyOf(bounds, Math.max(2 * bounds.length, offset + 2 + 2 * groupCount));
+            myBounds = bounds;
+        }
+
+        bounds[offset] = start();
+        bounds[offset + 1] = end();
+        for (int i = 0; i < groupCount; i++) {
+            final int group = template.getGroup(i);
+            bounds[offset + 2 + 2 * i] = start(group);
+            bounds[offset + 3 + 2 * i] = end(group);
+        }
+        return bounds;
+    }
+
+    /**
+     * Reset and replace matches, the result is assembled in forward order from the original text
+     *
+     * @param replacement replacement string, group references are original group numbers and names
+     * @param out         output for the text of the matcher with replacements
+     * @param all         true to replace all matches, false for the first match found, which is the last in the text
+     *
+     * @return out
+     */
+    private <A extends Appendable> A replace(final String replacement, final A out, final boolean all) throws IOException {
+        reset();
+        final CharSequence text = originalText();
+        // a range bound to the matcher's view is replaced in all of its input, text outside the range is unchanged
+        final boolean range = myText == myInput;
+        final int textEnd = range ? text.length() : myText.mapBoundary(0);
+        int pos = range ? 0 : myText.mapBoundary(myText.length());
+
+        if (find()) {
+            final ReplacementTemplate template = template(replacement);
+            final int stride = 2 + 2 * template.getGroupCount();
+            int count = 0;
+            do {
+                storeBounds(template, count++ * stride);
+            } while (all && find());
+
+            // matches were found from the end of the text
+            final int[] bounds = myBounds;
+            if (bounds.length > MAX_RETAINED_BUFFER) myBounds = null;
+            for (int offset = (count - 1) * stride; offset >= 0; offset -= stride) {
+                out.append(text, pos, bounds[offset]);
+                template.append(out, text, bounds, offset + 2);
+                pos = bounds[offset + 1];
+            }
+        }
+
+        out.append(text, pos, textEnd);
+        return out;
+    }
+
     public ReverseMatcher usePattern(final ReversePattern reversePattern) {
         myReversePattern = reversePattern;
-        myMatcher.usePattern(Pattern.compile(myReversePattern.pattern(), myReversePattern.flags()));
+        myTemplate = null;
+        myMatcher.usePattern(myReversePattern.compiled());
         return this;
     }
 
+    /**
+     * Reset the matcher, a range of input stays bound so the region is the range
+     *
+     * @return this
+     */
     @Override
     public ReverseMatcher reset() {
         myMatcher.reset();
         return this;
     }
 
+    /**
+     * Reset with new input, an input which is not a ReverseCharSequence is bound to the matcher's reversed view without
+     * allocating
+     *
+     * @param input char sequence to use as input for matching
+     *
+     * @return this
+     */
     @Override
     public ReverseMatcher reset(final CharSequence input) {
-        myText = input instanceof ReverseCharSequence ? (ReverseCharSequence) input : ReversedCharSequence.of(input);
+        myText = input instanceof ReverseCharSequence ? (ReverseCharSequence) input : reversed(input, 0, input.length());
+        myOriginalText = null;
+        myMatcher.reset(myText);
+        return this;
+    }
+
+    /**
+     * Reset with a range of new input bound to the matcher's reversed view without allocating
+     * <p>
+     * Input is always the original chars, even if it is a ReverseCharSequence. Match offsets are indices in input.
+     * The range is kept by {@link #reset()} and replace methods return all of input, see
+     * {@link RegExPattern#matcher(CharSequence, int, int)}.
+     *
+     * @param input char sequence to use as input for matching
+     * @param start start index of range in input
+     * @param end   end index of range in input
+     *
+     * @return this
+     */
+    public ReverseMatcher reset(final CharSequence input, final int start, final int end) {
+        myText = reversed(input, start, end);
+        myOriginalText = null;
         myMatcher.reset(myText);
         return this;
     }
@@ -103,7 +325,7 @@ public class ReverseMatcher implements RegExMatcher {
     public int start(final int group) {
         int groupIndex = myReversePattern.getReversedGroupIndex(group);
         int end = myMatcher.end(groupIndex);
-        return myText.mapBoundary(end);
+        return end == -1 ? -1 : myText.mapBoundary(end);
     }
 
     @Override
@@ -115,26 +337,78 @@ public class ReverseMatcher implements RegExMatcher {
     public int end(final int group) {
         int groupIndex = myReversePattern.getReversedGroupIndex(group);
         int start = myMatcher.start(groupIndex);
-        return myText.mapBoundary(start);
+        return start == -1 ? -1 : myText.mapBoundary(start);
     }
 
+    /**
+     * @param s chars to reverse
+     *
+     * @return code points of s in reverse order, surrogate pairs are kept in order as for patterns and matcher input
+     */
     public static String reversedString(CharSequence s) {
-        return s == null ? null : ReversedCharSequence.of(s).toString();
+        return s == null ? null : new StringBuilder(s).reverse().toString();
+    }
+
+    /**
+     * @param text  reversed text
+     * @param start start index in reversed text
+     * @param end   end index in reversed text
+     *
+     * @return original text of the reversed text range, copied once without intermediate strings
+     */
+    static String reversedString(final ReverseCharSequence text, final int start, final int end) {
+        if (text instanceof ReversedCharSequence) {
+            return ((ReversedCharSequence) text).reversedString(start, end);
+        }
+
+        if (text instanceof RebindableReversedSequence) {
+            return ((RebindableReversedSequence) text).reversedString(start, end);
+        }
+
+        char[] chars = new char[end - start];
+        text.getChars(start, end, chars, 0);
+        ReversedCharSequence.reverse(chars, 0, chars.length);
+        return new String(chars);
+    }
+
+    private String reversedString(final int start, final int end) {
+        return start == -1 ? null : reversedString(myText, start, end);
     }
 
     @Override
     public String group() {
-        return reversedString(myMatcher.group());
+        return reversedString(myMatcher.start(), myMatcher.end());
     }
 
     @Override
     public String group(final int group) {
-        return reversedString(myMatcher.group(myReversePattern.getReversedGroupIndex(group)));
+        int groupIndex = myReversePattern.getReversedGroupIndex(group);
+        return reversedString(myMatcher.start(groupIndex), myMatcher.end(groupIndex));
     }
 
     @Override
     public String group(final String name) {
-        return reversedString(myMatcher.group(name));
+        return reversedString(myMatcher.start(name), myMatcher.end(name));
+    }
+
+    private CharSequence groupView(final int start, final int end) {
+        return start == -1 ? null : new CharSubSequence(originalText(), myText.mapBoundary(end), myText.mapBoundary(start));
+    }
+
+    /**
+     * @param group original group number
+     *
+     * @return view of the group in the original text without copying it, or null if the group did not match
+     */
+    @Override
+    public CharSequence groupView(final int group) {
+        int groupIndex = myReversePattern.getReversedGroupIndex(group);
+        return groupView(myMatcher.start(groupIndex), myMatcher.end(groupIndex));
+    }
+
+    @Override
+    public CharSequence groupView(final String name) {
+        return groupView(myMatcher.start(name), myMatcher.end(name));
     }
 
     @Override
@@ -167,14 +441,65 @@ public class ReverseMatcher implements RegExMatcher {
         return Matcher.quoteReplacement(s);
     }
 
+    /**
+     * @param replacement replacement string, group references are original group numbers and names
+     *
+     * @return text with all matches replaced
+     */
     @Override
     public String replaceAll(final String replacement) {
-        return reversedString(myMatcher.replaceAll(reversedString(replacement)));
+        return replaceAll(replacement, new StringBuilder(myText.length() + 16)).toString();
     }
 
+    /**
+     * @param replacement replacement string, group references are original group numbers and names
+     *
+     * @return text with the first match found replaced, which is the last match in the text
+     */
     @Override
     public String replaceFirst(final String replacement) {
-        return reversedString(myMatcher.replaceFirst(reversedString(replacement)));
+        return replaceFirst(replacement, new StringBuilder(myText.length() + 16)).toString();
+    }
+
+    @Override
+    public StringBuilder replaceAll(final String replacement, final StringBuilder sb) {
+        try {
+            return replace(replacement, sb, true);
+        } catch (IOException e) {
+            // StringBuilder does not throw
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public StringBuilder replaceFirst(final String replacement, final StringBuilder sb) {
+        try {
+            return replace(replacement, sb, false);
+        } catch (IOException e) {
+            // StringBuilder does not throw
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Reset and append the text with all matches replaced to out in forward order, without reversing the replacement
+     * or the result
+     *
+     * @param replacement replacement string, group references are original group numbers and names
+     * @param out         output
+     *
+     * @return out
+     *
+     * @throws IOException if appending to out fails
+     */
+    @Override
+    public <A extends Appendable> A replaceAll(final String replacement, final A out) throws IOException {
+        return replace(replacement, out, true);
+    }
+
+    @Override
+    public <A extends Appendable> A replaceFirst(final String replacement, final A out) throws IOException {
+        return replace(replacement, out, false);
     }
 
     @Override
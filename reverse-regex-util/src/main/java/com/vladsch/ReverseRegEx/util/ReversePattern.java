@@ -20,6 +20,16 @@
 
 package com.vladsch.ReverseRegEx.util;
 
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.regex.PatternSyntaxException;
 
@@ -199,63 +209,114 @@ public final class ReversePattern implements RegExPattern {
     /**
      * The original regular-expression pattern string.
      */
-    private String pattern;
+    private final String pattern;
 
     /**
-     * The reversed regular-expression or original pattern string.
+     * The reversed regular-expression or original pattern string, the same instance as pattern when they are equal.
      */
-    private String reversed;
+    private final String reversed;
 
     /**
      * The original pattern flags.
      */
-    private int flags;
+    private final int flags;
 
     /**
-     * The number of capturing groups in this Pattern. Updated as the sequence is parsed
+     * Capturing group maps and named groups, shared between patterns with the same maps
      */
-    private int capturingGroupCount;
+    private final GroupMap groups;
 
     /**
-     * Original to reversed capturing group numbers
+     * Lazily compiled reversed pattern, only set through {@link #COMPILED} CAS so all threads see the same instance
      */
-    private int[] originalToReversedGroups;
-    /**
-     * Reversed to original capturing group numbers
-     */
-    private int[] reversedToOriginalGroups;
+    private volatile Pattern compiled;
+
+    private static final VarHandle COMPILED;
+
+    static {
+        try {
+            COMPILED = MethodHandles.lookup().findVarHandle(ReversePattern.class, "compiled", Pattern.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
 
-    private Pattern compiled;
+    private static final PatternCache<ReversePattern> CACHE = new PatternCache<>(PatternCache.DEFAULT_MAXIMUM_SIZE, ReversePattern::compileEager);
 
     private ReversePattern(String p, int f) {
         pattern = p;
-        flags = f;
-        compiled = null;
 
         // to use UNICODE_CASE if UNICODE_CHARACTER_CLASS present
-        if ((flags & Pattern.UNICODE_CHARACTER_CLASS) != 0)
-            flags |= Pattern.UNICODE_CASE;
-
-        // Reset group index count
-        capturingGroupCount = 1;
+        if ((f & Pattern.UNICODE_CHARACTER_CLASS) != 0)
+            f |= Pattern.UNICODE_CASE;
 
         if (pattern.length() > 0) {
-            parse();
-            reverse();
-            release();
+            ReversePatternParser parser = ReversePatternParser.acquire();
+            try {
+                parser.parse(pattern, f);
+
+                String r = parser.getReversed();
+                flags = parser.getFlags();
+                reversed = r.equals(pattern) ? pattern : r;
+                groups = GroupMap.of(parser.getCapturingGroupCount() - 1, parser.getOriginalToReversedGroups(), parser.getNamedGroups(), parser.getNamedGroupNumbers());
+            } finally {
+                parser.release();
+            }
         } else {
-            reversed = "";
+            flags = f;
+            reversed = pattern;
+            groups = GroupMap.EMPTY;
+        }
+    }
+
+    private ReversePattern(String p, int f, String r, int[] originalToReversed, String[] groupNames, int[] groupNumbers) {
+        pattern = p;
+        flags = f;
+        reversed = r.equals(p) ? p : r;
+
+        if (groupNames.length != groupNumbers.length)
+            throw new IllegalArgumentException("groupNames.length " + groupNames.length + " != groupNumbers.length " + groupNumbers.length);
+
+        int groupCount = originalToReversed.length;
+        int[] originalToReversedGroups = new int[groupCount];
+        // group map must be a permutation, original group of each reversed group + 1, 0 if not seen yet
+        int[] reversedToOriginal = new int[groupCount];
+        for (int i = 0; i < groupCount; i++) {
+            int reversedGroup = originalToReversed[i] - 1;
+            if (reversedGroup < 0 || reversedGroup >= groupCount)
+                throw new IllegalArgumentException("reversed group " + originalToReversed[i] + " of group " + (i + 1) + " not in [1," + groupCount + "]");
+            if (reversedToOriginal[reversedGroup] != 0)
+                throw new IllegalArgumentException("reversed group " + originalToReversed[i] + " of group " + (i + 1) + " is also reversed group of group " + reversedToOriginal[reversedGroup]);
+            reversedToOriginal[reversedGroup] = i + 1;
+            originalToReversedGroups[i] = reversedGroup;
+        }
+
+        int[] namedGroupNumbers = new int[groupNumbers.length];
+        for (int i = 0; i < groupNames.length; i++) {
+            if (groupNumbers[i] <= 0 || groupNumbers[i] > groupCount)
+                throw new IllegalArgumentException("named group <" + groupNames[i] + "> number " + groupNumbers[i] + " not in [1," + groupCount + "]");
+            namedGroupNumbers[i] = groupNumbers[i] - 1;
         }
+
+        groups = GroupMap.of(groupCount, originalToReversedGroups, groupNames.clone(), namedGroupNumbers);
     }
 
+    /**
+     * Get the java.util.regex.Pattern of the reversed pattern, compiling it on first use
+     * <p>
+     * Lock free, threads racing on first use may each compile but all will get the first published instance.
+     *
+     * @return compiled reversed pattern
+     */
     @Override
     public Pattern compiled() {
-        if (compiled == null) {
-            synchronized (this) {
-                compiled = Pattern.compile(reversed, flags);
-            }
+        Pattern p = compiled;
+        if (p == null) {
+            p = Pattern.compile(reversed, flags);
+            Pattern witness = (Pattern) COMPILED.compareAndExchange(this, null, p);
+            if (witness != null) p = witness;
         }
-        return compiled;
+        return p;
     }
 
     public String toString() {
@@ -274,1729 +335,211 @@ public final class ReversePattern implements RegExPattern {
         return regEx;
     }
 
-    @Override
-    public ReverseMatcher matcher(CharSequence input) {
-        return new ReverseMatcher(this, ReversedCharSequence.of(input));
-    }
-
-    public static boolean matches(String regex, CharSequence input) {
-        RegExPattern p = compile(regex);
-        RegExMatcher m = p.matcher(input);
-        return m.matches();
-    }
-
-    @Override
-    public String[] split(CharSequence input, int limit) {
-        Pattern p = compiled();
-        String[] result = p.split(ReversedCharSequence.of(input), limit);
-        for (int i = 0; i < result.length; i++) {
-            result[i] = ReversedCharSequence.of(result[i]).toString();
-        }
-        return result;
-    }
-
-    @Override
-    public String[] split(CharSequence input) {
-        return split(input, 0);
-    }
-
-    public String originalPattern() {
-        return pattern;
-    }
-
-    @Override
-    public String pattern() {
-        return reversed;
-    }
-
-    @Override
-    public int flags() {
-        return flags;
-    }
-
-    public int getCapturingGroupCount() {
-        return capturingGroupCount;
-    }
-
-    public int getReversedGroupIndex(int group) {
-        return group <= 0 ? group : originalToReversedGroups[group - 1] + 1;
-    }
-
-    public int getOriginalGroupIndex(int group) {
-        return group <= 0 ? group : reversedToOriginalGroups[group - 1] + 1;
-    }
-
-    public int getOriginalNamedGroupIndex(String groupName) {
-        //noinspection UnnecessaryLocalVariable
-        int group = getGroupNameIndex(groupName);
-        return group <= 0 ? group : group + 1;
-    }
-
-    public int getReversedNamedGroupIndex(String groupName) {
-        int group = getGroupNameIndex(groupName);
-        return group <= 0 ? group : originalToReversedGroups[group] + 1;
-    }
-
-    /**
-     * List of reversed expressions in original order, to create a reverse
-     * pattern it is necessary to concatenate these in reverse order while replacing
-     * back references and capturing groups
-     */
-    private CharSequence[] sequences;
-
-    /**
-     * List of indices into sequences that will assemble into a reversed pattern
-     */
-    private CharSequence[] reversedSequences;
-
-    /**
-     * List of indices in sequences of original capturing group numbers [startIndex, endIndex)
-     */
-    private int[] capturingGroupStartIndices;
-    private int[] capturingGroupEndIndices;
-
-    /**
-     * if capturing group is named then here will be it's index+1
-     */
-    private int[] capturingGroupNameIndicesP1;
-
-    /**
-     * List of indices in sequences of original named capturing groups [startIndex, endIndex)
-     */
-    private CharSequence[] namedGroups;
-
-    /**
-     * Named group index to capturing group index
-     */
-    private int[] namedGroupNumbers;
-
     /**
-     * List of indices to sequences of original back references to original group numbers
+     * Reverse the pattern and compile its java.util.regex.Pattern up front instead of on first use
+     *
+     * @param p pattern
+     *
+     * @return reversed pattern with {@link #compiled()} already available
      */
-    private int[] backReferenceIndices;
-    private int[] backReferenceGroups;
-    private int[] backReferenceReversedIndicesP1;
-    private boolean[] namedBackReferences;
-
-    /**
-     * Index+1 of back references which should replace the group reference
-     */
-    private int[] groupToBackReferenceP1;
-
-    private static final int SEQUENCE = 0;
-    private static final int GROUP = 1;
-    private static final int BACK_REFERENCE = 2;
-
-    // index into indices for next copy
-    private int index;
-
-    // indices of reverse traversal of the sequence uses these to figure out
-    // what is being processed
-    private transient int sequenceIndex;
-    private transient int capturedGroupIndex;
-    private transient int namedGroupIndex;
-    private transient int backReferenceIndex;
-    private transient int patternLength;
-    /**
-     * Index into the pattern string that keeps track of how much has been
-     * parsed.
-     */
-    private transient int cursor;
-
-    // next index of reversed group
-    private transient int reversedGroupIndex;
-
-    private int getGroupNameIndex(String groupName) {
-        for (int i = 0; i < namedGroupIndex; i++) {
-            if (groupName.equals(namedGroups[i])) return i;
-        }
-        return -1;
-    }
-
-    private transient int groupEnd;
-    private transient int backReferenceEnd;
-
-    private int getNextType() {
-        if (capturedGroupIndex >= 0 && capturingGroupEndIndices[capturedGroupIndex] == sequenceIndex + 1) {
-            groupEnd = capturedGroupIndex;
-            return GROUP;
-        }
-        if (backReferenceIndex >= 0 && backReferenceIndices[backReferenceIndex] == sequenceIndex) {
-            // back reference
-            backReferenceEnd = backReferenceIndex;
-            return BACK_REFERENCE;
-        }
-
-        // may need to check previous capturedGroupEndIndices if right now replacing a group
-        for (int i = capturedGroupIndex; i-- > 0; ) {
-            if (capturingGroupEndIndices[i] > sequenceIndex + 1) continue;
-
-            if (capturingGroupEndIndices[i] == sequenceIndex + 1) {
-                groupEnd = i;
-                return GROUP;
-            }
-            break;
-        }
-
-        // may need to check previous backReferenceIndices if right now replacing a group
-        for (int i = backReferenceIndex; i-- > 0; ) {
-            if (backReferenceIndices[i] > sequenceIndex) continue;
-
-            if (backReferenceIndices[i] == sequenceIndex) {
-                backReferenceEnd = i;
-                return BACK_REFERENCE;
-            }
-            break;
-        }
-        return SEQUENCE;
-    }
-
-    private void release() {
-        // release intermediate storage
-        sequences = null;
-        reversedSequences = null;
-        capturingGroupStartIndices = null;
-        capturingGroupEndIndices = null;
-        capturingGroupNameIndicesP1 = null;
-        backReferenceIndices = null;
-        backReferenceGroups = null;
-        backReferenceReversedIndicesP1 = null;
-        namedBackReferences = null;
-    }
-
-    private void initCopy() {
-        sequenceIndex = sequences.length;
-        capturedGroupIndex = capturingGroupEndIndices.length;
-        namedGroupIndex = namedGroups.length;
-        backReferenceIndex = backReferenceIndices.length;
-
-        groupToBackReferenceP1 = new int[capturingGroupCount - 1];
-        backReferenceReversedIndicesP1 = new int[backReferenceIndices.length];
-
-        originalToReversedGroups = new int[capturingGroupCount - 1];
-        reversedToOriginalGroups = new int[capturingGroupCount - 1];
-        reversedSequences = new CharSequence[sequences.length];
-        index = 0;
-        reversedGroupIndex = 0;
-
-        sequenceIndex--;
-        capturedGroupIndex--;
-        namedGroupIndex--;
-        backReferenceIndex--;
-    }
-
-    private void copyRange(final int startIndex, final int endIndex) {
-        int savedIndex = sequenceIndex;
-        sequenceIndex = endIndex - 1;
-
-        // copy opening sequence
-        if (reversedSequences.length <= index) {
-            reversedSequences = grow(reversedSequences, reversedSequences.length);
-        }
-
-        reversedSequences[index++] = sequences[sequenceIndex--];
-
-        while (sequenceIndex > startIndex + 1) {
-            copy();
-        }
-
-        if (reversedSequences.length <= index + 2) {
-            reversedSequences = grow(reversedSequences, reversedSequences.length);
-        }
-
-        // copy close sequence
-        reversedSequences[index++] = sequences[sequenceIndex--];
-
-        // copy closure
-        reversedSequences[index++] = sequences[sequenceIndex--];
-
-        sequenceIndex = savedIndex;
-    }
-
-    private void copy() {
-        int type = getNextType();
-        switch (type) {
-            case GROUP: {
-                int group = groupEnd;
-                if (groupEnd == capturedGroupIndex) capturedGroupIndex--;
-
-                if (groupToBackReferenceP1[group] != 0) {
-                    // replace by back reference to this group
-                    sequenceIndex = capturingGroupStartIndices[group];
-                    sequenceIndex--;
-
-                    if (reversedSequences.length <= index + 3) reversedSequences = grow(reversedSequences, reversedSequences.length);
-                    reversedSequences[index++] = "";
-                    reversedSequences[index++] = sequences[backReferenceIndices[groupToBackReferenceP1[group] - 1]];
-                    backReferenceReversedIndicesP1[groupToBackReferenceP1[group] - 1] = index;
-                    reversedSequences[index++] = "";
-                } else {
-                    // copy the group
-                    groupToBackReferenceP1[group] = -1;
-                    originalToReversedGroups[group] = reversedGroupIndex++;
-                    sequenceIndex = capturingGroupStartIndices[group];
-                    sequenceIndex--;
-                    copyRange(capturingGroupStartIndices[group], capturingGroupEndIndices[group]);
-                }
-            }
-            break;
-
-            case BACK_REFERENCE: {
-                int backReference = backReferenceEnd;
-                int group = backReferenceGroups[backReference];
-
-                if (backReferenceEnd == backReferenceIndex) backReferenceIndex--;
-
-                if (groupToBackReferenceP1[group] == 0) {
-                    // need to copy the group and change group to back reference
-                    groupToBackReferenceP1[group] = backReference + 1;
-                    sequenceIndex--;
-                    originalToReversedGroups[group] = reversedGroupIndex++;
-                    copyRange(capturingGroupStartIndices[group], capturingGroupEndIndices[group]);
-                } else {
-                    // just copy the back reference
-                    if (reversedSequences.length <= index + 3) reversedSequences = grow(reversedSequences, reversedSequences.length);
-                    reversedSequences[index++] = "";
-                    reversedSequences[index++] = sequences[sequenceIndex--];
-                    backReferenceReversedIndicesP1[backReference] = index;
-                    reversedSequences[index++] = "";
-                }
-            }
-            break;
-
-            case SEQUENCE:
-                reversedSequences[index++] = sequences[sequenceIndex--];
-                break;
-        }
-    }
-
-    private void reverse() {
-        initCopy();
-
-        while (sequenceIndex >= 0) {
-            copy();
-        }
-
-        // we now need to map back references to the new group numbers
-        int capturedGroups = capturingGroupEndIndices.length;
-        if (capturedGroups > 0) {
-            String[] reversedBackReferences = new String[capturedGroups];
-            for (int i = 0; i < capturedGroups; i++) {
-                reversedBackReferences[i] = "\\" + (originalToReversedGroups[i] + 1);
-            }
-
-            for (int i = 0; i < backReferenceReversedIndicesP1.length; i++) {
-                if (namedBackReferences[i]) continue;
-
-                int group = backReferenceGroups[i];
-                int reversedIndex = backReferenceReversedIndicesP1[i];
-                if (reversedIndex == 0) continue;
-
-                // change back reference to reversed group number
-                reversedSequences[reversedIndex - 1] = reversedBackReferences[group];
-
-                // see if need to wrap in (?: ) if followed by digit, after spacer
-                int nextIndex = reversedIndex;
-                CharSequence chars = null;
-                while (++nextIndex < reversedSequences.length && (chars = reversedSequences[nextIndex]) != null && chars.length() == 0) { }
-                if (chars != null && chars.length() > 0 && Character.isDigit(chars.charAt(0))) {
-                    // add wrapper
-                    reversedSequences[reversedIndex - 2] = "(?:";
-                    reversedSequences[reversedIndex] = ")";
-                }
-            }
-
-            // create a reverse group to original index
-            for (int i = 0; i < originalToReversedGroups.length; i++) {
-                reversedToOriginalGroups[originalToReversedGroups[i]] = i;
-            }
-        }
-
-        StringBuilder sb = new StringBuilder(pattern.length());
-        for (CharSequence reversedSequence : reversedSequences) {
-            if (reversedSequence == null) break;
-            sb.append(reversedSequence);
-        }
-
-        reversed = sb.toString();
+    public static ReversePattern compileEager(String p) {
+        return compileEager(p, 0);
     }
 
-    private void initParse() {
-        patternLength = pattern.length();
-
-        sequenceIndex = 0;
-        capturedGroupIndex = 0;
-        namedGroupIndex = 0;
-        backReferenceIndex = 0;
-
-        index = 0;
-
-        // allocate some initial values
-        sequences = new CharSequence[200];
-
-        capturingGroupStartIndices = new int[10];
-        capturingGroupEndIndices = new int[10];
-        capturingGroupNameIndicesP1 = new int[10];
-
-        namedGroups = new CharSequence[10];
-        namedGroupNumbers = new int[10];
-
-        backReferenceGroups = new int[10];
-        backReferenceIndices = new int[10];
-        namedBackReferences = new boolean[10];
-    }
-
-    private CharSequence[] grow(CharSequence[] array, int step) {
-        CharSequence[] newArray = new CharSequence[array.length + step];
-        System.arraycopy(array, 0, newArray, 0, array.length);
-        return newArray;
-    }
-
-    private int[] grow(int[] array, int step) {
-        int[] newArray = new int[array.length + step];
-        System.arraycopy(array, 0, newArray, 0, array.length);
-        return newArray;
-    }
-
-    private boolean[] grow(boolean[] array, int step) {
-        boolean[] newArray = new boolean[array.length + step];
-        System.arraycopy(array, 0, newArray, 0, array.length);
-        return newArray;
-    }
-
-    private CharSequence[] truncate(CharSequence[] array, int size) {
-        if (array.length > size) {
-            CharSequence[] newArray = new CharSequence[size];
-            System.arraycopy(array, 0, newArray, 0, size);
-            return newArray;
-        }
-        return array;
-    }
-
-    private int[] truncate(int[] array, int size) {
-        if (array.length > size) {
-            int[] newArray = new int[size];
-            System.arraycopy(array, 0, newArray, 0, size);
-            return newArray;
-        }
-        return array;
-    }
-
-    private boolean[] truncate(boolean[] array, int size) {
-        if (array.length > size) {
-            boolean[] newArray = new boolean[size];
-            System.arraycopy(array, 0, newArray, 0, size);
-            return newArray;
-        }
-        return array;
-    }
-
-    private void finalizeParse() {
-        sequences = truncate(sequences, sequenceIndex);
-
-        capturingGroupStartIndices = truncate(capturingGroupStartIndices, capturedGroupIndex);
-        capturingGroupEndIndices = truncate(capturingGroupEndIndices, capturedGroupIndex);
-        capturingGroupNameIndicesP1 = truncate(capturingGroupNameIndicesP1, capturedGroupIndex);
-
-        namedGroups = truncate(namedGroups, namedGroupIndex);
-        namedGroupNumbers = truncate(namedGroupNumbers, namedGroupIndex);
-
-        backReferenceGroups = truncate(backReferenceGroups, backReferenceIndex);
-        backReferenceIndices = truncate(backReferenceIndices, backReferenceIndex);
-        namedBackReferences = truncate(namedBackReferences, backReferenceIndex);
-    }
-
-    private void addSequence(CharSequence charSequence) {
-        if (sequences.length <= sequenceIndex) {
-            sequences = grow(sequences, sequences.length);
-        }
-        sequences[sequenceIndex] = charSequence;
-        sequenceIndex++;
-    }
-
-    private void addSequenceReversed(String s) {
-        // add the code points in reverse order
-        if (s.length() == 1) {
-            addSequence(s);
-        } else {
-            int length = s.length();
-            int[] buffer = new int[length];
-            int ci = 0;
-            int i = 0;
-            for (; i < length; i++) {
-                int cp = s.codePointAt(ci);
-                buffer[length - i - 1] = cp;
-                ci += Character.charCount(cp);
-            }
-
-            addSequence(new String(buffer, length - i, buffer.length));
-        }
-    }
-
-    private void addGroup(int startIndex, int endIndex) {
-        if (capturingGroupStartIndices.length <= capturedGroupIndex) {
-            capturingGroupStartIndices = grow(capturingGroupStartIndices, 10);
-            capturingGroupEndIndices = grow(capturingGroupEndIndices, 10);
-            capturingGroupNameIndicesP1 = grow(capturingGroupNameIndicesP1, 10);
-        }
-        capturingGroupStartIndices[capturedGroupIndex] = startIndex;
-        capturingGroupEndIndices[capturedGroupIndex] = endIndex;
-        //capturingGroupNameIndicesP1[capturedGroupIndex] = 0;
-        capturedGroupIndex++;
-        capturingGroupCount++;
-    }
-
-    private void addNamedGroup(CharSequence groupName, int startIndex, int endIndex) {
-        int group = capturedGroupIndex;
-
-        if (namedGroups.length <= namedGroupIndex) {
-            namedGroups = grow(namedGroups, 10);
-            namedGroupNumbers = grow(namedGroupNumbers, 10);
-        }
-
-        namedGroups[namedGroupIndex] = groupName;
-        namedGroupNumbers[namedGroupIndex] = group;
-        namedGroupIndex++;
-        addGroup(startIndex, endIndex);
-
-        capturingGroupNameIndicesP1[group] = capturedGroupIndex;
-    }
-
-    private void addBackReference(int group, int index) {
-        if (backReferenceGroups.length <= backReferenceIndex) {
-            backReferenceGroups = grow(backReferenceGroups, 10);
-            backReferenceIndices = grow(backReferenceIndices, 10);
-        }
-        backReferenceGroups[backReferenceIndex] = group;
-        backReferenceIndices[backReferenceIndex] = index;
-        backReferenceIndex++;
-    }
-
-    private void addNamedBackReference(int namedGroup, int index) {
-        int group = namedGroupNumbers[namedGroup];
-        int backReference = backReferenceIndex;
-        addBackReference(group, index);
-        namedBackReferences[backReference] = true;
-    }
-
-    private int codePointAt(int index) {
-        return index < patternLength ? pattern.codePointAt(index) : -1;
-    }
-
-    private int codePointStep(int index) {
-        return index < patternLength ? Character.charCount(pattern.codePointAt(index)) : 0;
-    }
-
-    private int codePointBackStep(int index) {
-        if (index > patternLength) return 0;
-
-        if (index >= 2 && Character.charCount(pattern.codePointAt(index - 2)) == 2) {
-            return 2;
-        } else {
-            return 1;
-        }
-    }
-
-    private int codePointAt(CharSequence charSequence, int index) {
-        return Character.codePointAt(charSequence, index);
-    }
-
-    private int codePointStep(CharSequence charSequence, int index) {
-        return Character.charCount(Character.codePointAt(charSequence, index));
-    }
-
-    private int codePointBackStep(CharSequence charSequence, int index) {
-        if (index >= 2 && Character.charCount(Character.codePointAt(charSequence, index - 2)) == 2) {
-            return 2;
-        } else {
-            return 1;
-        }
-    }
-
-    private static final int UNIX_LINES = Pattern.UNIX_LINES;
-    private static final int CASE_INSENSITIVE = Pattern.CASE_INSENSITIVE;
-    private static final int MULTILINE = Pattern.MULTILINE;
-    private static final int DOTALL = Pattern.DOTALL;
-    private static final int UNICODE_CASE = Pattern.UNICODE_CASE;
-    private static final int COMMENTS = Pattern.COMMENTS;
-    private static final int UNICODE_CHARACTER_CLASS = Pattern.UNICODE_CHARACTER_CLASS;
-    private static final int CANON_EQ = Pattern.CANON_EQ;
-    private static final int LITERAL = Pattern.LITERAL;
-
-    /**
-     * parse the regex to be reversed
-     */
-    private void parse() {
-        initParse();
-
-        if (has(LITERAL)) {
-            addSequenceReversed(pattern);
-        } else {
-            expr();
-
-            // Check extra pattern characters
-            if (patternLength != cursor) {
-                if (peek() == ')') {
-                    throw error("Unmatched closing ')'");
-                } else {
-                    throw error("Unexpected internal error");
-                }
-            }
-        }
-
-        finalizeParse();
-    }
-
-    /**
-     * Indicates whether a particular flag is set or not.
-     */
-    private boolean has(int f) {
-        return (flags & f) != 0;
-    }
-
-    /**
-     * Peek the next character, and do not advance the cursor.
-     */
-    private int peek() {
-        int ch = codePointAt(cursor);
-        if (has(COMMENTS))
-            ch = peekPastWhitespace(ch);
-        return ch;
-    }
-
-    /**
-     * Read the next character, and advance the cursor by one.
-     */
-    private int read() {
-        int ch = codePointAt(cursor);
-        cursor += codePointStep(cursor);
-
-        if (has(COMMENTS))
-            ch = parsePastWhitespace(ch);
-        return ch;
-    }
-
-    /**
-     * Read the next character, and advance the cursor by one,
-     * ignoring the COMMENTS setting
-     */
-    private int readEscaped() {
-        int ch = codePointAt(cursor);
-        cursor += codePointStep(cursor);
-        return ch;
-    }
-
-    /**
-     * Advance the cursor by one, and peek the next character.
-     */
-    private int next() {
-        cursor += codePointStep(cursor);
-        int ch = codePointAt(cursor);
-        if (has(COMMENTS))
-            ch = peekPastWhitespace(ch);
-        return ch;
+    public static ReversePattern compileEager(String p, int f) {
+        ReversePattern regEx = new ReversePattern(p, f);
+        regEx.compiled();
+        return regEx;
     }
 
     /**
-     * Advance the cursor by one, and peek the next character,
-     * ignoring the COMMENTS setting
+     * Create a reversed pattern from the result of a previous reversal of the same pattern without parsing it again.
+     * <p>
+     * Used by code generated by the reverse-regex-processor for {@link ReverseRegex} annotated constants.
+     *
+     * @param p                  original pattern
+     * @param f                  flags, as returned by {@link #flags()} of the reversed pattern
+     * @param reversed           reversed pattern, as returned by {@link #pattern()}
+     * @param originalToReversed reversed group number for each original group 1..n, as returned by {@link #getReversedGroupIndex(int)}
+     * @param groupNames         named group names, in original pattern order
+     * @param groupNumbers       original group number of each named group
+     *
+     * @return reversed pattern
+     *
+     * @throws IllegalArgumentException if originalToReversed is not a permutation of 1..n or a group number is out of range
      */
-    private int nextEscaped() {
-        cursor += codePointStep(cursor);
-        int ch = codePointAt(cursor);
-        return ch;
+    public static ReversePattern precompiled(String p, int f, String reversed, int[] originalToReversed, String[] groupNames, int[] groupNumbers) {
+        return new ReversePattern(p, f, reversed, originalToReversed, groupNames, groupNumbers);
     }
 
     /**
-     * If in xmode peek past whitespace and comments.
+     * Parse, reverse and compile the java.util.regex.Pattern of all patterns in parallel on the given executor
+     * <p>
+     * Does not fail fast, a pattern with a syntax error has its {@link java.util.regex.PatternSyntaxException}
+     * in the results and does not affect compilation of the others.
+     *
+     * @param patterns patterns to compile
+     * @param f        flags for all patterns
+     * @param executor executor to run compilation tasks
+     *
+     * @return compile results in input order
      */
-    private int peekPastWhitespace(int ch) {
-        while (ch == ' ' || ch == '#') {
-            while (ch == ' ') {
-                cursor += codePointStep(cursor);
-                ch = codePointAt(cursor);
-            }
-
-            if (ch == '#') {
-                ch = peekPastLine();
-            }
-        }
-        return ch;
+    public static PatternCompileResults<ReversePattern> compileAll(Collection<String> patterns, int f, Executor executor) {
+        return PatternCompileResults.compileAll(patterns, f, executor, ReversePattern::compileEager);
     }
 
-    /**
-     * If in xmode parse past whitespace and comments.
-     */
-    private int parsePastWhitespace(int ch) {
-        while (ch == ' ' || ch == '#') {
-            while (ch == ' ') {
-                ch = codePointAt(cursor);
-                cursor += codePointStep(cursor);
-            }
-
-            if (ch == '#')
-                ch = parsePastLine();
-        }
-        return ch;
+    public static PatternCompileResults<ReversePattern> compileAll(Collection<String> patterns, int f) {
+        return compileAll(patterns, f, ForkJoinPool.commonPool());
     }
 
     /**
-     * xmode parse past comment to end of line.
+     * Get a shared reversed pattern from the pattern cache, compiling it only if it is not already cached
+     *
+     * @param p pattern
+     *
+     * @return reversed pattern
      */
-    private int parsePastLine() {
-        int ch = codePointAt(cursor);
-        cursor += codePointStep(cursor);
-        while (ch != 0 && !isLineSeparator(ch)) {
-            ch = codePointAt(cursor);
-            cursor += codePointStep(cursor);
-        }
-        return ch;
+    public static ReversePattern compileCached(String p) {
+        return CACHE.get(p, 0);
     }
 
-    /**
-     * xmode peek past comment to end of line.
-     */
-    private int peekPastLine() {
-        int ch = codePointAt(cursor);
-        cursor += codePointStep(cursor);
-        while (ch != 0 && !isLineSeparator(ch)) {
-            cursor += codePointStep(cursor);
-            ch = codePointAt(cursor);
-        }
-        return ch;
+    public static ReversePattern compileCached(String p, int f) {
+        return CACHE.get(p, f);
     }
 
     /**
-     * Determines if character is a line separator in the current mode
+     * @return pattern cache used by {@link #compileCached(String, int)} and {@link #matches(String, CharSequence)}
      */
-    private boolean isLineSeparator(int ch) {
-        if (has(UNIX_LINES)) {
-            return ch == '\n';
-        } else {
-            return (ch == '\n' ||
-                    ch == '\r' ||
-                    (ch | 1) == '\u2029' ||
-                    ch == '\u0085');
-        }
+    public static PatternCache<ReversePattern> cache() {
+        return CACHE;
     }
 
-    /**
-     * Read the character after the next one, and advance the cursor by two.
-     */
-    private int skip() {
-        cursor += codePointStep(cursor);
-        int ch = codePointAt(cursor);
-        cursor += codePointStep(cursor);
-        return ch;
+    @Override
+    public ReverseMatcher matcher(CharSequence input) {
+        // input is text to reverse even if it is already a reverse char sequence
+        return new ReverseMatcher(this, input instanceof ReverseCharSequence ? ReversedCharSequence.of(input) : input);
     }
 
     /**
-     * Unread one next character, and retreat cursor by one.
+     * Input is always the original chars, even if it is a ReverseCharSequence, the matcher's reversed view is bound
+     * to the range without a sub-sequence, see {@link ReverseMatcher#reset(CharSequence, int, int)}
      */
-    private void unread() {
-        cursor -= codePointBackStep(cursor);
-    }
-
-    private PatternSyntaxException error(String s) {
-        return new PatternSyntaxException(s, pattern, cursor - codePointBackStep(cursor));
+    @Override
+    public ReverseMatcher matcher(CharSequence input, int from, int to) {
+        return new ReverseMatcher(this, input, from, to);
     }
 
-    /**
-     * This may be called recursively to parse sub expressions that may
-     * contain alternations.
-     */
-    private void expr() {
-        if (cursor >= patternLength) return;
-
-        for (; ; ) {
-            sequence();
-            if (peek() != '|') {
-                return;
-            }
-            addSequence("|");
-            next();
-
-            if (cursor >= patternLength) break;
-        }
+    public static boolean matches(String regex, CharSequence input) {
+        RegExPattern p = compileCached(regex);
+        RegExMatcher m = p.matcher(input);
+        return m.matches();
     }
 
     /**
-     * Parsing of sequences between alternations.
+     * Split input around matches of the pattern searched from the end of input
+     * <p>
+     * Same as {@link Pattern#split(CharSequence, int)} of the reversed input with each result reversed, but each result
+     * is copied once from input
+     *
+     * @param input chars to split
+     * @param limit result threshold as for {@link Pattern#split(CharSequence, int)}
+     *
+     * @return strings in reverse order of input
      */
-    @SuppressWarnings("fallthrough")
-    private void sequence() {
-LOOP:
-        for (; ; ) {
-            int ch = peek();
-            int closureIndex = sequenceIndex;
-            addSequence("");
-
-            switch (ch) {
-                case '(':
-                    group();
-                    break;
-
-                case '[': {
-                    StringBuilder sb = new StringBuilder();
-
-                    sb.append('[');
-                    clazz(sb, true);
-                    addSequence(sb.toString());
-                    break;
+    @Override
+    public String[] split(CharSequence input, int limit) {
+        ReversedCharSequence text = ReversedCharSequence.of(input);
+        Matcher m = compiled().matcher(text);
+        int index = 0;
+        boolean matchLimited = limit > 0;
+        ArrayList<String> matchList = new ArrayList<>();
+
+        while (m.find()) {
+            if (!matchLimited || matchList.size() < limit - 1) {
+                if (index == 0 && index == m.start() && m.start() == m.end()) {
+                    // no empty leading substring for zero-width match at the beginning
+                    continue;
                 }
-
-                case '\\':
-                    int start = cursor;
-                    ch = nextEscaped();
-                    if (ch == 'p' || ch == 'P') {
-                        boolean oneLetter = true;
-                        ch = next(); // Consume { if present
-                        if (ch != '{') {
-                            unread();
-                        } else {
-                            oneLetter = false;
-                        }
-                        family(oneLetter);
-                        addSequence(pattern.substring(start, cursor));
-                    } else {
-                        unread();
-                        atom();
-                    }
-                    break;
-                case '^':
-                    next();
-                    addSequence("$");
-                    break;
-                case '$':
-                    next();
-                    addSequence("^");
-                    break;
-                case '.':
-                    next();
-                    addSequence(".");
-                    break;
-                case '|':
-                case ')':
-                    break LOOP;
-                case ']': // Now interpreting dangling ] and } as literals
-                case '}':
-                    atom();
-                    break;
-                case '?':
-                case '*':
-                case '+':
-                    next();
-                    throw error("Dangling meta character '" + ((char) ch) + "'");
-
-                case -1:
-                    if (cursor >= patternLength) {
-                        break LOOP;
-                    }
-                    // Fall through
-                default:
-                    atom();
-                    break;
-            }
-
-            closure(closureIndex);
-        }
-    }
-
-    /**
-     * Parses and returns the name of a "named capturing group", the trailing
-     * ">" is consumed after parsing.
-     */
-    private String groupName(int start) {
-        int ch;
-        while (Character.isLowerCase(ch = read()) || Character.isUpperCase(ch) ||
-                Character.isDigit(ch)) {
-        }
-        if (cursor == start + 1)
-            throw error("named capturing group has 0 length name");
-        if (ch != '>')
-            throw error("named capturing group is missing trailing '>'");
-        return pattern.substring(start, cursor - 1);
-    }
-
-    /**
-     * Parses a group
-     */
-    private void group() {
-        int save = flags;
-        int closureIndex = sequenceIndex;
-
-        // add an empty place holder for closure, which has to be before the group when reversed
-        addSequence("");
-
-        int ch = next();
-        if (ch == '?') {
-            ch = skip();
-            switch (ch) {
-                case ':':   //  (?:xxx) pure group
-                    addSequence(")");
-                    expr();
-                    addSequence("(?:");
-                    break;
-                case '=':   // (?=xxx) and (?!xxx) lookahead
-                    addSequence(")");
-                    expr();
-                    addSequence("(?<=");
-                    break;
-                case '!':
-                    addSequence(")");
-                    expr();
-                    addSequence("(?<!");
-                    break;
-                case '>':   // (?>xxx)  independent group
-                    addSequence(")");
-                    expr();
-                    addSequence("(?>");
-                    break;
-                case '<':   // (?<xxx)  look behind
-                    int start = cursor;
-                    ch = read();
-                    if (Character.isLowerCase(ch) || Character.isUpperCase(ch)) {
-                        // named captured group
-                        String name = groupName(start);
-                        if (getGroupNameIndex(name) != -1)
-                            throw error("Named capturing group <" + name
-                                    + "> is already defined");
-
-                        int groupIndex = capturedGroupIndex;
-                        addSequence(")");
-                        // create a 0 length one since we don't know where it will end
-                        addNamedGroup(name, closureIndex, sequenceIndex);
-                        expr();
-                        addSequence("(?<" + name + ">");
-                        // update to actual sequence end
-                        capturingGroupEndIndices[groupIndex] = sequenceIndex;
-                        break;
-                    } else {
-                        addSequence(")");
-                        expr();
-                        if (ch == '=') {
-                            addSequence("(?=");
-                        } else if (ch == '!') {
-                            addSequence("(?!");
-                        } else {
-                            throw error("Unknown look-behind group");
-                        }
-                    }
-                    break;
-                case '$':
-                case '@':
-                    throw error("Unknown group type");
-                default:    // (?xxx:) inlined match flags
-                    unread();
-                    addSequence(")");
-
-                    String flags = addFlag();
-                    ch = read();
-                    if (ch == ')') {
-                        addSequence(flags);
-                        addSequence("(?");
-                        return;    // Inline modifier only
-                    }
-                    if (ch != ':') {
-                        throw error("Unknown inline modifier");
-                    }
-
-                    expr();
-                    addSequence(":");
-                    addSequence(flags);
-                    addSequence("(?");
-                    break;
+                matchList.add(text.reversedString(index, m.start()));
+                index = m.end();
+            } else if (matchList.size() == limit - 1) {
+                matchList.add(text.reversedString(index, text.length()));
+                index = m.end();
             }
-        } else { // (xxx) a regular group
-            int groupIndex = capturedGroupIndex;
-            addSequence(")");
-            addGroup(closureIndex, sequenceIndex);
-
-            expr();
-            addSequence("(");
-
-            // update to actual sequence end
-            capturingGroupEndIndices[groupIndex] = sequenceIndex;
         }
 
-        ch = codePointAt(cursor);
-        cursor += codePointStep(cursor);
-
-        if (has(COMMENTS))
-            ch = parsePastWhitespace(ch);
+        // no match found
+        if (index == 0) return new String[] { input.toString() };
 
-        if ((int) ')' != ch) {
-            throw error("Unclosed group");
+        if (!matchLimited || matchList.size() < limit) {
+            matchList.add(text.reversedString(index, text.length()));
         }
-        flags = save;
 
-        // Check for quantifiers and add it ahead of the expression
-        closure(closureIndex);
-    }
-
-    /**
-     * Parses inlined match flags and set them appropriately.
-     */
-    @SuppressWarnings("fallthrough")
-    private String addFlag() {
-        int ch = peek();
-        int start = cursor;
-        int end = cursor;
-
-        for (; ; ) {
-            switch (ch) {
-                case 'i':
-                    flags |= CASE_INSENSITIVE;
-                    break;
-                case 'm':
-                    flags |= MULTILINE;
-                    break;
-                case 's':
-                    flags |= DOTALL;
-                    break;
-                case 'd':
-                    flags |= UNIX_LINES;
-                    break;
-                case 'u':
-                    flags |= UNICODE_CASE;
-                    break;
-                case 'c':
-                    flags |= CANON_EQ;
-                    break;
-                case 'x':
-                    flags |= COMMENTS;
-                    break;
-                case 'U':
-                    flags |= (UNICODE_CHARACTER_CLASS | UNICODE_CASE);
-                    break;
-                case '-': // subFlag then fall through
-                    next();
-                    end = subFlag();
-
-                default:
-                    return pattern.substring(start, end);
+        int resultSize = matchList.size();
+        if (limit == 0) {
+            while (resultSize > 0 && matchList.get(resultSize - 1).isEmpty()) {
+                resultSize--;
             }
-            ch = next();
-            end = cursor;
         }
+        return matchList.subList(0, resultSize).toArray(new String[0]);
     }
 
-    /**
-     * Parses the second part of inlined match flags and turns off
-     * flags appropriately.
-     */
-    @SuppressWarnings("fallthrough")
-    private int subFlag() {
-        int ch = peek();
-        int end = cursor;
-
-        for (; ; ) {
-            switch (ch) {
-                case 'i':
-                    flags &= ~CASE_INSENSITIVE;
-                    break;
-                case 'm':
-                    flags &= ~MULTILINE;
-                    break;
-                case 's':
-                    flags &= ~DOTALL;
-                    break;
-                case 'd':
-                    flags &= ~UNIX_LINES;
-                    break;
-                case 'u':
-                    flags &= ~UNICODE_CASE;
-                    break;
-                case 'c':
-                    flags &= ~CANON_EQ;
-                    break;
-                case 'x':
-                    flags &= ~COMMENTS;
-                    break;
-                case 'U':
-                    flags &= ~(UNICODE_CHARACTER_CLASS | UNICODE_CASE);
-                    next();
-                    end = cursor;
-
-                default:
-                    return end;
-            }
-
-            ch = next();
-            end = cursor;
-        }
-    }
-
-    static final int MAX_REPS = 0x7FFFFFFF;
-
-    /**
-     * Processes repetition. If the next character peeked is a quantifier
-     * then new nodes must be appended to handle the repetition.
-     * Prev could be a single or a group, so it could be a chain of nodes.
-     */
-    private void closure(int closureIndex) {
-        int ch = peek();
-        switch (ch) {
-            case '?':
-                ch = next();
-                if (ch == '?') {
-                    next();
-                    sequences[closureIndex] = "??";
-                } else if (ch == '+') {
-                    next();
-                    sequences[closureIndex] = "?+";
-                } else {
-                    sequences[closureIndex] = "?";
-                }
-                break;
-            case '*':
-                ch = next();
-                if (ch == '?') {
-                    next();
-                    sequences[closureIndex] = "*?";
-                } else if (ch == '+') {
-                    next();
-                    sequences[closureIndex] = "*+";
-                } else {
-                    sequences[closureIndex] = "*";
-                }
-                break;
-            case '+':
-                ch = next();
-                if (ch == '?') {
-                    next();
-                    sequences[closureIndex] = "+?";
-                } else if (ch == '+') {
-                    next();
-                    sequences[closureIndex] = "++";
-                } else {
-                    sequences[closureIndex] = "+";
-                }
-                break;
-            case '{':
-                int start = cursor;
-
-                ch = codePointAt(cursor + codePointStep(cursor));
-                if (Character.isDigit(ch)) {
-                    skip();
-                    int cmin = 0;
-                    do {
-                        cmin = cmin * 10 + (ch - '0');
-                    } while (Character.isDigit(ch = read()));
-                    int cmax = cmin;
-                    if (ch == ',') {
-                        ch = read();
-                        cmax = MAX_REPS;
-                        if (ch != '}') {
-                            cmax = 0;
-                            while (Character.isDigit(ch)) {
-                                cmax = cmax * 10 + (ch - '0');
-                                ch = read();
-                            }
-                        }
-                    }
-                    if (ch != '}')
-                        throw error("Unclosed counted closure");
-                    if ((cmin | cmax | (cmax - cmin)) < 0)
-                        throw error("Illegal repetition range");
-                    ch = peek();
-
-                    if (ch == '?') {
-                        next();
-                    } else if (ch == '+') {
-                        next();
-                    }
-
-                    sequences[closureIndex] = pattern.substring(start, cursor);
-                    break;
-                } else {
-                    throw error("Illegal repetition");
-                }
-            default:
-                break;
-        }
-    }
-
-    /**
-     * Utility method for parsing control escape sequences.
-     */
-    private int c() {
-        if (cursor < patternLength) {
-            return read() ^ 64;
-        }
-        throw error("Illegal control escape sequence");
+    @Override
+    public String[] split(CharSequence input) {
+        return split(input, 0);
     }
 
-    /**
-     * Utility method for parsing octal escape sequences.
-     */
-    private int o() {
-        int n = read();
-        if (((n - '0') | ('7' - n)) >= 0) {
-            if (cursor < patternLength) {
-                int m = read();
-                if (((m - '0') | ('7' - m)) >= 0) {
-                    if (cursor < patternLength) {
-                        int o = read();
-                        if ((((o - '0') | ('7' - o)) >= 0) && (((n - '0') | ('3' - n)) >= 0)) {
-                            return (n - '0') * 64 + (m - '0') * 8 + (o - '0');
-                        }
-                        unread();
-                    }
-                    return (n - '0') * 8 + (m - '0');
-                }
-                unread();
-            }
-            return (n - '0');
-        }
-        throw error("Illegal octal escape sequence");
+    public String originalPattern() {
+        return pattern;
     }
 
-    private static boolean isHexDigit(int n) {
-        return n >= '0' && n <= '9' || n >= 'a' && n <= 'f' || n >= 'A' && n <= 'F';
+    @Override
+    public String pattern() {
+        return reversed;
     }
 
-    private static int toDigit(int n) {
-        return n >= 'a' ? n - 'a' + 10 : n >= 'A' ? n - 'A' + 10 : n - '0';
+    @Override
+    public int flags() {
+        return flags;
     }
 
-    /**
-     * Utility method for parsing hexadecimal escape sequences.
-     */
-    private int x() {
-        int n = read();
-        if (isHexDigit(n)) {
-            int m = read();
-            if (isHexDigit(m)) {
-                return toDigit(n) * 16 + toDigit(m);
-            }
-        } else if (n == '{' && isHexDigit(peek())) {
-            int ch = 0;
-            while (isHexDigit(n = read())) {
-                ch = (ch << 4) + toDigit(n);
-                if (ch > Character.MAX_CODE_POINT)
-                    throw error("Hexadecimal codepoint is too big");
-            }
-            if (n != '}')
-                throw error("Unclosed hexadecimal escape sequence");
-            return ch;
-        }
-        throw error("Illegal hexadecimal escape sequence");
+    public int getCapturingGroupCount() {
+        return groups.getGroupCount() + 1;
     }
 
-    /**
-     * Parse a character class, and return the position in pattern starting from which sequences
-     * were not generated.
-     * <p>
-     * Consumes a ] on the way out if consume is true. Usually consume
-     * is true except for the case of [abc&&def] where def is a separate
-     * right hand node with "understood" brackets.
-     */
-    private void clazz(StringBuilder sb, boolean consume) {
-        boolean firstInClass = true;
-        boolean hadClass = false;
-
-        int ch = next();
-
-        for (; ; ) {
-            switch (ch) {
-                case '^':
-                    // Negates if first char in a class, otherwise literal
-                    if (firstInClass) {
-                        if (codePointAt(cursor - codePointBackStep(cursor)) != '[')
-                            break;
-                        sb.append('^');
-                        ch = next();
-                        continue;
-                    } else {
-                        // ^ not first in class, treat as literal
-                        break;
-                    }
-                case '[':
-                    firstInClass = false;
-                    sb.append("[");
-                    clazz(sb, true);
-                    hadClass = true;
-                    ch = peek();
-                    continue;
-                case '&':
-                    firstInClass = false;
-                    sb.append('&');
-                    ch = next();
-                    if (ch == '&') {
-                        sb.append('&');
-                        ch = next();
-                        while (ch != ']' && ch != '&') {
-                            if (ch == '[') {
-                                sb.append('[');
-                                clazz(sb, true);
-                            } else { // abc&&def
-                                unread();
-                                clazz(sb, false);
-                            }
-                            ch = peek();
-                        }
-                    } else {
-                        // treat as a literal &
-                        unread();
-                        break;
-                    }
-                    continue;
-                case -1:
-                    firstInClass = false;
-                    if (cursor >= patternLength)
-                        throw error("Unclosed character class");
-                    break;
-                case ']':
-                    firstInClass = false;
-                    if (hadClass) {
-                        if (consume) {
-                            next();
-                            sb.append(']');
-                        }
-                        return;
-                    }
-                    break;
-                default:
-                    firstInClass = false;
-                    break;
-            }
-            range(sb);
-            hadClass = true;
-            ch = peek();
-        }
+    public int getReversedGroupIndex(int group) {
+        return group <= 0 ? group : groups.getReversedGroup(group - 1) + 1;
     }
 
-    /**
-     * Parse a single character or a character range in a character class
-     */
-    private void range(StringBuilder sb) {
-        int start = cursor;
-
-        int ch = peek();
-        if (ch == '\\') {
-            ch = nextEscaped();
-            if (ch == 'p' || ch == 'P') { // A property
-                boolean comp = (ch == 'P');
-                boolean oneLetter = true;
-                // Consume { if present
-                ch = next();
-                if (ch != '{')
-                    unread();
-                else {
-                    oneLetter = false;
-                }
-
-                family(oneLetter);
-                sb.append(pattern, start, cursor);
-                return;
-            } else { // ordinary escape
-                unread();
-                ch = escape(sb, true);
-                if (ch == -1) return;
-            }
-        } else {
-            next();
-        }
-
-        if (ch >= 0) {
-            if (peek() == '-') {
-                int endRange = codePointAt(cursor + codePointStep(cursor));
-
-                if (endRange == '[') {
-                    return;
-                }
-
-                if (endRange != ']') {
-                    next();
-                    int m = peek();
-                    if (m == '\\') {
-                        m = escape(sb, false);
-                    } else {
-                        next();
-                    }
-                    if (m < ch) {
-                        throw error("Illegal character range");
-                    }
-                    sb.append(pattern, start, cursor);
-                    return;
-                }
-            }
-            sb.append(pattern, start, cursor);
-            return;
-        }
-        throw error("Unexpected character '" + ((char) ch) + "'");
+    public int getOriginalGroupIndex(int group) {
+        return group <= 0 ? group : groups.getOriginalGroup(group - 1) + 1;
     }
 
-    /**
-     * Parses a Unicode character family and returns its name
-     */
-    @SuppressWarnings("UnusedReturnValue")
-    private String family(boolean singleLetter) {
-        next();
-        String name;
-
-        if (singleLetter) {
-            int c = codePointAt(cursor);
-            if (!Character.isSupplementaryCodePoint(c)) {
-                name = String.valueOf((char) c);
-            } else {
-                name = new String(new int[] { codePointAt(cursor) }, 0, 1);
-            }
-            read();
-        } else {
-            int i = cursor;
-
-            //noinspection StatementWithEmptyBody
-            while (cursor < patternLength && read() != '}') {
-            }
-
-            int j = cursor;
-            if (j > patternLength)
-                throw error("Unclosed character family");
-            if (i + 1 >= j)
-                throw error("Empty character family");
-            name = pattern.substring(i, j - 1);
-        }
-        return name;
+    public int getOriginalNamedGroupIndex(String groupName) {
+        int index = groups.getNameIndex(groupName);
+        return index < 0 ? index : groups.getNameGroup(index) + 1;
     }
 
-    /**
-     * Parse and add a sequence in reverse
-     */
-    @SuppressWarnings("fallthrough")
-    private void atom() {
-        int first = 0;
-        int prev = -1;
-        int start = cursor;
-        int ch = peek();
-
-        for (; ; ) {
-            switch (ch) {
-                case '*':
-                case '+':
-                case '?':
-                case '{':
-                    if (first > 1) {
-                        cursor = prev;    // Unwind one character
-                        //noinspection UnusedAssignment
-                        first--;
-                    }
-                    break;
-                case '$':
-                case '.':
-                case '^':
-                case '(':
-                case '[':
-                case '|':
-                case ')':
-                    break;
-                case '\\':
-                    if (first > 0) {
-                        break;
-                    }
-
-                    ch = nextEscaped();
-                    if (ch == 'p' || ch == 'P') { // Property
-                        boolean oneLetter = true;
-
-                        ch = next(); // Consume { if present
-                        if (ch != '{')
-                            unread();
-                        else {
-                            oneLetter = false;
-                        }
-
-                        family(oneLetter);
-                        addSequence(pattern.substring(start, cursor));
-                        return;
-                    }
-
-                    unread();
-                    prev = cursor;
-
-                    ch = escape(null, true);
-                    if (ch >= 0) {
-                        // output the escape sequence
-                        addSequence(pattern.substring(start, cursor));
-                        start = cursor;
-                        first = 0;
-
-                        ch = peek();
-                        continue;
-                    } else {
-                        return;
-                    }
-
-                case -1:
-                    if (cursor >= patternLength) {
-                        break;
-                    }
-                    throw error("Internal error");
-
-                default:
-                    prev = cursor;
-                    first++;
-                    ch = next();
-                    continue;
-            }
-            break;
-        }
-
-        if (start < cursor) {
-            addSequenceReversed(pattern.substring(start, cursor));
-        }
+    public int getReversedNamedGroupIndex(String groupName) {
+        int index = groups.getNameIndex(groupName);
+        return index < 0 ? index : groups.getReversedGroup(groups.getNameGroup(index)) + 1;
     }
 
-    /**
-     * Parses a backref greedily, taking as many numbers as it
-     * can. The first digit is always treated as a backref, but
-     * multi digit numbers are only treated as a backref if at
-     * least that many backrefs exist at this point in the regex.
-     */
-    private int ref(int refNum) {
-        boolean done = false;
-
-        while (!done) {
-            int ch = peek();
-            switch (ch) {
-                case '0':
-                case '1':
-                case '2':
-                case '3':
-                case '4':
-                case '5':
-                case '6':
-                case '7':
-                case '8':
-                case '9':
-                    int newRefNum = (refNum * 10) + (ch - '0');
-                    // Add another number if it doesn't make a group
-                    // that doesn't exist
-                    if (capturingGroupCount - 1 < newRefNum) {
-                        done = true;
-                        break;
-                    }
-                    refNum = newRefNum;
-                    read();
-                    break;
-                default:
-                    done = true;
-                    break;
-            }
-        }
-
-        return refNum;
+    GroupMap groups() {
+        return groups;
     }
 
     /**
-     * Parses an escape sequence
+     * @return map of group names to original group numbers, in original pattern order
      */
-    private int escape(StringBuilder sb, boolean create) {
-        int startM2 = cursor;
-        int ch = skip();
-        boolean inclass = sb != null;
-
-        switch (ch) {
-            case '0':
-                return o();
-
-            case '1':
-            case '2':
-            case '3':
-            case '4':
-            case '5':
-            case '6':
-            case '7':
-            case '8':
-            case '9':
-                if (inclass) break;
-                if (create) {
-                    int groupNum = ref(ch - '0');
-                    int sequenceStart = sequenceIndex;
-                    addSequence(pattern.substring(startM2, cursor));
-                    addBackReference(groupNum - 1, sequenceStart);
-                }
-                return -1;
-
-            case 'A':
-                if (inclass) break;
-                if (create) {
-                    addSequence("\\z");
-                }
-                return -1;
-
-            case 'Z':
-            case 'z':
-                if (inclass) break;
-                if (create) {
-                    addSequence("\\A");
-                }
-                return -1;
+    public Map<String, Integer> namedGroups() {
+        int nameCount = groups.getNameCount();
+        if (nameCount == 0) return Collections.emptyMap();
 
-            case 'B':
-            case 'G':
-            case 'b':
-                if (inclass) break;
-                if (create) {
-                    addSequence(pattern.substring(startM2, cursor));
-                }
-                return -1;
-
-            case 'D':
-            case 'S':
-            case 'W':
-            case 'd':
-            case 's':
-            case 'v':
-            case 'w':
-                if (create) {
-                    if (inclass) {
-                        sb.append(pattern, startM2, cursor);
-                    } else {
-                        addSequence(pattern.substring(startM2, cursor));
-                    }
-                }
-                return -1;
-
-            case 'Q':
-                // take all to next \E as literals, but reversed if not in a character class
-                if (create) {
-                    // look for \E
-                    int end = cursor;
-                    startM2 = end;
-                    int backslashCount = 0;
-
-                    while (cursor < patternLength) {
-                        end = cursor;
-                        ch = read();
-
-                        if (backslashCount > 0 && ch == 'E') break;
-
-                        if (ch != '\\') {
-                            backslashCount = 0;
-                            continue;
-                        }
-
-                        backslashCount++;
-
-                        if (cursor == patternLength)
-                            throw error("Unterminated \\Q");
-                    }
-
-                    if (cursor == patternLength && end != cursor - 2)
-                        throw error("Unterminated \\Q");
-
-                    String text = pattern.substring(startM2, end - 1);
-
-                    if (inclass) {
-                        sb.append("\\Q");
-                        sb.append(text);
-                        sb.append("\\E");
-                    } else {
-                        addSequence("\\E");
-                        addSequenceReversed(text);
-                        addSequence("\\Q");
-                    }
-                }
-                return -1;
-
-            case 'k':
-                if (inclass) break;
-
-                if (read() != '<')
-                    throw error("\\k is not followed by '<' for named capturing group");
-
-                String name = groupName(cursor);
-                int namedGroup = getGroupNameIndex(name);
-
-                if (namedGroup == -1)
-                    throw error("(named capturing group <" + name + "> does not exit");
-
-                if (create) {
-                    int startSequence = sequenceIndex;
-                    addSequence(pattern.substring(startM2, cursor));
-                    addNamedBackReference(namedGroup, startSequence);
-                }
-                return -1;
-
-            case 'C':
-            case 'E':
-            case 'F':
-            case 'H':
-            case 'I':
-            case 'J':
-            case 'K':
-            case 'L':
-            case 'M':
-            case 'N':
-            case 'O':
-            case 'P':
-            case 'R':
-            case 'T':
-            case 'U':
-            case 'V':
-            case 'X':
-            case 'Y':
-            case 'g':
-            case 'h':
-            case 'i':
-            case 'j':
-            case 'l':
-            case 'm':
-            case 'o':
-            case 'p':
-            case 'q':
-            case 'y':
-                break;
-
-            case 'a':
-                return '\007';
-            case 'c':
-                return c();
-            case 'e':
-                return '\033';
-            case 'f':
-                return '\f';
-            case 'n':
-                return '\n';
-            case 'r':
-                return '\r';
-            case 't':
-                return '\t';
-            case 'u':
-                return u();
-            case 'x':
-                return x();
-            default:
-                return ch;
-        }
-        throw error("Illegal/unsupported escape sequence");
-    }
-
-    private int uxxxx() {
-        int n = 0;
-        for (int i = 0; i < 4; i++) {
-            int ch = read();
-            if (!isHexDigit(ch)) {
-                throw error("Illegal Unicode escape sequence");
-            }
-            n = n * 16 + toDigit(ch);
-        }
-        return n;
-    }
-
-    private int u() {
-        int n = uxxxx();
-        if (Character.isHighSurrogate((char) n)) {
-            int cur = cursor;
-            if (read() == '\\' && read() == 'u') {
-                int n2 = uxxxx();
-                if (Character.isLowSurrogate((char) n2))
-                    return Character.toCodePoint((char) n, (char) n2);
-            }
-            cursor = cur;
+        LinkedHashMap<String, Integer> map = new LinkedHashMap<>();
+        for (int i = 0; i < nameCount; i++) {
+            map.put(groups.getName(i), groups.getNameGroup(i) + 1);
         }
-        return n;
+        return Collections.unmodifiableMap(map);
     }
 }
@@ -0,0 +1,1932 @@
+/*
+ * Copyright (c) 2016-2017 Vladimir Schneider <vladimir.schneider@gmail.com>
+ *
+ * RegEx Parser based on Java Open JDK Pattern Syntax Parser
+ *
+ * This library is free software; you can redistribute it and/or modify it under the terms
+ * of the GNU Lesser General Public License as published by the Free Software Foundation;
+ * either version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with this library;
+ * if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330,
+ * Boston, MA 02111-1307 USA
+ *
+ */
+
+package com.vladsch.ReverseRegEx.util;
+
+import java.util.Arrays;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Parser which reverses a pattern for {@link ReversePattern}
+ * <p>
+ * Parser buffers are kept between uses and only grow, each thread reuses its own parser through
+ * {@link #acquire()} and {@link #release()} so reversing a pattern only allocates the result.
+ */
+final class ReversePatternParser {
+    // version of reversed patterns and group maps produced by the parser, increment when they change for any
+    // pattern so stored reversals of an earlier version are not used
+    static final int REVERSAL_VERSION = 1;
+
+    private static final ThreadLocal<ReversePatternParser> PARSER = ThreadLocal.withInitial(ReversePatternParser::new);
+
+    private static final int INITIAL_SEQUENCES = 64;
+    private static final int INITIAL_GROUPS = 10;
+
+    // larger buffers are dropped on release so one huge pattern does not keep its buffers for the life of the thread
+    private static final int MAX_RETAINED_SEQUENCES = 16 * 1024;
+
+    private boolean inUse;
+
+    private String pattern;
+    private int flags;
+    private int capturingGroupCount;
+    private String reversed;
+
+    /**
+     * Original to reversed capturing group numbers, work buffer of at least capturingGroupCount - 1
+     */
+    private int[] originalToReversedGroups;
+
+    /**
+     * Buffer the reversed pattern is assembled in
+     */
+    private char[] chars;
+
+    // counts of entries in buffers after parsing
+    private int groupCount;
+    private int namedGroupCount;
+    private int backReferenceCount;
+
+    private ReversePatternParser() {
+        sequences = new int[INITIAL_SEQUENCES * SEQUENCE_STRIDE];
+        reversedSequences = new int[INITIAL_SEQUENCES * SEQUENCE_STRIDE];
+        chars = new char[INITIAL_SEQUENCES];
+
+        capturingGroupStartIndices = new int[INITIAL_GROUPS];
+        capturingGroupEndIndices = new int[INITIAL_GROUPS];
+        capturingGroupNameIndicesP1 = new int[INITIAL_GROUPS];
+        groupToBackReferenceP1 = new int[INITIAL_GROUPS];
+        originalToReversedGroups = new int[INITIAL_GROUPS];
+
+        namedGroups = new String[INITIAL_GROUPS];
+        namedGroupNumbers = new int[INITIAL_GROUPS];
+
+        backReferenceGroups = new int[INITIAL_GROUPS];
+        backReferenceIndices = new int[INITIAL_GROUPS];
+        backReferenceReversedIndicesP1 = new int[INITIAL_GROUPS];
+        namedBackReferences = new boolean[INITIAL_GROUPS];
+    }
+
+    /**
+     * Get this thread's parser, must be given back with {@link #release()}
+     *
+     * @return parser
+     */
+    static ReversePatternParser acquire() {
+        ReversePatternParser parser = PARSER.get();
+        if (parser.inUse) {
+            // not expected, but a nested use gets its own parser instead of corrupting the one in use
+            return new ReversePatternParser();
+        }
+        parser.inUse = true;
+        return parser;
+    }
+
+    /**
+     * Give back the parser, dropping references to the last pattern and any oversized buffers
+     */
+    void release() {
+        Arrays.fill(namedGroups, null);
+        pattern = null;
+        reversed = null;
+
+        if (sequences.length > MAX_RETAINED_SEQUENCES * SEQUENCE_STRIDE) sequences = new int[INITIAL_SEQUENCES * SEQUENCE_STRIDE];
+        if (reversedSequences.length > MAX_RETAINED_SEQUENCES * SEQUENCE_STRIDE) reversedSequences = new int[INITIAL_SEQUENCES * SEQUENCE_STRIDE];
+        if (chars.length > MAX_RETAINED_SEQUENCES) chars = new char[INITIAL_SEQUENCES];
+
+        inUse = false;
+    }
+
+    /**
+     * Parse and reverse a non-empty pattern, results are available through the getters until the next parse
+     *
+     * @param p pattern
+     * @param f flags
+     *
+     * @throws PatternSyntaxException if the pattern is not valid
+     */
+    void parse(String p, int f) {
+        pattern = p;
+        flags = f;
+        capturingGroupCount = 1;
+
+        parse();
+        reverse();
+    }
+
+    /**
+     * @return flags, including inline flags of the pattern
+     */
+    int getFlags() {
+        return flags;
+    }
+
+    String getReversed() {
+        return reversed;
+    }
+
+    int getCapturingGroupCount() {
+        return capturingGroupCount;
+    }
+
+    /**
+     * @return parser buffer of 0 based reversed group of each original group, valid until release
+     */
+    int[] getOriginalToReversedGroups() {
+        return originalToReversedGroups;
+    }
+
+    /**
+     * @return named group names, in original pattern order
+     */
+    String[] getNamedGroups() {
+        return Arrays.copyOf(namedGroups, namedGroupCount);
+    }
+
+    /**
+     * @return parser buffer of 0 based original group of each named group, valid until release
+     */
+    int[] getNamedGroupNumbers() {
+        return namedGroupNumbers;
+    }
+
+    /**
+     * List of reversed expressions in original order, to create a reverse
+     * pattern it is necessary to concatenate these in reverse order while replacing
+     * back references and capturing groups
+     * <p>
+     * Each sequence is a (kind, start, end) triple of {@link #SEQUENCE_STRIDE} ints referring to a range of the pattern
+     * or to one of the {@link #TEXTS}, so parsing does not create strings for the parts of the pattern
+     */
+    private int[] sequences;
+    private int sequenceCount;
+
+    /**
+     * Sequences, in the same encoding, that will assemble into a reversed pattern
+     */
+    private int[] reversedSequences;
+
+    private static final int SEQUENCE_STRIDE = 3;
+
+    // sequence kinds
+    private static final int KIND_TEXT = 0;             // TEXTS[start]
+    private static final int KIND_RANGE = 1;            // pattern[start, end)
+    private static final int KIND_REVERSED_RANGE = 2;   // pattern[start, end) with code points in reverse order
+    private static final int KIND_NAMED_GROUP = 3;      // "(?<" + pattern[start, end) + ">"
+    private static final int KIND_BACK_REFERENCE = 4;   // "\\" + start
+
+    private static final String[] TEXTS = {
+            "", "|", "$", "^", ".", "(", ")", "(?", ":", "(?:", "(?<=", "(?<!", "(?>", "(?=", "(?!", "\\z", "\\A", "\\Q", "\\E",
+            "?", "??", "?+", "*", "*?", "*+", "+", "+?", "++",
+    };
+
+    private static final int TEXT_EMPTY = 0;
+    private static final int TEXT_ALTERNATION = 1;
+    private static final int TEXT_DOLLAR = 2;
+    private static final int TEXT_CARET = 3;
+    private static final int TEXT_DOT = 4;
+    private static final int TEXT_OPEN = 5;
+    private static final int TEXT_CLOSE = 6;
+    private static final int TEXT_FLAGS_OPEN = 7;
+    private static final int TEXT_COLON = 8;
+    private static final int TEXT_NON_CAPTURING = 9;
+    private static final int TEXT_LOOK_BEHIND = 10;
+    private static final int TEXT_NEGATIVE_LOOK_BEHIND = 11;
+    private static final int TEXT_INDEPENDENT = 12;
+    private static final int TEXT_LOOK_AHEAD = 13;
+    private static final int TEXT_NEGATIVE_LOOK_AHEAD = 14;
+    private static final int TEXT_END_OF_INPUT = 15;
+    private static final int TEXT_START_OF_INPUT = 16;
+    private static final int TEXT_QUOTE_START = 17;
+    private static final int TEXT_QUOTE_END = 18;
+    private static final int TEXT_OPTIONAL = 19;
+    private static final int TEXT_OPTIONAL_RELUCTANT = 20;
+    private static final int TEXT_OPTIONAL_POSSESSIVE = 21;
+    private static final int TEXT_ANY = 22;
+    private static final int TEXT_ANY_RELUCTANT = 23;
+    private static final int TEXT_ANY_POSSESSIVE = 24;
+    private static final int TEXT_SOME = 25;
+    private static final int TEXT_SOME_RELUCTANT = 26;
+    private static final int TEXT_SOME_POSSESSIVE = 27;
+
+    /**
+     * List of indices in sequences of original capturing group numbers [startIndex, endIndex)
+     */
+    private int[] capturingGroupStartIndices;
+    private int[] capturingGroupEndIndices;
+
+    /**
+     * if capturing group is named then here will be it's index+1
+     */
+    private int[] capturingGroupNameIndicesP1;
+
+    /**
+     * List of indices in sequences of original named capturing groups [startIndex, endIndex)
+     */
+    private String[] namedGroups;
+
+    /**
+     * Named group index to capturing group index
+     */
+    private int[] namedGroupNumbers;
+
+    /**
+     * List of indices to sequences of original back references to original group numbers
+     */
+    private int[] backReferenceIndices;
+    private int[] backReferenceGroups;
+    private int[] backReferenceReversedIndicesP1;
+    private boolean[] namedBackReferences;
+
+    /**
+     * Index+1 of back references which should replace the group reference
+     */
+    private int[] groupToBackReferenceP1;
+
+    private static final int SEQUENCE = 0;
+    private static final int GROUP = 1;
+    private static final int BACK_REFERENCE = 2;
+
+    // index into indices for next copy
+    private int index;
+
+    // indices of reverse traversal of the sequence uses these to figure out
+    // what is being processed
+    private int sequenceIndex;
+    private int capturedGroupIndex;
+    private int namedGroupIndex;
+    private int backReferenceIndex;
+    private int patternLength;
+    /**
+     * Index into the pattern string that keeps track of how much has been
+     * parsed.
+     */
+    private int cursor;
+
+    // next index of reversed group
+    private int reversedGroupIndex;
+
+    // end of the last character class consumed by clazz()
+    private int classEnd;
+
+    private int getGroupNameIndex(int start, int end) {
+        int length = end - start;
+
+        for (int i = 0; i < namedGroupIndex; i++) {
+            String groupName = namedGroups[i];
+            if (groupName.length() == length && pattern.regionMatches(start, groupName, 0, length)) return i;
+        }
+        return -1;
+    }
+
+    private int groupEnd;
+    private int backReferenceEnd;
+
+    private int getNextType() {
+        if (capturedGroupIndex >= 0 && capturingGroupEndIndices[capturedGroupIndex] == sequenceIndex + 1) {
+            groupEnd = capturedGroupIndex;
+            return GROUP;
+        }
+        if (backReferenceIndex >= 0 && backReferenceIndices[backReferenceIndex] == sequenceIndex) {
+            // back reference
+            backReferenceEnd = backReferenceIndex;
+            return BACK_REFERENCE;
+        }
+
+        // may need to check previous capturedGroupEndIndices if right now replacing a group
+        for (int i = capturedGroupIndex; i-- > 0; ) {
+            if (capturingGroupEndIndices[i] > sequenceIndex + 1) continue;
+
+            if (capturingGroupEndIndices[i] == sequenceIndex + 1) {
+                groupEnd = i;
+                return GROUP;
+            }
+            break;
+        }
+
+        // may need to check previous backReferenceIndices if right now replacing a group
+        for (int i = backReferenceIndex; i-- > 0; ) {
+            if (backReferenceIndices[i] > sequenceIndex) continue;
+
+            if (backReferenceIndices[i] == sequenceIndex) {
+                backReferenceEnd = i;
+                return BACK_REFERENCE;
+            }
+            break;
+        }
+        return SEQUENCE;
+    }
+
+    private void initCopy() {
+        sequenceIndex = sequenceCount;
+        capturedGroupIndex = groupCount;
+        namedGroupIndex = namedGroupCount;
+        backReferenceIndex = backReferenceCount;
+
+        groupToBackReferenceP1 = cleared(groupToBackReferenceP1, groupCount);
+        backReferenceReversedIndicesP1 = cleared(backReferenceReversedIndicesP1, backReferenceCount);
+
+        originalToReversedGroups = cleared(originalToReversedGroups, groupCount);
+        index = 0;
+        reversedGroupIndex = 0;
+
+        sequenceIndex--;
+        capturedGroupIndex--;
+        namedGroupIndex--;
+        backReferenceIndex--;
+    }
+
+    private void addReversed(int kind, int start, int end) {
+        int offset = index * SEQUENCE_STRIDE;
+        if (reversedSequences.length <= offset) {
+            reversedSequences = grow(reversedSequences, reversedSequences.length);
+        }
+        reversedSequences[offset] = kind;
+        reversedSequences[offset + 1] = start;
+        reversedSequences[offset + 2] = end;
+        index++;
+    }
+
+    private void addReversed(int sequence) {
+        int offset = sequence * SEQUENCE_STRIDE;
+        addReversed(sequences[offset], sequences[offset + 1], sequences[offset + 2]);
+    }
+
+    private void setReversed(int reversedIndex, int kind, int start) {
+        int offset = reversedIndex * SEQUENCE_STRIDE;
+        reversedSequences[offset] = kind;
+        reversedSequences[offset + 1] = start;
+        reversedSequences[offset + 2] = 0;
+    }
+
+    private void copyRange(final int startIndex, final int endIndex) {
+        int savedIndex = sequenceIndex;
+        sequenceIndex = endIndex - 1;
+
+        // copy opening sequence
+        addReversed(sequenceIndex--);
+
+        while (sequenceIndex > startIndex + 1) {
+            copy();
+        }
+
+        // copy close sequence
+        addReversed(sequenceIndex--);
+
+        // copy closure
+        addReversed(sequenceIndex--);
+
+        sequenceIndex = savedIndex;
+    }
+
+    private void copy() {
+        int type = getNextType();
+        switch (type) {
+            case GROUP: {
+                int group = groupEnd;
+                if (groupEnd == capturedGroupIndex) capturedGroupIndex--;
+
+                if (groupToBackReferenceP1[group] != 0) {
+                    // replace by back reference to this group
+                    sequenceIndex = capturingGroupStartIndices[group];
+                    sequenceIndex--;
+
+                    addReversed(KIND_TEXT, TEXT_EMPTY, 0);
+                    addReversed(backReferenceIndices[groupToBackReferenceP1[group] - 1]);
+                    backReferenceReversedIndicesP1[groupToBackReferenceP1[group] - 1] = index;
+                    addReversed(KIND_TEXT, TEXT_EMPTY, 0);
+                } else {
+                    // copy the group
+                    groupToBackReferenceP1[group] = -1;
+                    originalToReversedGroups[group] = reversedGroupIndex++;
+                    sequenceIndex = capturingGroupStartIndices[group];
+                    sequenceIndex--;
+                    copyRange(capturingGroupStartIndices[group], capturingGroupEndIndices[group]);
+                }
+            }
+            break;
+
+            case BACK_REFERENCE: {
+                int backReference = backReferenceEnd;
+                int group = backReferenceGroups[backReference];
+
+                if (backReferenceEnd == backReferenceIndex) backReferenceIndex--;
+
+                if (groupToBackReferenceP1[group] == 0) {
+                    // need to copy the group and change group to back reference
+                    groupToBackReferenceP1[group] = backReference + 1;
+                    sequenceIndex--;
+                    originalToReversedGroups[group] = reversedGroupIndex++;
+                    copyRange(capturingGroupStartIndices[group], capturingGroupEndIndices[group]);
+                } else {
+                    // just copy the back reference
+                    addReversed(KIND_TEXT, TEXT_EMPTY, 0);
+                    addReversed(sequenceIndex--);
+                    backReferenceReversedIndicesP1[backReference] = index;
+                    addReversed(KIND_TEXT, TEXT_EMPTY, 0);
+                }
+            }
+            break;
+
+            case SEQUENCE:
+                addReversed(sequenceIndex--);
+                break;
+        }
+    }
+
+    private void reverse() {
+        initCopy();
+
+        while (sequenceIndex >= 0) {
+            copy();
+        }
+
+        // we now need to map back references to the new group numbers
+        if (groupCount > 0) {
+            for (int i = 0; i < backReferenceCount; i++) {
+                if (namedBackReferences[i]) continue;
+
+                int group = backReferenceGroups[i];
+                int reversedIndex = backReferenceReversedIndicesP1[i];
+                if (reversedIndex == 0) continue;
+
+                // change back reference to reversed group number
+                setReversed(reversedIndex - 1, KIND_BACK_REFERENCE, originalToReversedGroups[group] + 1);
+
+                // see if need to wrap in (?: ) if followed by digit, after spacer
+                int nextIndex = reversedIndex;
+                int ch = -1;
+                while (++nextIndex < index && (ch = firstChar(reversedSequences, nextIndex)) == -1) { }
+                if (ch != -1 && Character.isDigit(ch)) {
+                    // add wrapper
+                    setReversed(reversedIndex - 2, KIND_TEXT, TEXT_NON_CAPTURING);
+                    setReversed(reversedIndex, KIND_TEXT, TEXT_CLOSE);
+                }
+            }
+        }
+
+        // assemble in one pass into a buffer of the exact size
+        int length = 0;
+        for (int i = 0; i < index; i++) {
+            length += length(reversedSequences, i);
+        }
+
+        if (chars.length < length) chars = new char[Math.max(length, chars.length * 2)];
+        int pos = 0;
+        for (int i = 0; i < index; i++) {
+            pos = getChars(reversedSequences, i, chars, pos);
+        }
+
+        reversed = new String(chars, 0, length);
+    }
+
+    private static int digitCount(int value) {
+        int count = 1;
+        while (value >= 10) {
+            value /= 10;
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * @return length of the text of a sequence
+     */
+    private static int length(int[] sequences, int sequence) {
+        int offset = sequence * SEQUENCE_STRIDE;
+        int start = sequences[offset + 1];
+        int end = sequences[offset + 2];
+
+        switch (sequences[offset]) {
+            case KIND_TEXT:
+                return TEXTS[start].length();
+            case KIND_NAMED_GROUP:
+                return end - start + 4;
+            case KIND_BACK_REFERENCE:
+                return 1 + digitCount(start);
+            default:
+                return end - start;
+        }
+    }
+
+    /**
+     * @return first char of the text of a sequence or -1 if it is empty
+     */
+    private int firstChar(int[] sequences, int sequence) {
+        int offset = sequence * SEQUENCE_STRIDE;
+        int start = sequences[offset + 1];
+        int end = sequences[offset + 2];
+
+        switch (sequences[offset]) {
+            case KIND_TEXT:
+                return TEXTS[start].isEmpty() ? -1 : TEXTS[start].charAt(0);
+            case KIND_RANGE:
+                return start < end ? pattern.charAt(start) : -1;
+            case KIND_REVERSED_RANGE:
+                if (start >= end) return -1;
+                char c = pattern.charAt(end - 1);
+                return end - 2 >= start && Character.isLowSurrogate(c) && Character.isHighSurrogate(pattern.charAt(end - 2)) ? pattern.charAt(end - 2) : c;
+            case KIND_NAMED_GROUP:
+                return '(';
+            case KIND_BACK_REFERENCE:
+                return '\\';
+            default:
+                return -1;
+        }
+    }
+
+    /**
+     * Copy the text of a sequence into chars
+     *
+     * @return position in chars after the copied text
+     */
+    private int getChars(int[] sequences, int sequence, char[] chars, int pos) {
+        int offset = sequence * SEQUENCE_STRIDE;
+        int start = sequences[offset + 1];
+        int end = sequences[offset + 2];
+
+        switch (sequences[offset]) {
+            case KIND_TEXT: {
+                String text = TEXTS[start];
+                text.getChars(0, text.length(), chars, pos);
+                return pos + text.length();
+            }
+
+            case KIND_RANGE:
+                pattern.getChars(start, end, chars, pos);
+                return pos + end - start;
+
+            case KIND_REVERSED_RANGE:
+                // code points in reverse order, keeping surrogate pairs in order
+                for (int i = end; i-- > start; ) {
+                    char c = pattern.charAt(i);
+                    if (i > start && Character.isLowSurrogate(c) && Character.isHighSurrogate(pattern.charAt(i - 1))) {
+                        chars[pos++] = pattern.charAt(--i);
+                    }
+                    chars[pos++] = c;
+                }
+                return pos;
+
+            case KIND_NAMED_GROUP:
+                chars[pos++] = '(';
+                chars[pos++] = '?';
+                chars[pos++] = '<';
+                pattern.getChars(start, end, chars, pos);
+                pos += end - start;
+                chars[pos++] = '>';
+                return pos;
+
+            case KIND_BACK_REFERENCE: {
+                chars[pos++] = '\\';
+                int digits = digitCount(start);
+                int value = start;
+                for (int i = pos + digits; i-- > pos; ) {
+                    chars[i] = (char) ('0' + value % 10);
+                    value /= 10;
+                }
+                return pos + digits;
+            }
+
+            default:
+                return pos;
+        }
+    }
+
+    private void initParse() {
+        patternLength = pattern.length();
+
+        sequenceIndex = 0;
+        capturedGroupIndex = 0;
+        namedGroupIndex = 0;
+        backReferenceIndex = 0;
+
+        index = 0;
+        cursor = 0;
+    }
+
+    private String[] grow(String[] array, int step) {
+        String[] newArray = new String[array.length + step];
+        System.arraycopy(array, 0, newArray, 0, array.length);
+        return newArray;
+    }
+
+    private int[] grow(int[] array, int step) {
+        int[] newArray = new int[array.length + step];
+        System.arraycopy(array, 0, newArray, 0, array.length);
+        return newArray;
+    }
+
+    private boolean[] grow(boolean[] array, int step) {
+        boolean[] newArray = new boolean[array.length + step];
+        System.arraycopy(array, 0, newArray, 0, array.length);
+        return newArray;
+    }
+
+    /**
+     * @return array with at least size elements, the first size of which are 0
+     */
+    private static int[] cleared(int[] array, int size) {
+        if (array.length < size) return new int[Math.max(size, array.length * 2)];
+        Arrays.fill(array, 0, size, 0);
+        return array;
+    }
+
+    private void finalizeParse() {
+        sequenceCount = sequenceIndex;
+        groupCount = capturedGroupIndex;
+        namedGroupCount = namedGroupIndex;
+        backReferenceCount = backReferenceIndex;
+    }
+
+    private void addSequence(int kind, int start, int end) {
+        int offset = sequenceIndex * SEQUENCE_STRIDE;
+        if (sequences.length <= offset) {
+            sequences = grow(sequences, sequences.length);
+        }
+        sequences[offset] = kind;
+        sequences[offset + 1] = start;
+        sequences[offset + 2] = end;
+        sequenceIndex++;
+    }
+
+    private void addText(int text) {
+        addSequence(KIND_TEXT, text, 0);
+    }
+
+    private void addRange(int start, int end) {
+        addSequence(KIND_RANGE, start, end);
+    }
+
+    private void addRangeReversed(int start, int end) {
+        // the code points are reversed when the reversed pattern is assembled
+        addSequence(KIND_REVERSED_RANGE, start, end);
+    }
+
+    private void setText(int sequence, int text) {
+        setSequence(sequence, KIND_TEXT, text, 0);
+    }
+
+    private void setSequence(int sequence, int kind, int start, int end) {
+        int offset = sequence * SEQUENCE_STRIDE;
+        sequences[offset] = kind;
+        sequences[offset + 1] = start;
+        sequences[offset + 2] = end;
+    }
+
+
+    private void addGroup(int startIndex, int endIndex) {
+        if (capturingGroupStartIndices.length <= capturedGroupIndex) {
+            capturingGroupStartIndices = grow(capturingGroupStartIndices, capturingGroupStartIndices.length);
+            capturingGroupEndIndices = grow(capturingGroupEndIndices, capturingGroupEndIndices.length);
+            capturingGroupNameIndicesP1 = grow(capturingGroupNameIndicesP1, capturingGroupNameIndicesP1.length);
+        }
+        capturingGroupStartIndices[capturedGroupIndex] = startIndex;
+        capturingGroupEndIndices[capturedGroupIndex] = endIndex;
+        capturingGroupNameIndicesP1[capturedGroupIndex] = 0;
+        capturedGroupIndex++;
+        capturingGroupCount++;
+    }
+
+    private void addNamedGroup(String groupName, int startIndex, int endIndex) {
+        int group = capturedGroupIndex;
+
+        if (namedGroups.length <= namedGroupIndex) {
+            namedGroups = grow(namedGroups, namedGroups.length);
+            namedGroupNumbers = grow(namedGroupNumbers, namedGroupNumbers.length);
+        }
+
+        namedGroups[namedGroupIndex] = groupName;
+        namedGroupNumbers[namedGroupIndex] = group;
+        namedGroupIndex++;
+        addGroup(startIndex, endIndex);
+
+        capturingGroupNameIndicesP1[group] = capturedGroupIndex;
+    }
+
+    private void addBackReference(int group, int index) {
+        if (backReferenceGroups.length <= backReferenceIndex) {
+            backReferenceGroups = grow(backReferenceGroups, backReferenceGroups.length);
+            backReferenceIndices = grow(backReferenceIndices, backReferenceIndices.length);
+            namedBackReferences = grow(namedBackReferences, namedBackReferences.length);
+        }
+        backReferenceGroups[backReferenceIndex] = group;
+        backReferenceIndices[backReferenceIndex] = index;
+        namedBackReferences[backReferenceIndex] = false;
+        backReferenceIndex++;
+    }
+
+    private void addNamedBackReference(int namedGroup, int index) {
+        int group = namedGroupNumbers[namedGroup];
+        int backReference = backReferenceIndex;
+        addBackReference(group, index);
+        namedBackReferences[backReference] = true;
+    }
+
+    private int codePointAt(int index) {
+        return index < patternLength ? pattern.codePointAt(index) : -1;
+    }
+
+    private int codePointStep(int index) {
+        return index < patternLength ? Character.charCount(pattern.codePointAt(index)) : 0;
+    }
+
+    private int codePointBackStep(int index) {
+        if (index > patternLength) return 0;
+
+        if (index >= 2 && Character.charCount(pattern.codePointAt(index - 2)) == 2) {
+            return 2;
+        } else {
+            return 1;
+        }
+    }
+
+    private int codePointAt(CharSequence charSequence, int index) {
+        return Character.codePointAt(charSequence, index);
+    }
+
+    private int codePointStep(CharSequence charSequence, int index) {
+        return Character.charCount(Character.codePointAt(charSequence, index));
+    }
+
+    private int codePointBackStep(CharSequence charSequence, int index) {
+        if (index >= 2 && Character.charCount(Character.codePointAt(charSequence, index - 2)) == 2) {
+            return 2;
+        } else {
+            return 1;
+        }
+    }
+
+    private static final int UNIX_LINES = Pattern.UNIX_LINES;
+    private static final int CASE_INSENSITIVE = Pattern.CASE_INSENSITIVE;
+    private static final int MULTILINE = Pattern.MULTILINE;
+    private static final int DOTALL = Pattern.DOTALL;
+    private static final int UNICODE_CASE = Pattern.UNICODE_CASE;
+    private static final int COMMENTS = Pattern.COMMENTS;
+    private static final int UNICODE_CHARACTER_CLASS = Pattern.UNICODE_CHARACTER_CLASS;
+    private static final int CANON_EQ = Pattern.CANON_EQ;
+    private static final int LITERAL = Pattern.LITERAL;
+
+    /**
+     * parse the regex to be reversed
+     */
+    private void parse() {
+        initParse();
+
+        if (has(LITERAL)) {
+            addRangeReversed(0, patternLength);
+        } else {
+            expr();
+
+            // Check extra pattern characters
+            if (patternLength != cursor) {
+                if (peek() == ')') {
+                    throw error("Unmatched closing ')'");
+                } else {
+                    throw error("Unexpected internal error");
+                }
+            }
+        }
+
+        finalizeParse();
+    }
+
+    /**
+     * Indicates whether a particular flag is set or not.
+     */
+    private boolean has(int f) {
+        return (flags & f) != 0;
+    }
+
+    /**
+     * Peek the next character, and do not advance the cursor.
+     */
+    private int peek() {
+        int ch = codePointAt(cursor);
+        if (has(COMMENTS))
+            ch = peekPastWhitespace(ch);
+        return ch;
+    }
+
+    /**
+     * Read the next character, and advance the cursor by one.
+     */
+    private int read() {
+        int ch = codePointAt(cursor);
+        cursor += codePointStep(cursor);
+
+        if (has(COMMENTS))
+            ch = parsePastWhitespace(ch);
+        return ch;
+    }
+
+    /**
+     * Read the next character, and advance the cursor by one,
+     * ignoring the COMMENTS setting
+     */
+    private int readEscaped() {
+        int ch = codePointAt(cursor);
+        cursor += codePointStep(cursor);
+        return ch;
+    }
+
+    /**
+     * Advance the cursor by one, and peek the next character.
+     */
+    private int next() {
+        cursor += codePointStep(cursor);
+        int ch = codePointAt(cursor);
+        if (has(COMMENTS))
+            ch = peekPastWhitespace(ch);
+        return ch;
+    }
+
+    /**
+     * Advance the cursor by one, and peek the next character,
+     * ignoring the COMMENTS setting
+     */
+    private int nextEscaped() {
+        cursor += codePointStep(cursor);
+        int ch = codePointAt(cursor);
+        return ch;
+    }
+
+    /**
+     * If in xmode peek past whitespace and comments.
+     */
+    private int peekPastWhitespace(int ch) {
+        while (ch == ' ' || ch == '#') {
+            while (ch == ' ') {
+                cursor += codePointStep(cursor);
+                ch = codePointAt(cursor);
+            }
+
+            if (ch == '#') {
+                ch = peekPastLine();
+            }
+        }
+        return ch;
+    }
+
+    /**
+     * If in xmode parse past whitespace and comments.
+     */
+    private int parsePastWhitespace(int ch) {
+        while (ch == ' ' || ch == '#') {
+            while (ch == ' ') {
+                ch = codePointAt(cursor);
+                cursor += codePointStep(cursor);
+            }
+
+            if (ch == '#')
+                ch = parsePastLine();
+        }
+        return ch;
+    }
+
+    /**
+     * xmode parse past comment to end of line.
+     */
+    private int parsePastLine() {
+        int ch = codePointAt(cursor);
+        cursor += codePointStep(cursor);
+        while (ch != 0 && !isLineSeparator(ch)) {
+            ch = codePointAt(cursor);
+            cursor += codePointStep(cursor);
+        }
+        return ch;
+    }
+
+    /**
+     * xmode peek past comment to end of line.
+     */
+    private int peekPastLine() {
+        int ch = codePointAt(cursor);
+        cursor += codePointStep(cursor);
+        while (ch != 0 && !isLineSeparator(ch)) {
+            cursor += codePointStep(cursor);
+            ch = codePointAt(cursor);
+        }
+        return ch;
+    }
+
+    /**
+     * Determines if character is a line separator in the current mode
+     */
+    private boolean isLineSeparator(int ch) {
+        if (has(UNIX_LINES)) {
+            return ch == '\n';
+        } else {
+            return (ch == '\n' ||
+                    ch == '\r' ||
+                    (ch | 1) == '\u2029' ||
+                    ch == '\u0085');
+        }
+    }
+
+    /**
+     * Read the character after the next one, and advance the cursor by two.
+     */
+    private int skip() {
+        cursor += codePointStep(cursor);
+        int ch = codePointAt(cursor);
+        cursor += codePointStep(cursor);
+        return ch;
+    }
+
+    /**
+     * Unread one next character, and retreat cursor by one.
+     */
+    private void unread() {
+        cursor -= codePointBackStep(cursor);
+    }
+
+    private PatternSyntaxException error(String s) {
+        return new PatternSyntaxException(s, pattern, cursor - codePointBackStep(cursor));
+    }
+
+    /**
+     * This may be called recursively to parse sub expressions that may
+     * contain alternations.
+     */
+    private void expr() {
+        if (cursor >= patternLength) return;
+
+        for (; ; ) {
+            sequence();
+            if (peek() != '|') {
+                return;
+            }
+            addText(TEXT_ALTERNATION);
+            next();
+
+            if (cursor >= patternLength) break;
+        }
+    }
+
+    /**
+     * Parsing of sequences between alternations.
+     */
+    @SuppressWarnings("fallthrough")
+    private void sequence() {
+LOOP:
+        for (; ; ) {
+            int ch = peek();
+            int closureIndex = sequenceIndex;
+            addText(TEXT_EMPTY);
+
+            switch (ch) {
+                case '(':
+                    group();
+                    break;
+
+                case '[': {
+                    int start = cursor;
+                    clazz(true);
+                    addRange(start, classEnd);
+                    break;
+                }
+
+                case '\\':
+                    int start = cursor;
+                    ch = nextEscaped();
+                    if (ch == 'p' || ch == 'P') {
+                        boolean oneLetter = true;
+                        ch = next(); // Consume { if present
+                        if (ch != '{') {
+                            unread();
+                        } else {
+                            oneLetter = false;
+                        }
+                        family(oneLetter);
+                        addRange(start, cursor);
+                    } else {
+                        unread();
+                        atom();
+                    }
+                    break;
+                case '^':
+                    next();
+                    addText(TEXT_DOLLAR);
+                    break;
+                case '$':
+                    next();
+                    addText(TEXT_CARET);
+                    break;
+                case '.':
+                    next();
+                    addText(TEXT_DOT);
+                    break;
+                case '|':
+                case ')':
+                    break LOOP;
+                case ']': // Now interpreting dangling ] and } as literals
+                case '}':
+                    atom();
+                    break;
+                case '?':
+                case '*':
+                case '+':
+                    next();
+                    throw error("Dangling meta character '" + ((char) ch) + "'");
+
+                case -1:
+                    if (cursor >= patternLength) {
+                        break LOOP;
+                    }
+                    // Fall through
+                default:
+                    atom();
+                    break;
+            }
+
+            closure(closureIndex);
+        }
+    }
+
+    /**
+     * Parses the name of a "named capturing group" and returns the end of the name, the trailing
+     * ">" is consumed after parsing.
+     */
+    private int groupName(int start) {
+        int ch;
+        while (Character.isLowerCase(ch = read()) || Character.isUpperCase(ch) ||
+                Character.isDigit(ch)) {
+        }
+        if (cursor == start + 1)
+            throw error("named capturing group has 0 length name");
+        if (ch != '>')
+            throw error("named capturing group is missing trailing '>'");
+        return cursor - 1;
+    }
+
+    /**
+     * Parses a group
+     */
+    private void group() {
+        int save = flags;
+        int closureIndex = sequenceIndex;
+
+        // add an empty place holder for closure, which has to be before the group when reversed
+        addText(TEXT_EMPTY);
+
+        int ch = next();
+        if (ch == '?') {
+            ch = skip();
+            switch (ch) {
+                case ':':   //  (?:xxx) pure group
+                    addText(TEXT_CLOSE);
+                    expr();
+                    addText(TEXT_NON_CAPTURING);
+                    break;
+                case '=':   // (?=xxx) and (?!xxx) lookahead
+                    addText(TEXT_CLOSE);
+                    expr();
+                    addText(TEXT_LOOK_BEHIND);
+                    break;
+                case '!':
+                    addText(TEXT_CLOSE);
+                    expr();
+                    addText(TEXT_NEGATIVE_LOOK_BEHIND);
+                    break;
+                case '>':   // (?>xxx)  independent group
+                    addText(TEXT_CLOSE);
+                    expr();
+                    addText(TEXT_INDEPENDENT);
+                    break;
+                case '<':   // (?<xxx)  look behind
+                    int start = cursor;
+                    ch = read();
+                    if (Character.isLowerCase(ch) || Character.isUpperCase(ch)) {
+                        // named captured group
+                        int nameEnd = groupName(start);
+                        if (getGroupNameIndex(start, nameEnd) != -1)
+                            throw error("Named capturing group <" + pattern.substring(start, nameEnd)
+                                    + "> is already defined");
+
+                        int groupIndex = capturedGroupIndex;
+                        addText(TEXT_CLOSE);
+                        // create a 0 length one since we don't know where it will end
+                        addNamedGroup(pattern.substring(start, nameEnd), closureIndex, sequenceIndex);
+                        expr();
+                        addSequence(KIND_NAMED_GROUP, start, nameEnd);
+                        // update to actual sequence end
+                        capturingGroupEndIndices[groupIndex] = sequenceIndex;
+                        break;
+                    } else {
+                        addText(TEXT_CLOSE);
+                        expr();
+                        if (ch == '=') {
+                            addText(TEXT_LOOK_AHEAD);
+                        } else if (ch == '!') {
+                            addText(TEXT_NEGATIVE_LOOK_AHEAD);
+                        } else {
+                            throw error("Unknown look-behind group");
+                        }
+                    }
+                    break;
+                case '$':
+                case '@':
+                    throw error("Unknown group type");
+                default:    // (?xxx:) inlined match flags
+                    unread();
+                    addText(TEXT_CLOSE);
+
+                    peek();
+                    int flagsStart = cursor;
+                    int flagsEnd = addFlag();
+                    ch = read();
+                    if (ch == ')') {
+                        addRange(flagsStart, flagsEnd);
+                        addText(TEXT_FLAGS_OPEN);
+                        return;    // Inline modifier only
+                    }
+                    if (ch != ':') {
+                        throw error("Unknown inline modifier");
+                    }
+
+                    expr();
+                    addText(TEXT_COLON);
+                    addRange(flagsStart, flagsEnd);
+                    addText(TEXT_FLAGS_OPEN);
+                    break;
+            }
+        } else { // (xxx) a regular group
+            int groupIndex = capturedGroupIndex;
+            addText(TEXT_CLOSE);
+            addGroup(closureIndex, sequenceIndex);
+
+            expr();
+            addText(TEXT_OPEN);
+
+            // update to actual sequence end
+            capturingGroupEndIndices[groupIndex] = sequenceIndex;
+        }
+
+        ch = codePointAt(cursor);
+        cursor += codePointStep(cursor);
+
+        if (has(COMMENTS))
+            ch = parsePastWhitespace(ch);
+
+        if ((int) ')' != ch) {
+            throw error("Unclosed group");
+        }
+        flags = save;
+
+        // Check for quantifiers and add it ahead of the expression
+        closure(closureIndex);
+    }
+
+    /**
+     * Parses inlined match flags and set them appropriately, returns the end of the flags.
+     */
+    @SuppressWarnings("fallthrough")
+    private int addFlag() {
+        int ch = peek();
+        int end = cursor;
+
+        for (; ; ) {
+            switch (ch) {
+                case 'i':
+                    flags |= CASE_INSENSITIVE;
+                    break;
+                case 'm':
+                    flags |= MULTILINE;
+                    break;
+                case 's':
+                    flags |= DOTALL;
+                    break;
+                case 'd':
+                    flags |= UNIX_LINES;
+                    break;
+                case 'u':
+                    flags |= UNICODE_CASE;
+                    break;
+                case 'c':
+                    flags |= CANON_EQ;
+                    break;
+                case 'x':
+                    flags |= COMMENTS;
+                    break;
+                case 'U':
+                    flags |= (UNICODE_CHARACTER_CLASS | UNICODE_CASE);
+                    break;
+                case '-': // subFlag then fall through
+                    next();
+                    end = subFlag();
+
+                default:
+                    return end;
+            }
+            ch = next();
+            end = cursor;
+        }
+    }
+
+    /**
+     * Parses the second part of inlined match flags and turns off
+     * flags appropriately.
+     */
+    @SuppressWarnings("fallthrough")
+    private int subFlag() {
+        int ch = peek();
+        int end = cursor;
+
+        for (; ; ) {
+            switch (ch) {
+                case 'i':
+                    flags &= ~CASE_INSENSITIVE;
+                    break;
+                case 'm':
+                    flags &= ~MULTILINE;
+                    break;
+                case 's':
+                    flags &= ~DOTALL;
+                    break;
+                case 'd':
+                    flags &= ~UNIX_LINES;
+                    break;
+                case 'u':
+                    flags &= ~UNICODE_CASE;
+                    break;
+                case 'c':
+                    flags &= ~CANON_EQ;
+                    break;
+                case 'x':
+                    flags &= ~COMMENTS;
+                    break;
+                case 'U':
+                    flags &= ~(UNICODE_CHARACTER_CLASS | UNICODE_CASE);
+                    next();
+                    end = cursor;
+
+                default:
+                    return end;
+            }
+
+            ch = next();
+            end = cursor;
+        }
+    }
+
+    static final int MAX_REPS = 0x7FFFFFFF;
+
+    /**
+     * Processes repetition. If the next character peeked is a quantifier
+     * then new nodes must be appended to handle the repetition.
+     * Prev could be a single or a group, so it could be a chain of nodes.
+     */
+    private void closure(int closureIndex) {
+        int ch = peek();
+        switch (ch) {
+            case '?':
+                ch = next();
+                if (ch == '?') {
+                    next();
+                    setText(closureIndex, TEXT_OPTIONAL_RELUCTANT);
+                } else if (ch == '+') {
+                    next();
+                    setText(closureIndex, TEXT_OPTIONAL_POSSESSIVE);
+                } else {
+                    setText(closureIndex, TEXT_OPTIONAL);
+                }
+                break;
+            case '*':
+                ch = next();
+                if (ch == '?') {
+                    next();
+                    setText(closureIndex, TEXT_ANY_RELUCTANT);
+                } else if (ch == '+') {
+                    next();
+                    setText(closureIndex, TEXT_ANY_POSSESSIVE);
+                } else {
+                    setText(closureIndex, TEXT_ANY);
+                }
+                break;
+            case '+':
+                ch = next();
+                if (ch == '?') {
+                    next();
+                    setText(closureIndex, TEXT_SOME_RELUCTANT);
+                } else if (ch == '+') {
+                    next();
+                    setText(closureIndex, TEXT_SOME_POSSESSIVE);
+                } else {
+                    setText(closureIndex, TEXT_SOME);
+                }
+                break;
+            case '{':
+                int start = cursor;
+
+                ch = codePointAt(cursor + codePointStep(cursor));
+                if (Character.isDigit(ch)) {
+                    skip();
+                    int cmin = 0;
+                    do {
+                        cmin = cmin * 10 + (ch - '0');
+                    } while (Character.isDigit(ch = read()));
+                    int cmax = cmin;
+                    if (ch == ',') {
+                        ch = read();
+                        cmax = MAX_REPS;
+                        if (ch != '}') {
+                            cmax = 0;
+                            while (Character.isDigit(ch)) {
+                                cmax = cmax * 10 + (ch - '0');
+                                ch = read();
+                            }
+                        }
+                    }
+                    if (ch != '}')
+                        throw error("Unclosed counted closure");
+                    if ((cmin | cmax | (cmax - cmin)) < 0)
+                        throw error("Illegal repetition range");
+                    ch = peek();
+
+                    if (ch == '?') {
+                        next();
+                    } else if (ch == '+') {
+                        next();
+                    }
+
+                    setSequence(closureIndex, KIND_RANGE, start, cursor);
+                    break;
+                } else {
+                    throw error("Illegal repetition");
+                }
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Utility method for parsing control escape sequences.
+     */
+    private int c() {
+        if (cursor < patternLength) {
+            return read() ^ 64;
+        }
+        throw error("Illegal control escape sequence");
+    }
+
+    /**
+     * Utility method for parsing octal escape sequences.
+     */
+    private int o() {
+        int n = read();
+        if (((n - '0') | ('7' - n)) >= 0) {
+            if (cursor < patternLength) {
+                int m = read();
+                if (((m - '0') | ('7' - m)) >= 0) {
+                    if (cursor < patternLength) {
+                        int o = read();
+                        if ((((o - '0') | ('7' - o)) >= 0) && (((n - '0') | ('3' - n)) >= 0)) {
+                            return (n - '0') * 64 + (m - '0') * 8 + (o - '0');
+                        }
+                        unread();
+                    }
+                    return (n - '0') * 8 + (m - '0');
+                }
+                unread();
+            }
+            return (n - '0');
+        }
+        throw error("Illegal octal escape sequence");
+    }
+
+    private static boolean isHexDigit(int n) {
+        return n >= '0' && n <= '9' || n >= 'a' && n <= 'f' || n >= 'A' && n <= 'F';
+    }
+
+    private static int toDigit(int n) {
+        return n >= 'a' ? n - 'a' + 10 : n >= 'A' ? n - 'A' + 10 : n - '0';
+    }
+
+    /**
+     * Utility method for parsing hexadecimal escape sequences.
+     */
+    private int x() {
+        int n = read();
+        if (isHexDigit(n)) {
+            int m = read();
+            if (isHexDigit(m)) {
+                return toDigit(n) * 16 + toDigit(m);
+            }
+        } else if (n == '{' && isHexDigit(peek())) {
+            int ch = 0;
+            while (isHexDigit(n = read())) {
+                ch = (ch << 4) + toDigit(n);
+                if (ch > Character.MAX_CODE_POINT)
+                    throw error("Hexadecimal codepoint is too big");
+            }
+            if (n != '}')
+                throw error("Unclosed hexadecimal escape sequence");
+            return ch;
+        }
+        throw error("Illegal hexadecimal escape sequence");
+    }
+
+    /**
+     * Parse a character class, the end of the class in the pattern is left in classEnd so the
+     * class can be added as a range of the pattern.
+     * <p>
+     * Consumes a ] on the way out if consume is true. Usually consume
+     * is true except for the case of [abc&&def] where def is a separate
+     * right hand node with "understood" brackets.
+     */
+    private void clazz(boolean consume) {
+        boolean firstInClass = true;
+        boolean hadClass = false;
+
+        int ch = next();
+
+        for (; ; ) {
+            switch (ch) {
+                case '^':
+                    // Negates if first char in a class, otherwise literal
+                    if (firstInClass) {
+                        if (codePointAt(cursor - codePointBackStep(cursor)) != '[')
+                            break;
+                        ch = next();
+                        continue;
+                    } else {
+                        // ^ not first in class, treat as literal
+                        break;
+                    }
+                case '[':
+                    firstInClass = false;
+                    clazz(true);
+                    hadClass = true;
+                    ch = peek();
+                    continue;
+                case '&':
+                    firstInClass = false;
+                    ch = next();
+                    if (ch == '&') {
+                        ch = next();
+                        while (ch != ']' && ch != '&') {
+                            if (ch == '[') {
+                                clazz(true);
+                            } else { // abc&&def
+                                unread();
+                                clazz(false);
+                            }
+                            ch = peek();
+                        }
+                    } else {
+                        // treat as a literal &
+                        unread();
+                        break;
+                    }
+                    continue;
+                case -1:
+                    firstInClass = false;
+                    if (cursor >= patternLength)
+                        throw error("Unclosed character class");
+                    break;
+                case ']':
+                    firstInClass = false;
+                    if (hadClass) {
+                        if (consume) {
+                            classEnd = cursor + 1;
+                            next();
+                        }
+                        return;
+                    }
+                    break;
+                default:
+                    firstInClass = false;
+                    break;
+            }
+            range();
+            hadClass = true;
+            ch = peek();
+        }
+    }
+
+    /**
+     * Parse a single character or a character range in a character class
+     */
+    private void range() {
+        int ch = peek();
+        if (ch == '\\') {
+            ch = nextEscaped();
+            if (ch == 'p' || ch == 'P') { // A property
+                boolean comp = (ch == 'P');
+                boolean oneLetter = true;
+                // Consume { if present
+                ch = next();
+                if (ch != '{')
+                    unread();
+                else {
+                    oneLetter = false;
+                }
+
+                family(oneLetter);
+                return;
+            } else { // ordinary escape
+                unread();
+                ch = escape(true, true);
+                if (ch == -1) return;
+            }
+        } else {
+            next();
+        }
+
+        if (ch >= 0) {
+            if (peek() == '-') {
+                int endRange = codePointAt(cursor + codePointStep(cursor));
+
+                if (endRange == '[') {
+                    return;
+                }
+
+                if (endRange != ']') {
+                    next();
+                    int m = peek();
+                    if (m == '\\') {
+                        m = escape(true, false);
+                    } else {
+                        next();
+                    }
+                    if (m < ch) {
+                        throw error("Illegal character range");
+                    }
+                    return;
+                }
+            }
+            return;
+        }
+        throw error("Unexpected character '" + ((char) ch) + "'");
+    }
+
+    /**
+     * Parses a Unicode character family, the caller uses the pattern range of the family
+     */
+    private void family(boolean singleLetter) {
+        next();
+
+        if (singleLetter) {
+            read();
+        } else {
+            int i = cursor;
+
+            //noinspection StatementWithEmptyBody
+            while (cursor < patternLength && read() != '}') {
+            }
+
+            int j = cursor;
+            if (j > patternLength)
+                throw error("Unclosed character family");
+            if (i + 1 >= j)
+                throw error("Empty character family");
+        }
+    }
+
+    /**
+     * Parse and add a sequence in reverse
+     */
+    @SuppressWarnings("fallthrough")
+    private void atom() {
+        int first = 0;
+        int prev = -1;
+        int start = cursor;
+        int ch = peek();
+
+        for (; ; ) {
+            switch (ch) {
+                case '*':
+                case '+':
+                case '?':
+                case '{':
+                    if (first > 1) {
+                        cursor = prev;    // Unwind one character
+                        //noinspection UnusedAssignment
+                        first--;
+                    }
+                    break;
+                case '$':
+                case '.':
+                case '^':
+                case '(':
+                case '[':
+                case '|':
+                case ')':
+                    break;
+                case '\\':
+                    if (first > 0) {
+                        break;
+                    }
+
+                    ch = nextEscaped();
+                    if (ch == 'p' || ch == 'P') { // Property
+                        boolean oneLetter = true;
+
+                        ch = next(); // Consume { if present
+                        if (ch != '{')
+                            unread();
+                        else {
+                            oneLetter = false;
+                        }
+
+                        family(oneLetter);
+                        addRange(start, cursor);
+                        return;
+                    }
+
+                    unread();
+                    prev = cursor;
+
+                    ch = escape(false, true);
+                    if (ch >= 0) {
+                        // output the escape sequence
+                        addRange(start, cursor);
+                        start = cursor;
+                        first = 0;
+
+                        ch = peek();
+                        continue;
+                    } else {
+                        return;
+                    }
+
+                case -1:
+                    if (cursor >= patternLength) {
+                        break;
+                    }
+                    throw error("Internal error");
+
+                default:
+                    prev = cursor;
+                    first++;
+                    ch = next();
+                    continue;
+            }
+            break;
+        }
+
+        if (start < cursor) {
+            addRangeReversed(start, cursor);
+        }
+    }
+
+    /**
+     * Parses a backref greedily, taking as many numbers as it
+     * can. The first digit is always treated as a backref, but
+     * multi digit numbers are only treated as a backref if at
+     * least that many backrefs exist at this point in the regex.
+     */
+    private int ref(int refNum) {
+        boolean done = false;
+
+        while (!done) {
+            int ch = peek();
+            switch (ch) {
+                case '0':
+                case '1':
+                case '2':
+                case '3':
+                case '4':
+                case '5':
+                case '6':
+                case '7':
+                case '8':
+                case '9':
+                    int newRefNum = (refNum * 10) + (ch - '0');
+                    // Add another number if it doesn't make a group
+                    // that doesn't exist
+                    if (capturingGroupCount - 1 < newRefNum) {
+                        done = true;
+                        break;
+                    }
+                    refNum = newRefNum;
+                    read();
+                    break;
+                default:
+                    done = true;
+                    break;
+            }
+        }
+
+        return refNum;
+    }
+
+    /**
+     * Parses an escape sequence
+     */
+    private int escape(boolean inclass, boolean create) {
+        int startM2 = cursor;
+        int ch = skip();
+
+        switch (ch) {
+            case '0':
+                return o();
+
+            case '1':
+            case '2':
+            case '3':
+            case '4':
+            case '5':
+            case '6':
+            case '7':
+            case '8':
+            case '9':
+                if (inclass) break;
+                if (create) {
+                    int groupNum = ref(ch - '0');
+                    int sequenceStart = sequenceIndex;
+                    addRange(startM2, cursor);
+                    addBackReference(groupNum - 1, sequenceStart);
+                }
+                return -1;
+
+            case 'A':
+                if (inclass) break;
+                if (create) {
+                    addText(TEXT_END_OF_INPUT);
+                }
+                return -1;
+
+            case 'Z':
+            case 'z':
+                if (inclass) break;
+                if (create) {
+                    addText(TEXT_START_OF_INPUT);
+                }
+                return -1;
+
+            case 'B':
+            case 'G':
+            case 'b':
+                if (inclass) break;
+                if (create) {
+                    addRange(startM2, cursor);
+                }
+                return -1;
+
+            case 'D':
+            case 'S':
+            case 'W':
+            case 'd':
+            case 's':
+            case 'v':
+            case 'w':
+                if (create && !inclass) {
+                    addRange(startM2, cursor);
+                }
+                return -1;
+
+            case 'Q':
+                // take all to next \E as literals, but reversed if not in a character class
+                if (create) {
+                    // look for \E
+                    int end = cursor;
+                    startM2 = end;
+                    int backslashCount = 0;
+
+                    while (cursor < patternLength) {
+                        end = cursor;
+                        ch = read();
+
+                        if (backslashCount > 0 && ch == 'E') break;
+
+                        if (ch != '\\') {
+                            backslashCount = 0;
+                            continue;
+                        }
+
+                        backslashCount++;
+
+                        if (cursor == patternLength)
+                            throw error("Unterminated \\Q");
+                    }
+
+                    if (cursor == patternLength && end != cursor - 2)
+                        throw error("Unterminated \\Q");
+
+                    if (!inclass) {
+                        addText(TEXT_QUOTE_END);
+                        addRangeReversed(startM2, end - 1);
+                        addText(TEXT_QUOTE_START);
+                    }
+                }
+                return -1;
+
+            case 'k':
+                if (inclass) break;
+
+                if (read() != '<')
+                    throw error("\\k is not followed by '<' for named capturing group");
+
+                int nameStart = cursor;
+                int nameEnd = groupName(nameStart);
+                int namedGroup = getGroupNameIndex(nameStart, nameEnd);
+
+                if (namedGroup == -1)
+                    throw error("(named capturing group <" + pattern.substring(nameStart, nameEnd) + "> does not exit");
+
+                if (create) {
+                    int startSequence = sequenceIndex;
+                    addRange(startM2, cursor);
+                    addNamedBackReference(namedGroup, startSequence);
+                }
+                return -1;
+
+            case 'C':
+            case 'E':
+            case 'F':
+            case 'H':
+            case 'I':
+            case 'J':
+            case 'K':
+            case 'L':
+            case 'M':
+            case 'N':
+            case 'O':
+            case 'P':
+            case 'R':
+            case 'T':
+            case 'U':
+            case 'V':
+            case 'X':
+            case 'Y':
+            case 'g':
+            case 'h':
+            case 'i':
+            case 'j':
+            case 'l':
+            case 'm':
+            case 'o':
+            case 'p':
+            case 'q':
+            case 'y':
+                break;
+
+            case 'a':
+                return '\007';
+            case 'c':
+                return c();
+            case 'e':
+                return '\033';
+            case 'f':
+                return '\f';
+            case 'n':
+                return '\n';
+            case 'r':
+                return '\r';
+            case 't':
+                return '\t';
+            case 'u':
+                return u();
+            case 'x':
+                return x();
+            default:
+                return ch;
+        }
+        throw error("Illegal/unsupported escape sequence");
+    }
+
+    private int uxxxx() {
+        int n = 0;
+        for (int i = 0; i < 4; i++) {
+            int ch = read();
+            if (!isHexDigit(ch)) {
+                throw error("Illegal Unicode escape sequence");
+            }
+            n = n * 16 + toDigit(ch);
+        }
+        return n;
+    }
+
+    private int u() {
+        int n = uxxxx();
+        if (Character.isHighSurrogate((char) n)) {
+            int cur = cursor;
+            if (read() == '\\' && read() == 'u') {
+                int n2 = uxxxx();
+                if (Character.isLowSurrogate((char) n2))
+                    return Character.toCodePoint((char) n, (char) n2);
+            }
+            cursor = cur;
+        }
+        return n;
+    }
+}
@@ -0,0 +1,308 @@
+package com.vladsch.ReverseRegEx.util;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32;
+
+/**
+ * Persistent store of reversed patterns for fast warm starts
+ * <p>
+ * Keeps (original pattern, flags) to reversed patterns encoded by {@link PatternCodec} in a binary file
+ * which is read into memory on {@link #open(Path)}. Only the keys are indexed when opening, an entry is decoded
+ * the first time it is requested with {@link #compile(String, int)}, patterns not in the file are reversed
+ * and added to the store, {@link #save()} writes the file back if anything was added.
+ * <p>
+ * The file is not memory-mapped, a mapping would keep it open until garbage collected and on Windows would
+ * prevent {@link #save()} from replacing it.
+ * <p>
+ * The file is validated by its magic number, format version, reversal version and CRC32 of its entries.
+ * The reversal version changes when the parser reverses patterns differently so a file written by an earlier
+ * library is not used. Entries are in the format of {@link PatternCodec}, which has its own version.
+ * A file which fails validation is treated as stale, it is ignored and rebuilt on the next save.
+ * <p>
+ * File layout, big-endian:
+ * <pre>
+ * int    magic
+ * int    format version
+ * int    reversal version
+ * int    entry count
+ * int    entry bytes length
+ * int    CRC32 of entry bytes
+ * entries:
+ *   int    entry length, not including this int
+ *   int    flags
+ *   reversed pattern encoded by {@link PatternCodec}
+ * </pre>
+ */
+public final class ReversePatternStore {
+    static final int MAGIC = 0x52525853; // RRXS
+    static final int FORMAT_VERSION = 3;
+
+    private static final int HEADER_SIZE = 4 + 4 + 4 + 4 + 4 + 4;
+
+    private final Path myPath;
+    private final ConcurrentHashMap<PatternKey, ReversePattern> myPatterns;
+    private final ConcurrentHashMap<PatternKey, ReversePattern> myAdded;
+    private volatile Index myIndex;
+    private volatile boolean myStale;
+
+    /**
+     * File contents and offsets of its entries, replaced as a unit when the file is saved
+     */
+    private static final class Index {
+        static final Index EMPTY = new Index(null, new HashMap<>());
+
+        final byte[] contents;
+        // offset of encoded pattern of each entry
+        final Map<PatternKey, Integer> entryOffsets;
+
+        Index(final byte[] contents, final Map<PatternKey, Integer> entryOffsets) {
+            this.contents = contents;
+            this.entryOffsets = entryOffsets;
+        }
+    }
+
+    private ReversePatternStore(final Path path) {
+        myPath = path;
+        myPatterns = new ConcurrentHashMap<>();
+        myAdded = new ConcurrentHashMap<>();
+        myIndex = Index.EMPTY;
+        myStale = false;
+    }
+
+    /**
+     * Open the store backed by the given file, a missing or invalid file results in an empty store
+     *
+     * @param path store file
+     *
+     * @return pattern store
+     *
+     * @throws IOException if the file exists but cannot be read
+     */
+    public static ReversePatternStore open(final Path path) throws IOException {
+        ReversePatternStore store = new ReversePatternStore(path);
+        store.load();
+        return store;
+    }
+
+    private void load() throws IOException {
+        if (!Files.exists(myPath)) {
+            myIndex = Index.EMPTY;
+            return;
+        }
+
+        byte[] contents = Files.readAllBytes(myPath);
+
+        Map<PatternKey, Integer> entryOffsets = readIndex(contents);
+        if (entryOffsets == null) {
+            myIndex = Index.EMPTY;
+            myStale = true;
+        } else {
+            myIndex = new Index(contents, entryOffsets);
+        }
+    }
+
+    /**
+     * Get the reversed pattern from the store or reverse it and add it to the store
+     *
+     * @param p pattern
+     * @param f flags
+     *
+     * @return reversed pattern
+     */
+    public ReversePattern compile(final String p, final int f) {
+        PatternKey key = new PatternKey(p, f);
+        ReversePattern regEx = myPatterns.get(key);
+        if (regEx != null) return regEx;
+
+        Index index = myIndex;
+        Integer offset = index.entryOffsets.get(key);
+        if (offset != null) {
+            regEx = readEntry(index.contents, offset);
+        } else {
+            regEx = ReversePattern.compile(p, f);
+            myAdded.putIfAbsent(key, regEx);
+        }
+
+        ReversePattern existing = myPatterns.putIfAbsent(key, regEx);
+        return existing != null ? existing : regEx;
+    }
+
+    public ReversePattern compile(final String p) {
+        return compile(p, 0);
+    }
+
+    /**
+     * @return true if the file did not pass validation and was ignored
+     */
+    public boolean isStale() {
+        return myStale;
+    }
+
+    /**
+     * @return true if the file needs to be written because it was stale or new patterns were added
+     */
+    public boolean isModified() {
+        return myStale || !myAdded.isEmpty();
+    }
+
+    /**
+     * @return number of patterns in the store
+     */
+    public int size() {
+        Index index = myIndex;
+        int size = index.entryOffsets.size();
+        for (PatternKey key : myAdded.keySet()) {
+            if (!index.entryOffsets.containsKey(key)) size++;
+        }
+        return size;
+    }
+
+    public Path getPath() {
+        return myPath;
+    }
+
+    /**
+     * Write the store file if it is modified, entries loaded from the existing file are copied without decoding
+     * <p>
+     * The file is written to a temporary file and moved into place so a concurrent reader never sees a partial file.
+     * If the file system does not support an atomic move the temporary file is moved with a plain replace.
+     *
+     * @throws IOException if the file cannot be written
+     */
+    public synchronized void save() throws IOException {
+        if (!isModified()) return;
+
+        ByteArrayOutputStream entryBytes = new ByteArrayOutputStream();
+        DataOutputStream entries = new DataOutputStream(entryBytes);
+        int count = 0;
+
+        Index index = myIndex;
+        if (index.contents != null) {
+            ByteBuffer buffer = ByteBuffer.wrap(index.contents);
+            entries.write(index.contents, HEADER_SIZE, buffer.getInt(HEADER_SIZE - 8));
+            count = index.entryOffsets.size();
+        }
+
+        // snapshot, patterns added while saving will be written on the next save
+        Map<PatternKey, ReversePattern> added = new LinkedHashMap<>(myAdded);
+        for (Map.Entry<PatternKey, ReversePattern> entry : added.entrySet()) {
+            if (index.entryOffsets.containsKey(entry.getKey())) continue;
+            writeEntry(entries, entry.getKey(), entry.getValue());
+            count++;
+        }
+        entries.flush();
+
+        byte[] bytes = entryBytes.toByteArray();
+        CRC32 crc32 = new CRC32();
+        crc32.update(bytes);
+
+        Path parent = myPath.toAbsolutePath().getParent();
+        if (parent != null) Files.createDirectories(parent);
+        Path tmp = Files.createTempFile(parent, myPath.getFileName().toString(), ".tmp");
+
+        try {
+            try (OutputStream stream = new BufferedOutputStream(Files.newOutputStream(tmp))) {
+                DataOutputStream out = new DataOutputStream(stream);
+                out.writeInt(MAGIC);
+                out.writeInt(FORMAT_VERSION);
+                out.writeInt(ReversePatternParser.REVERSAL_VERSION);
+                out.writeInt(count);
+                out.writeInt(bytes.length);
+                out.writeInt((int) crc32.getValue());
+                out.write(bytes);
+                out.flush();
+            }
+            try {
+                Files.move(tmp, myPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmp, myPath, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+
+        myStale = false;
+        load();
+
+        for (PatternKey key : added.keySet()) {
+            myAdded.remove(key);
+        }
+    }
+
+    /**
+     * Validate the header and checksum and collect entry offsets by key
+     *
+     * @param contents file contents
+     *
+     * @return map of key to entry offset or null if the file is not valid for this library
+     */
+    private static Map<PatternKey, Integer> readIndex(final byte[] contents) {
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(contents);
+            if (buffer.getInt() != MAGIC) return null;
+            if (buffer.getInt() != FORMAT_VERSION) return null;
+            if (buffer.getInt() != ReversePatternParser.REVERSAL_VERSION) return null;
+
+            int count = buffer.getInt();
+            int length = buffer.getInt();
+            int crc = buffer.getInt();
+            int start = buffer.position();
+            if (count < 0 || length < 0 || length != buffer.limit() - start) return null;
+
+            CRC32 crc32 = new CRC32();
+            crc32.update(contents, start, length);
+            if ((int) crc32.getValue() != crc) return null;
+
+            HashMap<PatternKey, Integer> offsets = new HashMap<>(Math.min(count, length / 8) * 4 / 3 + 1);
+            for (int i = 0; i < count; i++) {
+                int entryLength = buffer.getInt();
+                if (entryLength < 4 || entryLength > buffer.remaining()) return null;
+                int entryEnd = buffer.position() + entryLength;
+                int flags = buffer.getInt();
+                int offset = buffer.position();
+                String pattern = PatternCodec.readPattern(entryInput(contents, offset, entryEnd));
+                offsets.put(new PatternKey(pattern, flags), offset);
+                buffer.position(entryEnd);
+            }
+            return buffer.position() == buffer.limit() ? offsets : null;
+        } catch (IOException | BufferUnderflowException | IllegalArgumentException | IndexOutOfBoundsException e) {
+            return null;
+        }
+    }
+
+    private static DataInputStream entryInput(final byte[] contents, final int offset, final int end) {
+        return new DataInputStream(new ByteArrayInputStream(contents, offset, end - offset));
+    }
+
+    private static ReversePattern readEntry(final byte[] contents, final int offset) {
+        try {
+            return PatternCodec.readReversePattern(entryInput(contents, offset, contents.length));
+        } catch (IOException e) {
+            // entries are validated by CRC32 when loading, only a file written by a faulty encoder gets here
+            throw new IllegalStateException("Invalid pattern store entry at " + offset, e);
+        }
+    }
+
+    private static void writeEntry(final DataOutputStream out, final PatternKey key, final ReversePattern regEx) throws IOException {
+        byte[] bytes = PatternCodec.toBytes(regEx);
+        out.writeInt(4 + bytes.length);
+        out.writeInt(key.getFlags());
+        out.write(bytes);
+    }
+}
@@ -0,0 +1,27 @@
+package com.vladsch.ReverseRegEx.util;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a compile time constant String regex to be reversed at build time by the reverse-regex-processor
+ * <p>
+ * For each class with annotated constants the processor generates a ClassName_ReverseRegex class with a
+ * {@link ReversePattern} constant per annotated field, created with {@link ReversePattern#precompiled} so
+ * no pattern parsing is done at runtime.
+ */
+@Retention(RetentionPolicy.SOURCE)
+@Target(ElementType.FIELD)
+public @interface ReverseRegex {
+    /**
+     * @return pattern flags, same as for {@link ReversePattern#compile(String, int)}
+     */
+    int flags() default 0;
+
+    /**
+     * @return name of the generated ReversePattern constant, defaults to the annotated field's name
+     */
+    String name() default "";
+}
@@ -0,0 +1,72 @@
+package com.vladsch.ReverseRegEx.util;
+
+import java.nio.CharBuffer;
+import java.util.Objects;
+
+/**
+ * Reversed chars of a char[] or a heap CharBuffer
+ * <p>
+ * Indices are those of the reversed CharSequence, the array index of char at index i is i + offset.
+ */
+final class ReversedCharArraySequence extends ReversedCharSequence {
+    private final CharSequence myChars;
+    private final char[] myArray;
+    private final int myOffset;
+    private final int myLength;
+
+    /**
+     * @param chars  sequence of the array chars or null for the array itself
+     * @param array  chars
+     * @param offset array index of chars index 0
+     * @param length length of chars
+     * @param start  start index in chars
+     * @param end    end index in chars
+     */
+    ReversedCharArraySequence(final CharSequence chars, final char[] array, final int offset, final int length, final int start, final int end) {
+        super(length, start, end);
+        myChars = chars;
+        myArray = array;
+        myOffset = offset;
+        myLength = length;
+    }
+
+    @Override
+    ReversedCharSequence create(final int start, final int end) {
+        return new ReversedCharArraySequence(myChars, myArray, myOffset, myLength, start, end);
+    }
+
+    @Override
+    public CharSequence getReversedChars() {
+        return myChars != null ? myChars : CharBuffer.wrap(myArray, myOffset, myLength).slice();
+    }
+
+    @Override
+    char reversedCharAt(final int i) {
+        return myArray[myOffset + i];
+    }
+
+    @Override
+    public char charAt(final int index) {
+        final int i = myEndIndex - 1 - Objects.checkIndex(index, myEndIndex - myStartIndex);
+        final char c = myArray[myOffset + i];
+        return Character.isSurrogate(c) ? pairedChar(i, c) : c;
+    }
+
+    @Override
+    public void getChars(final int srcBegin, final int srcEnd, final char[] dst, int dstBegin) {
+        Objects.checkFromToIndex(srcBegin, srcEnd, myEndIndex - myStartIndex);
+        Objects.checkFromIndexSize(dstBegin, srcEnd - srcBegin, dst.length);
+        final char[] array = myArray;
+        final int offset = myOffset;
+        for (int i = myEndIndex - 1 - srcBegin, iMin = myEndIndex - srcEnd; i >= iMin; i--) {
+            final char c = array[offset + i];
+            dst[dstBegin++] = Character.isSurrogate(c) ? pairedChar(i, c) : c;
+        }
+    }
+
+    @Override
+    String reversedString(final int start, final int end) {
+        Objects.checkFromToIndex(start, end, myEndIndex - myStartIndex);
+        return new String(myArray, myOffset + myEndIndex - end, end - start);
+    }
+}
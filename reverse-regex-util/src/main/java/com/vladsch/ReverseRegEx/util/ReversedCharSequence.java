@@ -1,42 +1,89 @@
 package com.vladsch.ReverseRegEx.util;
 
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Objects;
+
 /**
  * CharSequence that is the reverse of the given sequence
  * <p>
  * The hashCode is purposefully matched to the string equivalent or this.toString().hashCode()
+ * <p>
+ * {@link #of} returns a final implementation specialized for String, char[] and heap CharBuffer inputs
+ * which read chars directly, other CharSequence inputs are accessed through the CharSequence interface.
+ * {@link #ofLatin1} reverses ISO-8859-1 or ASCII bytes of a ByteBuffer in place and {@link #ofUtf8} decodes UTF-8 bytes
+ * of a ByteBuffer when accessed. {@link #ofSegments} and {@link #ofGapBuffer} reverse the chars of document models
+ * in place without joining them.
+ * <p>
+ * All implementations reverse code points instead of chars, the same as {@link StringBuilder#reverse()}, so surrogate
+ * pairs stay in order as {@link ReversePattern} keeps them in reversed patterns. A char which is not a surrogate is
+ * mapped as a char, a surrogate checks its neighbour for its pair so there is no index to build and BMP-only input
+ * only pays for one range check per char. Unpaired surrogates, including halves of a pair split by the range of the
+ * sequence, are reversed as single chars. Boundary indices map the same as for chars, {@link #mapIndex(int)} of a char
+ * in a surrogate pair is the index of the char it was read from.
  */
-public class ReversedCharSequence extends ReverseIndexMapperBase implements ReverseCharSequence {
-    private final CharSequence myChars;
-    private final int myStartIndex;
-    private final int myEndIndex;
+public abstract class ReversedCharSequence extends ReverseIndexMapperBase implements ReverseCharSequence {
+    final int myStartIndex;
+    final int myEndIndex;
     private int myHash;
-    private IndexMapper myMapper;
 
-    @Override
-    public CharSequence getReversedChars() {
-        return myChars;
+    ReversedCharSequence(final int length, final int start, final int end) {
+        if (start < 0 || end > length || start > end)
+            throw new IndexOutOfBoundsException("[" + start + "," + end + ") not in [0," + length + ")");
+        myStartIndex = start;
+        myEndIndex = end;
     }
 
-    public int getStartIndex() {
-        return myStartIndex;
-    }
+    /**
+     * @param start start index in reversed chars
+     * @param end   end index in reversed chars
+     *
+     * @return reversed sequence of the same chars
+     */
+    abstract ReversedCharSequence create(int start, int end);
 
-    @SuppressWarnings("WeakerAccess")
-    private ReversedCharSequence(CharSequence chars, int start, int end) {
-        if (start < 0 || end > chars.length() || start > end)
-            throw new IndexOutOfBoundsException("[" + start + "," + end + ") not in [0," + length() + ")");
-        myChars = chars;
-        myStartIndex = start;
-        myEndIndex = end;
-        myMapper = null;
+    /**
+     * @param i index in reversed chars, in [getStartIndex(), getEndIndex())
+     *
+     * @return char at index i of the reversed chars
+     */
+    abstract char reversedCharAt(int i);
+
+    /**
+     * @param i index in reversed chars of c
+     * @param c surrogate at index i of the reversed chars
+     *
+     * @return char at the reversed position of c, the other char of its surrogate pair in the range
+     */
+    final char pairedChar(final int i, final char c) {
+        if (Character.isLowSurrogate(c)) {
+            if (i > myStartIndex) {
+                final char high = reversedCharAt(i - 1);
+                if (Character.isHighSurrogate(high)) return high;
+            }
+        } else if (i + 1 < myEndIndex) {
+            final char low = reversedCharAt(i + 1);
+            if (Character.isLowSurrogate(low)) return low;
+        }
+        return c;
     }
 
     @Override
-    public IndexMapper getIndexMapper() {
-        if (myMapper == null) {
-            myMapper = new ReverseIndexMapper(myEndIndex);
+    public int mapIndex(final int index) {
+        final int i = myEndIndex - 1 - Objects.checkIndex(index, myEndIndex - myStartIndex);
+        final char c = reversedCharAt(i);
+        if (Character.isLowSurrogate(c)) {
+            if (i > myStartIndex && Character.isHighSurrogate(reversedCharAt(i - 1))) return i - 1;
+        } else if (Character.isHighSurrogate(c) && i + 1 < myEndIndex && Character.isLowSurrogate(reversedCharAt(i + 1))) {
+            return i + 1;
         }
-        return myMapper;
+        return i;
+    }
+
+    public int getStartIndex() {
+        return myStartIndex;
     }
 
     @Override
@@ -49,27 +96,96 @@ public class ReversedCharSequence extends ReverseIndexMapperBase implements Reve
         return myEndIndex - myStartIndex;
     }
 
-    @Override
-    public char charAt(int index) {
-        if (index < 0 || index >= length()) throw new IndexOutOfBoundsException("" + index + " not in [0," + length() + ")");
-        return myChars.charAt(mapIndex(index));
-    }
-
     @Override
     public ReversedCharSequence subSequence(int start, int end) {
         if (start < 0 || end > length())
             throw new IndexOutOfBoundsException("[" + start + ", " + end + ") not in [0," + length() + "]");
         final int startIndex = mapBoundary(end);
         final int endIndex = startIndex + end - start;
-        return startIndex == myStartIndex && endIndex == myEndIndex ? this : new ReversedCharSequence(myChars, startIndex, endIndex);
+        return startIndex == myStartIndex && endIndex == myEndIndex ? this : create(startIndex, endIndex);
     }
 
     @Override
     public String toString() {
-        //noinspection StringBufferReplaceableByString
-        StringBuilder sb = new StringBuilder(length());
-        sb.append(this);
-        return sb.toString();
+        char[] chars = new char[length()];
+        getChars(0, chars.length, chars, 0);
+        return new String(chars);
+    }
+
+    /**
+     * @param start start index of chars in this sequence
+     * @param end   end index of chars in this sequence
+     *
+     * @return string of chars in reverse order, the chars of the reversed chars at [mapBoundary(end), mapBoundary(start))
+     */
+    String reversedString(final int start, final int end) {
+        Objects.checkFromToIndex(start, end, myEndIndex - myStartIndex);
+        char[] chars = new char[end - start];
+        for (int i = myEndIndex - end, j = 0; j < chars.length; i++, j++) {
+            chars[j] = reversedCharAt(i);
+        }
+        return new String(chars);
+    }
+
+    /**
+     * Reverse code points of chars in place, as {@link StringBuilder#reverse()}
+     */
+    static void reverse(final char[] chars, final int start, final int end) {
+        for (int i = start, j = end - 1; i < j; i++, j--) {
+            char c = chars[i];
+            chars[i] = chars[j];
+            chars[j] = c;
+        }
+
+        // surrogate pairs are now low, high
+        for (int i = start; i < end - 1; i++) {
+            if (Character.isLowSurrogate(chars[i]) && Character.isHighSurrogate(chars[i + 1])) {
+                char c = chars[i];
+                chars[i] = chars[i + 1];
+                chars[++i] = c;
+            }
+        }
+    }
+
+    /**
+     * Same as {@link #pairedChar(int, char)} for reversed chars given as a CharSequence
+     *
+     * @param chars reversed chars
+     * @param start start of range in chars
+     * @param end   end of range in chars
+     * @param i     index in chars of the char at the reversed position
+     *
+     * @return char at the reversed position, the other char of a surrogate pair in the range
+     */
+    static char pairedChar(final CharSequence chars, final int start, final int end, final int i) {
+        final char c = chars.charAt(i);
+        if (Character.isSurrogate(c)) {
+            if (Character.isLowSurrogate(c)) {
+                if (i > start) {
+                    final char high = chars.charAt(i - 1);
+                    if (Character.isHighSurrogate(high)) return high;
+                }
+            } else if (i + 1 < end) {
+                final char low = chars.charAt(i + 1);
+                if (Character.isLowSurrogate(low)) return low;
+            }
+        }
+        return c;
+    }
+
+    /**
+     * @return index in chars of the char at the reversed position of char index i, see {@link #pairedChar(CharSequence, int, int, int)}
+     */
+    static int pairedIndex(final CharSequence chars, final int start, final int end, final int i) {
+        final char c = chars.charAt(i);
+        if (Character.isSurrogate(c)) {
+            if (Character.isLowSurrogate(c)) {
+                if (i > start && Character.isHighSurrogate(chars.charAt(i - 1))) return i - 1;
+            } else if (i + 1 < end && Character.isLowSurrogate(chars.charAt(i + 1))) {
+                return i + 1;
+            }
+        }
+        return i;
     }
 
     @Override
@@ -100,8 +216,9 @@ public class ReversedCharSequence extends ReverseIndexMapperBase implements Reve
     public int hashCode() {
         int h = myHash;
         if (h == 0 && length() > 0) {
-            for (int i = myEndIndex; i-- > myStartIndex; ) {
-                h = 31 * h + myChars.charAt(i);
+            int iMax = length();
+            for (int i = 0; i < iMax; i++) {
+                h = 31 * h + charAt(i);
             }
             myHash = h;
         }
@@ -116,15 +233,122 @@ public class ReversedCharSequence extends ReverseIndexMapperBase implements Reve
         return of(chars, start, chars.length());
     }
 
+    /**
+     * @param chars chars to reverse, a heap CharBuffer is reversed from its position and limit at the time of the call
+     * @param start start index in chars
+     * @param end   end index in chars
+     *
+     * @return reversed chars
+     */
     public static ReversedCharSequence of(final CharSequence chars, final int start, final int end) {
+        if (chars instanceof String) {
+            return new ReversedStringSequence((String) chars, start, end);
+        }
+
+        if (chars instanceof CharBuffer) {
+            final CharBuffer buffer = (CharBuffer) chars;
+            if (buffer.hasArray()) {
+                return new ReversedCharArraySequence(buffer, buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining(), start, end);
+            }
+        }
+
         if (chars instanceof ReversedCharSequence) {
             final ReversedCharSequence reversedChars = (ReversedCharSequence) chars;
-            if (reversedChars.myChars instanceof ReversedCharSequence) {
+            if (reversedChars.getReversedChars() instanceof ReversedCharSequence) {
                 final int startIndex = reversedChars.mapBoundary(end);
                 final int endIndex = startIndex + end - start;
-                return startIndex == 0 && endIndex == chars.length() ? (ReversedCharSequence) reversedChars.myChars : ((ReversedCharSequence) reversedChars.myChars).subSequence(startIndex, endIndex);
+                return startIndex == 0 && endIndex == chars.length() ? (ReversedCharSequence) reversedChars.getReversedChars() : ((ReversedCharSequence) reversedChars.getReversedChars()).subSequence(startIndex, endIndex);
             }
         }
-        return new ReversedCharSequence(chars, start, end);
+        return new ReversedWrappedSequence(chars, start, end);
+    }
+
+    public static ReversedCharSequence of(final char[] chars) {
+        return of(chars, 0, chars.length);
+    }
+
+    public static ReversedCharSequence of(final char[] chars, final int start, final int end) {
+        return new ReversedCharArraySequence(null, chars, 0, chars.length, start, end);
+    }
+
+    public static ReversedCharSequence ofLatin1(final ByteBuffer bytes) {
+        return ofLatin1(bytes, 0, bytes.remaining());
+    }
+
+    /**
+     * Reverse ISO-8859-1 bytes without decoding them, each byte is mapped to a char when accessed
+     * <p>
+     * The buffer can be direct or a MappedByteBuffer of a file, indices are relative to its position at the time of
+     * the call so for a file mapped from position 0 they are file positions. Later changes to the buffer's position
+     * and limit do not affect the sequence.
+     * <p>
+     * Indices are int so one sequence is limited to the 2GB of a single ByteBuffer. A larger file has to be mapped
+     * in parts with offsets adjusted by the caller, or searched with {@link ReverseChannelSearch} which reads it
+     * backward in blocks with long offsets.
+     *
+     * @param bytes bytes to reverse, from position to limit
+     * @param start start index in bytes
+     * @param end   end index in bytes
+     *
+     * @return reversed chars
+     */
+    public static ReversedCharSequence ofLatin1(final ByteBuffer bytes, final int start, final int end) {
+        return new ReversedLatin1Sequence(bytes.slice(), start, end);
+    }
+
+    public static ReversedUtf8Sequence ofUtf8(final ByteBuffer bytes) {
+        return ofUtf8(bytes, ReversedUtf8Sequence.DEFAULT_CHECKPOINT_INTERVAL);
+    }
+
+    /**
+     * Reverse UTF-8 bytes without decoding them into a String, see {@link ReversedUtf8Sequence}
+     * <p>
+     * The buffer can be direct or a MappedByteBuffer of a file, byte offsets are relative to its position at the time
+     * of the call. Later changes to the buffer's position and limit do not affect the sequence.
+     *
+     * @param bytes    bytes to reverse, from position to limit
+     * @param interval chars between checkpoints of byte offsets, at least 2, smaller is faster random access and
+     *                 uses 4 bytes per checkpoint
+     *
+     * @return reversed chars
+     */
+    public static ReversedUtf8Sequence ofUtf8(final ByteBuffer bytes, final int interval) {
+        return ReversedUtf8Sequence.of(bytes.slice(), interval);
+    }
+
+    public static ReversedCharSequence ofSegments(final CharSequence... segments) {
+        return ofSegments(Arrays.asList(segments));
+    }
+
+    /**
+     * Reverse the concatenation of segments without copying them, for example the lines or pieces of a document
+     * <p>
+     * Indices are those of the concatenated segments. The segments are kept by reference, their lengths are taken at
+     * the time of the call and must not change while the sequence is used.
+     *
+     * @param segments segments in order
+     *
+     * @return reversed chars
+     */
+    public static ReversedCharSequence ofSegments(final Collection<? extends CharSequence> segments) {
+        return segments.size() == 1 ? of(segments.iterator().next()) : ReversedSegmentedSequence.of(segments);
+    }
+
+    /**
+     * Reverse the chars of a gap buffer without copying them
+     * <p>
+     * Indices are those of the chars without the gap. The gap is taken at the time of the call, after it moves a new
+     * sequence is needed.
+     *
+     * @param buffer   chars with gap
+     * @param gapStart start of gap
+     * @param gapEnd   end of gap
+     *
+     * @return reversed chars
+     */
+    public static ReversedCharSequence ofGapBuffer(final char[] buffer, final int gapStart, final int gapEnd) {
+        Objects.checkFromToIndex(gapStart, gapEnd, buffer.length);
+        if (gapStart == gapEnd) return of(buffer);
+        return new ReversedGapBufferSequence(buffer, gapStart, gapEnd - gapStart, 0, buffer.length - (gapEnd - gapStart));
     }
 }
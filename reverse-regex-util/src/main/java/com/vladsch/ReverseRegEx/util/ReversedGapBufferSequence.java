@@ -0,0 +1,81 @@
+package com.vladsch.ReverseRegEx.util;
+
+import java.util.Objects;
+
+/**
+ * Reversed chars of a gap buffer, the chars of a char[] before and after the gap
+ * <p>
+ * Indices are those of the chars without the gap. The gap is taken when the sequence is created, moving it or
+ * changing the chars before it requires a new sequence.
+ */
+final class ReversedGapBufferSequence extends ReversedCharSequence {
+    private final char[] myBuffer;
+    private final int myGapStart;
+    private final int myGapLength;
+
+    ReversedGapBufferSequence(final char[] buffer, final int gapStart, final int gapLength, final int start, final int end) {
+        super(buffer.length - gapLength, start, end);
+        myBuffer = buffer;
+        myGapStart = gapStart;
+        myGapLength = gapLength;
+    }
+
+    @Override
+    ReversedCharSequence create(final int start, final int end) {
+        return new ReversedGapBufferSequence(myBuffer, myGapStart, myGapLength, start, end);
+    }
+
+    @Override
+    public CharSequence getReversedChars() {
+        final int length = myBuffer.length - myGapLength;
+        return new ReversedWrappedSequence(create(0, length), 0, length);
+    }
+
+    @Override
+    char reversedCharAt(final int i) {
+        return myBuffer[i < myGapStart ? i : i + myGapLength];
+    }
+
+    @Override
+    public char charAt(final int index) {
+        final int i = myEndIndex - 1 - Objects.checkIndex(index, myEndIndex - myStartIndex);
+        final char c = myBuffer[i < myGapStart ? i : i + myGapLength];
+        return Character.isSurrogate(c) ? pairedChar(i, c) : c;
+    }
+
+    @Override
+    public void getChars(final int srcBegin, final int srcEnd, final char[] dst, int dstBegin) {
+        Objects.checkFromToIndex(srcBegin, srcEnd, myEndIndex - myStartIndex);
+        Objects.checkFromIndexSize(dstBegin, srcEnd - srcBegin, dst.length);
+
+        final char[] buffer = myBuffer;
+        final int iMin = myEndIndex - srcEnd;
+        int i = myEndIndex - 1 - srcBegin;
+
+        // after the gap
+        for (final int iGap = Math.max(iMin, myGapStart); i >= iGap; i--) {
+            final char c = buffer[i + myGapLength];
+            dst[dstBegin++] = Character.isSurrogate(c) ? pairedChar(i, c) : c;
+        }
+
+        // before the gap
+        for (; i >= iMin; i--) {
+            final char c = buffer[i];
+            dst[dstBegin++] = Character.isSurrogate(c) ? pairedChar(i, c) : c;
+        }
+    }
+
+    @Override
+    String reversedString(final int start, final int end) {
+        Objects.checkFromToIndex(start, end, myEndIndex - myStartIndex);
+        final int iMin = myEndIndex - end;
+        final int iMax = myEndIndex - start;
+        if (iMax <= myGapStart) return new String(myBuffer, iMin, iMax - iMin);
+        if (iMin >= myGapStart) return new String(myBuffer, iMin + myGapLength, iMax - iMin);
+
+        char[] chars = new char[iMax - iMin];
+        System.arraycopy(myBuffer, iMin, chars, 0, myGapStart - iMin);
+        System.arraycopy(myBuffer, myGapStart + myGapLength, chars, myGapStart - iMin, iMax - myGapStart);
+        return new String(chars);
+    }
+}
@@ -0,0 +1,104 @@
+package com.vladsch.ReverseRegEx.util;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Objects;
+
+/**
+ * Reversed chars of ISO-8859-1 bytes in a ByteBuffer, each byte is one char
+ * <p>
+ * The bytes are read in place with absolute gets so direct and memory-mapped buffers are not copied.
+ * Indices are those of the buffer relative to its position when the sequence was created.
+ */
+final class ReversedLatin1Sequence extends ReversedCharSequence {
+    private final ByteBuffer myBytes;
+
+    /**
+     * @param bytes bytes from index 0, not modified
+     * @param start start index in bytes
+     * @param end   end index in bytes
+     */
+    ReversedLatin1Sequence(final ByteBuffer bytes, final int start, final int end) {
+        super(bytes.limit(), start, end);
+        myBytes = bytes;
+    }
+
+    @Override
+    ReversedCharSequence create(final int start, final int end) {
+        return new ReversedLatin1Sequence(myBytes, start, end);
+    }
+
+    @Override
+    public CharSequence getReversedChars() {
+        return new Latin1Chars(myBytes, 0, myBytes.limit());
+    }
+
+    @Override
+    char reversedCharAt(final int i) {
+        return (char) (myBytes.get(i) & 0xFF);
+    }
+
+    // ISO-8859-1 has no surrogates
+    @Override
+    public char charAt(final int index) {
+        return (char) (myBytes.get(myEndIndex - 1 - Objects.checkIndex(index, myEndIndex - myStartIndex)) & 0xFF);
+    }
+
+    @Override
+    public void getChars(final int srcBegin, final int srcEnd, final char[] dst, int dstBegin) {
+        Objects.checkFromToIndex(srcBegin, srcEnd, myEndIndex - myStartIndex);
+        Objects.checkFromIndexSize(dstBegin, srcEnd - srcBegin, dst.length);
+        final ByteBuffer bytes = myBytes;
+        for (int i = myEndIndex - 1 - srcBegin, iMin = myEndIndex - srcEnd; i >= iMin; i--) {
+            dst[dstBegin++] = (char) (bytes.get(i) & 0xFF);
+        }
+    }
+
+    @Override
+    String reversedString(final int start, final int end) {
+        Objects.checkFromToIndex(start, end, myEndIndex - myStartIndex);
+        return latin1String(myBytes, myEndIndex - end, myEndIndex - start);
+    }
+
+    static String latin1String(final ByteBuffer bytes, final int start, final int end) {
+        byte[] chars = new byte[end - start];
+        bytes.duplicate().position(start).get(chars);
+        return new String(chars, StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * Forward chars of ISO-8859-1 bytes
+     */
+    private static final class Latin1Chars implements CharSequence {
+        private final ByteBuffer myBytes;
+        private final int myStart;
+        private final int myEnd;
+
+        Latin1Chars(final ByteBuffer bytes, final int start, final int end) {
+            myBytes = bytes;
+            myStart = start;
+            myEnd = end;
+        }
+
+        @Override
+        public int length() {
+            return myEnd - myStart;
+        }
+
+        @Override
+        public char charAt(final int index) {
+            return (char) (myBytes.get(myStart + Objects.checkIndex(index, myEnd - myStart)) & 0xFF);
+        }
+
+        @Override
+        public CharSequence subSequence(final int start, final int end) {
+            Objects.checkFromToIndex(start, end, myEnd - myStart);
+            return new Latin1Chars(myBytes, myStart + start, myStart + end);
+        }
+
+        @Override
+        public String toString() {
+            return latin1String(myBytes, myStart, myEnd);
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package com.vladsch.ReverseRegEx.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Objects;
+
+/**
+ * Reversed chars of a list of segments, as if they were concatenated
+ * <p>
+ * The segment of an index is found by binary search of segment start indices. The segment of the last access and
+ * its neighbours are checked first, so sequential access in either direction does not search.
+ * Indices are those of the concatenated segments. Segment lengths are taken when the sequence is created and must
+ * not change while it is used.
+ */
+final class ReversedSegmentedSequence extends ReversedCharSequence {
+    private final Segment[] mySegments;
+    // start index of each segment and the total length at the end
+    private final int[] myStarts;
+    // segment of last access, only a hint so it is not synchronized
+    private Segment myLast;
+
+    private ReversedSegmentedSequence(final Segment[] segments, final int[] starts, final int start, final int end) {
+        super(starts[segments.length], start, end);
+        mySegments = segments;
+        myStarts = starts;
+        myLast = segments[segments.length - 1];
+    }
+
+    /**
+     * @param segments segments, empty segments are skipped
+     *
+     * @return reversed chars of all segments
+     */
+    static ReversedSegmentedSequence of(final Collection<? extends CharSequence> segments) {
+        ArrayList<Segment> nonEmpty = new ArrayList<>(segments.size());
+        int length = 0;
+        for (CharSequence chars : segments) {
+            int segmentLength = chars.length();
+            if (segmentLength > 0) {
+                nonEmpty.add(new Segment(chars, nonEmpty.size(), length, segmentLength));
+                length += segmentLength;
+                if (length < 0) throw new IllegalArgumentException("Total length of segments exceeds " + Integer.MAX_VALUE);
+            }
+        }
+
+        // one empty segment so there is always a last segment
+        if (nonEmpty.isEmpty()) nonEmpty.add(new Segment("", 0, 0, 0));
+
+        Segment[] array = nonEmpty.toArray(new Segment[0]);
+        int[] starts = new int[array.length + 1];
+        for (int i = 0; i < array.length; i++) {
+            starts[i] = array[i].myStart;
+        }
+        starts[array.length] = length;
+        return new ReversedSegmentedSequence(array, starts, 0, length);
+    }
+
+    @Override
+    ReversedCharSequence create(final int start, final int end) {
+        return new ReversedSegmentedSequence(mySegments, myStarts, start, end);
+    }
+
+    @Override
+    public CharSequence getReversedChars() {
+        final int length = myStarts[mySegments.length];
+        return new ReversedWrappedSequence(create(0, length), 0, length);
+    }
+
+    /**
+     * @param i index in concatenated segments, in [0, total length)
+     *
+     * @return segment containing i
+     */
+    private Segment segment(final int i) {
+        Segment segment = myLast;
+        final int j = i - segment.myStart;
+        if (j >= 0 && j < segment.myLength) return segment;
+
+        final int[] starts = myStarts;
+        int s = segment.myIndex;
+        if (j < 0) {
+            s = s > 0 && i >= starts[s - 1] ? s - 1 : search(i);
+        } else {
+            s = s + 2 < starts.length && i < starts[s + 2] ? s + 1 : search(i);
+        }
+
+        segment = mySegments[s];
+        myLast = segment;
+        return segment;
+    }
+
+    private int search(final int i) {
+        final int s = Arrays.binarySearch(myStarts, 0, mySegments.length, i);
+        return s >= 0 ? s : -s - 2;
+    }
+
+    @Override
+    char reversedCharAt(final int i) {
+        final Segment segment = segment(i);
+        return segment.myChars.charAt(i - segment.myStart);
+    }
+
+    @Override
+    public char charAt(final int index) {
+        final int i = myEndIndex - 1 - Objects.checkIndex(index, myEndIndex - myStartIndex);
+        final char c = reversedCharAt(i);
+        return Character.isSurrogate(c) ? pairedChar(i, c) : c;
+    }
+
+    @Override
+    public void getChars(final int srcBegin, final int srcEnd, final char[] dst, int dstBegin) {
+        Objects.checkFromToIndex(srcBegin, srcEnd, myEndIndex - myStartIndex);
+        Objects.checkFromIndexSize(dstBegin, srcEnd - srcBegin, dst.length);
+
+        final int iMin = myEndIndex - srcEnd;
+        int i = myEndIndex - 1 - srcBegin;
+        while (i >= iMin) {
+            final Segment segment = segment(i);
+            final CharSequence chars = segment.myChars;
+            final int segmentStart = segment.myStart;
+            for (int j = i - segmentStart, jMin = Math.max(iMin, segmentStart) - segmentStart; j >= jMin; j--) {
+                final char c = chars.charAt(j);
+                // the other char of a pair can be in the next or previous segment
+                dst[dstBegin++] = Character.isSurrogate(c) ? pairedChar(segmentStart + j, c) : c;
+            }
+            i = segmentStart - 1;
+        }
+    }
+
+    @Override
+    String reversedString(final int start, final int end) {
+        Objects.checkFromToIndex(start, end, myEndIndex - myStartIndex);
+        final int iMax = myEndIndex - start;
+        int i = myEndIndex - end;
+        StringBuilder sb = new StringBuilder(end - start);
+        while (i < iMax) {
+            final Segment segment = segment(i);
+            final int segmentStart = segment.myStart;
+            final int segmentEnd = Math.min(iMax, segmentStart + segment.myLength);
+            sb.append(segment.myChars, i - segmentStart, segmentEnd - segmentStart);
+            i = segmentEnd;
+        }
+        return sb.toString();
+    }
+
+    private static final class Segment {
+        final CharSequence myChars;
+        final int myIndex;
+        final int myStart;
+        final int myLength;
+
+        Segment(final CharSequence chars, final int index, final int start, final int length) {
+            myChars = chars;
+            myIndex = index;
+            myStart = start;
+            myLength = length;
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package com.vladsch.ReverseRegEx.util;
+
+import java.util.Objects;
+
+/**
+ * Reversed chars of a String
+ */
+final class ReversedStringSequence extends ReversedCharSequence {
+    private final String myChars;
+
+    ReversedStringSequence(final String chars, final int start, final int end) {
+        super(chars.length(), start, end);
+        myChars = chars;
+    }
+
+    @Override
+    ReversedCharSequence create(final int start, final int end) {
+        return new ReversedStringSequence(myChars, start, end);
+    }
+
+    @Override
+    public CharSequence getReversedChars() {
+        return myChars;
+    }
+
+    @Override
+    char reversedCharAt(final int i) {
+        return myChars.charAt(i);
+    }
+
+    @Override
+    public char charAt(final int index) {
+        final int i = myEndIndex - 1 - Objects.checkIndex(index, myEndIndex - myStartIndex);
+        final char c = myChars.charAt(i);
+        return Character.isSurrogate(c) ? pairedChar(i, c) : c;
+    }
+
+    @Override
+    public void getChars(final int srcBegin, final int srcEnd, final char[] dst, int dstBegin) {
+        Objects.checkFromToIndex(srcBegin, srcEnd, myEndIndex - myStartIndex);
+        Objects.checkFromIndexSize(dstBegin, srcEnd - srcBegin, dst.length);
+        final String chars = myChars;
+        for (int i = myEndIndex - 1 - srcBegin, iMin = myEndIndex - srcEnd; i >= iMin; i--) {
+            final char c = chars.charAt(i);
+            dst[dstBegin++] = Character.isSurrogate(c) ? pairedChar(i, c) : c;
+        }
+    }
+
+    @Override
+    String reversedString(final int start, final int end) {
+        Objects.checkFromToIndex(start, end, myEndIndex - myStartIndex);
+        return myChars.substring(myEndIndex - end, myEndIndex - start);
+    }
+}
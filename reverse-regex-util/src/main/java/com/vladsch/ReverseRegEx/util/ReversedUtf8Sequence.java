@@ -0,0 +1,287 @@
+package com.vladsch.ReverseRegEx.util;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * Reversed chars of UTF-8 bytes in a ByteBuffer, decoded in place when accessed
+ * <p>
+ * Creating the sequence scans the bytes once to count chars and to record a checkpoint table with the byte offset
+ * of every {@code interval} chars. Chars are decoded from a cursor which steps backward or forward from the last
+ * accessed char, so the sequential access of a reverse search decodes backward one code point at a time, and a
+ * random access steps at most {@code interval} code points from a checkpoint.
+ * <p>
+ * Malformed bytes decode to U+FFFD: a lead byte with too few continuation bytes, a stray continuation byte, an
+ * invalid lead byte and an overlong, surrogate or out of range encoding. Code points above U+FFFF are two chars,
+ * which stay in order when reversed unless the range of the sequence splits them.
+ * <p>
+ * Char indices are those of the decoded forward text, as returned by {@link ReverseMatcher#start()} and
+ * {@link ReverseMatcher#end()}, {@link #getByteOffset(int)} maps them back to buffer positions. The decode cursor
+ * makes a sequence unsafe for concurrent use, like a Matcher it should be used by one thread at a time.
+ * Sub-sequences share the checkpoint table but have their own cursor.
+ */
+public final class ReversedUtf8Sequence extends ReversedCharSequence {
+    public static final int DEFAULT_CHECKPOINT_INTERVAL = 256;
+
+    private static final char REPLACEMENT_CHAR = '\uFFFD';
+
+    private final Utf8Index myIndex;
+
+    // decode cursor: forward index of the first char of a code point and the byte offset of the code point
+    private int myCursorChar;
+    private int myCursorByte;
+
+    ReversedUtf8Sequence(final Utf8Index index, final int start, final int end) {
+        super(index.myCharLength, start, end);
+        myIndex = index;
+        myCursorChar = index.myCharLength;
+        myCursorByte = index.myBytes.limit();
+    }
+
+    /**
+     * @param bytes    UTF-8 bytes from index 0 to limit, not modified
+     * @param interval chars between checkpoints, at least 2
+     *
+     * @return reversed chars of all bytes
+     */
+    static ReversedUtf8Sequence of(final ByteBuffer bytes, final int interval) {
+        if (interval < 2) throw new IllegalArgumentException("Checkpoint interval " + interval + " is less than 2");
+        Utf8Index index = new Utf8Index(bytes, interval);
+        return new ReversedUtf8Sequence(index, 0, index.myCharLength);
+    }
+
+    @Override
+    ReversedCharSequence create(final int start, final int end) {
+        return new ReversedUtf8Sequence(myIndex, start, end);
+    }
+
+    @Override
+    public CharSequence getReversedChars() {
+        return new ReversedWrappedSequence(new ReversedUtf8Sequence(myIndex, 0, myIndex.myCharLength), 0, myIndex.myCharLength);
+    }
+
+    @Override
+    char reversedCharAt(final int i) {
+        seek(i);
+
+        final ByteBuffer bytes = myIndex.myBytes;
+        final int b = myCursorByte;
+        final int lead = bytes.get(b);
+        if (lead >= 0) return (char) lead;
+
+        final int codePoint = decode(bytes, b, length(bytes, b));
+        if (codePoint < Character.MIN_SUPPLEMENTARY_CODE_POINT) return (char) codePoint;
+        return i == myCursorChar ? Character.highSurrogate(codePoint) : Character.lowSurrogate(codePoint);
+    }
+
+    @Override
+    public char charAt(final int index) {
+        final int i = myEndIndex - 1 - Objects.checkIndex(index, myEndIndex - myStartIndex);
+        seek(i);
+
+        final ByteBuffer bytes = myIndex.myBytes;
+        final int b = myCursorByte;
+        final int lead = bytes.get(b);
+        if (lead >= 0) return (char) lead;
+
+        final int codePoint = decode(bytes, b, length(bytes, b));
+        if (codePoint < Character.MIN_SUPPLEMENTARY_CODE_POINT) return (char) codePoint;
+
+        // the high surrogate is at the cursor, the chars of a pair in the range are swapped so it stays in order
+        final boolean high = i == myCursorChar;
+        final boolean paired = high ? i + 1 < myEndIndex : i > myStartIndex;
+        return high != paired ? Character.highSurrogate(codePoint) : Character.lowSurrogate(codePoint);
+    }
+
+    /**
+     * Map a forward char index to its byte offset
+     * <p>
+     * An index between the two chars of a surrogate pair maps to the offset of its code point.
+     *
+     * @param index forward char index in [0, length of all chars]
+     *
+     * @return byte offset of char index relative to the buffer position when the sequence was created
+     */
+    public int getByteOffset(final int index) {
+        if (index == myIndex.myCharLength) return myIndex.myBytes.limit();
+        seek(Objects.checkIndex(index, myIndex.myCharLength));
+        return myCursorByte;
+    }
+
+    /**
+     * @return number of chars in all bytes of the buffer
+     */
+    public int getCharLength() {
+        return myIndex.myCharLength;
+    }
+
+    /**
+     * Move the cursor to the code point containing the char at forward index i
+     *
+     * @param i forward char index
+     */
+    private void seek(final int i) {
+        final ByteBuffer bytes = myIndex.myBytes;
+        final int interval = myIndex.myInterval;
+        int c = myCursorChar;
+        int b = myCursorByte;
+
+        if (i < c && c - i <= interval) {
+            while (c > i) {
+                b = previous(bytes, b);
+                c -= chars(bytes, b, length(bytes, b));
+            }
+        } else if (i < c || i - c >= interval) {
+            final int k = i / interval;
+            final int checkpoint = myIndex.myCheckpoints[k];
+            if (checkpoint >= 0) {
+                c = k * interval;
+                b = checkpoint;
+            } else {
+                c = k * interval - 1;
+                b = ~checkpoint;
+            }
+        }
+
+        while (c < i) {
+            final int length = length(bytes, b);
+            final int chars = chars(bytes, b, length);
+            if (c + chars > i) break;
+            c += chars;
+            b += length;
+        }
+
+        myCursorChar = c;
+        myCursorByte = b;
+    }
+
+    private static boolean isContinuation(final int b) {
+        return (b & 0xC0) == 0x80;
+    }
+
+    /**
+     * @param lead lead byte, not a continuation byte
+     *
+     * @return number of continuation bytes expected after the lead byte
+     */
+    private static int continuations(final int lead) {
+        if (lead < 0x80) return 0;
+        if (lead < 0xE0) return 1;
+        if (lead < 0xF0) return 2;
+        if (lead < 0xF8) return 3;
+        return 0;
+    }
+
+    /**
+     * @return byte length of the code point starting at b, a lead byte and up to its expected number of continuation bytes
+     */
+    static int length(final ByteBuffer bytes, final int b) {
+        final int lead = bytes.get(b) & 0xFF;
+        if (lead < 0x80 || isContinuation(lead)) return 1;
+
+        final int expected = continuations(lead);
+        final int limit = Math.min(bytes.limit(), b + 1 + expected);
+        int end = b + 1;
+        while (end < limit && isContinuation(bytes.get(end))) end++;
+        return end - b;
+    }
+
+    /**
+     * @return code point of length bytes starting at b, or U+FFFD if malformed
+     */
+    static int decode(final ByteBuffer bytes, final int b, final int length) {
+        final int lead = bytes.get(b) & 0xFF;
+        if (length == 1) return lead < 0x80 ? lead : REPLACEMENT_CHAR;
+        if (length != 1 + continuations(lead)) return REPLACEMENT_CHAR;
+
+        int codePoint = lead & (0x7F >> length);
+        for (int j = 1; j < length; j++) {
+            codePoint = (codePoint << 6) | (bytes.get(b + j) & 0x3F);
+        }
+
+        switch (length) {
+            case 2:
+                return codePoint >= 0x80 ? codePoint : REPLACEMENT_CHAR;
+            case 3:
+                return codePoint >= 0x800 && !(codePoint >= Character.MIN_SURROGATE && codePoint <= Character.MAX_SURROGATE) ? codePoint : REPLACEMENT_CHAR;
+            default:
+                return codePoint >= Character.MIN_SUPPLEMENTARY_CODE_POINT && codePoint <= Character.MAX_CODE_POINT ? codePoint : REPLACEMENT_CHAR;
+        }
+    }
+
+    /**
+     * @return number of chars of the code point of length bytes starting at b
+     */
+    static int chars(final ByteBuffer bytes, final int b, final int length) {
+        return length == 4 && decode(bytes, b, length) >= Character.MIN_SUPPLEMENTARY_CODE_POINT ? 2 : 1;
+    }
+
+    /**
+     * @param b start of a code point, greater than 0
+     *
+     * @return start of the code point before b
+     */
+    static int previous(final ByteBuffer bytes, final int b) {
+        // a lead byte takes at most 3 continuation bytes so it is within 4 bytes before b
+        final int min = Math.max(0, b - 4);
+        int p = b - 1;
+        while (p > min && isContinuation(bytes.get(p))) p--;
+
+        if (isContinuation(bytes.get(p))) return b - 1;
+        // continuation bytes between the code point at p and b are each a code point
+        return p + length(bytes, p) == b ? p : b - 1;
+    }
+
+    /**
+     * Char length and checkpoints of UTF-8 bytes, shared by sequences of the same bytes
+     */
+    static final class Utf8Index {
+        private static final long ASCII_MASK = 0x8080808080808080L;
+
+        final ByteBuffer myBytes;
+        final int myInterval;
+        final int myCharLength;
+        // byte offset of the code point of char k * interval, or ~offset if the char is its low surrogate
+        final int[] myCheckpoints;
+
+        Utf8Index(final ByteBuffer bytes, final int interval) {
+            final int limit = bytes.limit();
+            int[] checkpoints = new int[limit / interval + 1];
+            int count = 0;
+            int next = 0;
+            int c = 0;
+            int b = 0;
+
+            while (b < limit) {
+                if (c == next) {
+                    checkpoints[count++] = b;
+                    next += interval;
+                }
+
+                // ASCII run up to the next checkpoint, 8 bytes at a time
+                final int start = b;
+                final int end = b + Math.min(limit - b, next - c);
+                while (b <= end - 8 && (bytes.getLong(b) & ASCII_MASK) == 0) b += 8;
+                while (b < end && bytes.get(b) >= 0) b++;
+                c += b - start;
+                if (b == end) continue;
+
+                final int length = length(bytes, b);
+                final int chars = chars(bytes, b, length);
+                if (chars == 2 && c + 1 == next) {
+                    checkpoints[count++] = ~b;
+                    next += interval;
+                }
+
+                c += chars;
+                b += length;
+            }
+
+            myBytes = bytes;
+            myInterval = interval;
+            myCharLength = c;
+            myCheckpoints = count == checkpoints.length ? checkpoints : Arrays.copyOf(checkpoints, count);
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package com.vladsch.ReverseRegEx.util;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Canonicalizes equal immutable values so they are shared, values are only weakly held
+ * <p>
+ * Lock free for lookups so threads constructing patterns in parallel do not contend, entries of collected
+ * values are removed on the next intern.
+ *
+ * @param <T> type of value, must implement equals and hashCode
+ */
+final class WeakInterner<T> {
+    private final ConcurrentHashMap<WeakKey<T>, WeakKey<T>> myValues = new ConcurrentHashMap<>();
+    private final ReferenceQueue<T> myQueue = new ReferenceQueue<>();
+
+    /**
+     * Weak reference to a value with the hash code of the value, equal to another key with an equal value.
+     * A cleared key is only equal to itself.
+     */
+    private static final class WeakKey<T> extends WeakReference<T> {
+        private final int myHashCode;
+
+        WeakKey(final T value, final ReferenceQueue<T> queue) {
+            super(value, queue);
+            myHashCode = value.hashCode();
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) return true;
+            if (!(o instanceof WeakKey)) return false;
+
+            WeakKey<?> other = (WeakKey<?>) o;
+            if (myHashCode != other.myHashCode) return false;
+            Object value = get();
+            return value != null && value.equals(other.get());
+        }
+
+        @Override
+        public int hashCode() {
+            return myHashCode;
+        }
+    }
+
+    /**
+     * @param value value
+     *
+     * @return an existing value equal to the given value or the given value if there is none
+     */
+    T intern(final T value) {
+        expunge();
+
+        WeakKey<T> key = new WeakKey<>(value, myQueue);
+        while (true) {
+            WeakKey<T> existingKey = myValues.putIfAbsent(key, key);
+            if (existingKey == null) return value;
+
+            T existing = existingKey.get();
+            if (existing != null) return existing;
+
+            // collected after it was found equal, remove it and try again
+            myValues.remove(existingKey, existingKey);
+        }
+    }
+
+    int size() {
+        expunge();
+        return myValues.size();
+    }
+
+    private void expunge() {
+        Reference<? extends T> reference;
+        while ((reference = myQueue.poll()) != null) {
+            myValues.remove(reference, reference);
+        }
+    }
+}
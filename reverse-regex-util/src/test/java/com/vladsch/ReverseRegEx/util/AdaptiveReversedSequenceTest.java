@@ -0,0 +1,86 @@
+package com.vladsch.ReverseRegEx.util;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class AdaptiveReversedSequenceTest {
+    private static String text(int lines) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < lines; i++) {
+            sb.append("  abc").append(i).append(" = abc.trim()\n  test.id  = def").append(i).append(";\n");
+        }
+        return sb.toString();
+    }
+
+    @Test
+    public void test_scanThreshold() throws Exception {
+        String text = text(20);
+        AdaptiveReversedSequence chars = new AdaptiveReversedSequence(ReversedCharSequence.ofSegments(text.substring(0, 100), text.substring(100)), 2, 16, 1 << 20);
+
+        for (int i = 0; i < chars.length(); i++) {
+            chars.charAt(i);
+        }
+        assertFalse(chars.isMaterialized());
+        assertEquals(text.length(), chars.getReadCount());
+
+        for (int i = 0; i < chars.length(); i++) {
+            chars.charAt(i);
+        }
+        assertFalse(chars.isMaterialized());
+        chars.charAt(0);
+        assertTrue(chars.isMaterialized());
+        assertEquals(2 * text.length(), chars.getReadCount());
+
+        assertEquals(ReverseMatcher.reversedString(text), chars.toString());
+        for (int i = 0; i < chars.length(); i++) {
+            assertEquals(text.charAt(text.length() - 1 - i), chars.charAt(i));
+        }
+        assertEquals(2 * text.length(), chars.getReadCount());
+    }
+
+    @Test
+    public void test_eagerAndMaximumLength() throws Exception {
+        AdaptiveReversedSequence small = new AdaptiveReversedSequence(ReversedCharSequence.of(new StringBuilder("abc")));
+        assertEquals('c', small.charAt(0));
+        assertTrue(small.isMaterialized());
+
+        AdaptiveReversedSequence large = new AdaptiveReversedSequence(ReversedCharSequence.of(text(20)), 0, 0, 100);
+        for (int i = 0; i < 10; i++) {
+            large.charAt(i);
+        }
+        assertFalse(large.isMaterialized());
+
+        try {
+            new AdaptiveReversedSequence(ReversedCharSequence.of("abc"), -1, 0, 0);
+            fail("negative scan threshold");
+        } catch (IllegalArgumentException ignored) {
+        }
+    }
+
+    @Test
+    public void test_matcher() throws Exception {
+        String text = text(20);
+        String[] patterns = { "\\b(id)\\b\\s*=\\s*(.+?)\\s*;$", "([a-zA-z_][a-zA-z_0-9]*)\\s*=\\s*\\1\\.([a-zA-z_][a-zA-z_0-9]*)\\(\\)", "abc(\\d+)" };
+        AdaptiveReversedSequence chars = new AdaptiveReversedSequence(ReversedCharSequence.ofSegments(text.split("(?<=\n)")), 1, 0, 1 << 20);
+
+        for (String pattern : patterns) {
+            ReversePattern regEx = ReversePattern.compile(pattern, java.util.regex.Pattern.MULTILINE);
+            ReverseMatcher expected = regEx.matcher(text);
+            ReverseMatcher matcher = new ReverseMatcher(regEx, chars);
+            while (expected.find()) {
+                assertTrue(pattern, matcher.find());
+                assertEquals(pattern, expected.start(), matcher.start());
+                assertEquals(pattern, expected.end(), matcher.end());
+                assertEquals(pattern, expected.group(), matcher.group());
+                assertEquals(pattern, expected.start(1), matcher.start(1));
+            }
+            assertFalse(pattern, matcher.find());
+        }
+
+        assertTrue(chars.isMaterialized());
+    }
+}
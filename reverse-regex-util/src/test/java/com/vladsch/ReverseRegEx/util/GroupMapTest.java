@@ -0,0 +1,81 @@
+package com.vladsch.ReverseRegEx.util;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.*;
+
+public class GroupMapTest {
+    @Test
+    public void test_shared() throws Exception {
+        ReversePattern regEx1 = ReversePattern.compile("(a)(b)\\1");
+        ReversePattern regEx2 = ReversePattern.compile("(x)(y)\\1");
+        assertSame(regEx1.groups(), regEx2.groups());
+
+        assertSame(GroupMap.EMPTY, ReversePattern.compile("abc").groups());
+        assertSame(GroupMap.EMPTY, ReversePattern.compile("").groups());
+    }
+
+    @Test
+    public void test_sharedConcurrently() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<GroupMap>> futures = new ArrayList<>();
+            for (int i = 0; i < 64; i++) {
+                futures.add(executor.submit(() -> GroupMap.of(3, new int[] { 2, 1, 0 }, new String[] { "x" }, new int[] { 2 })));
+            }
+
+            GroupMap groups = futures.get(0).get();
+            for (Future<GroupMap> future : futures) {
+                assertSame(groups, future.get());
+            }
+            assertSame(groups, GroupMap.of(3, new int[] { 2, 1, 0 }, new String[] { "x" }, new int[] { 2 }));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void test_reversedSharesPattern() throws Exception {
+        ReversePattern regEx = ReversePattern.compile("a.a");
+        assertSame(regEx.originalPattern(), regEx.pattern());
+    }
+
+    @Test
+    public void test_names() throws Exception {
+        GroupMap groups = GroupMap.of(2, new int[] { 1, 0 }, new String[] { "a", "b" }, new int[] { 1, 0 });
+        assertEquals(2, groups.getGroupCount());
+        assertEquals(1, groups.getReversedGroup(0));
+        assertEquals(0, groups.getOriginalGroup(1));
+        assertEquals(2, groups.getNameCount());
+        assertEquals("b", groups.getName(1));
+        assertEquals(1, groups.getNameIndex("b"));
+        assertEquals(-1, groups.getNameIndex("c"));
+        assertEquals(0, groups.getNameGroup(1));
+        assertSame(groups, GroupMap.of(2, new int[] { 1, 0 }, new String[] { "a", "b" }, new int[] { 1, 0 }));
+        assertNotSame(groups, GroupMap.of(2, new int[] { 1, 0 }, new String[] { "a", "c" }, new int[] { 1, 0 }));
+    }
+
+    @Test
+    public void test_wideGroups() throws Exception {
+        // more groups than fit in a byte
+        for (int groupCount : new int[] { 255, 256, 257, 70000 }) {
+            int[] originalToReversed = new int[groupCount];
+            for (int i = 0; i < groupCount; i++) {
+                originalToReversed[i] = groupCount - 1 - i;
+            }
+
+            GroupMap groups = GroupMap.of(groupCount, originalToReversed, new String[] { "last" }, new int[] { groupCount - 1 });
+            for (int i = 0; i < groupCount; i++) {
+                assertEquals(groupCount - 1 - i, groups.getReversedGroup(i));
+                assertEquals(groupCount - 1 - i, groups.getOriginalGroup(i));
+            }
+            assertEquals(groupCount - 1, groups.getNameGroup(0));
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package com.vladsch.ReverseRegEx.util;
+
+import org.junit.Test;
+
+import java.util.regex.PatternSyntaxException;
+
+import static org.junit.Assert.*;
+
+public class PatternCacheTest {
+    @Test
+    public void test_hitMiss() throws Exception {
+        PatternCache<ReversePattern> cache = new PatternCache<>(10, ReversePattern::compile);
+
+        ReversePattern regEx = cache.get("abc", 0);
+        assertEquals("cba", regEx.pattern());
+        assertEquals(0, cache.hitCount());
+        assertEquals(1, cache.missCount());
+
+        assertSame(regEx, cache.get("abc", 0));
+        assertEquals(1, cache.hitCount());
+        assertEquals(1, cache.missCount());
+
+        ReversePattern regExFlags = cache.get("abc", java.util.regex.Pattern.CASE_INSENSITIVE);
+        assertNotSame(regEx, regExFlags);
+        assertEquals(2, cache.missCount());
+        assertEquals(2, cache.size());
+    }
+
+    @Test
+    public void test_eviction() throws Exception {
+        PatternCache<ForwardPattern> cache = new PatternCache<>(4, 1, ForwardPattern::compile);
+
+        ForwardPattern first = cache.get("a", 0);
+        cache.get("b", 0);
+        cache.get("c", 0);
+        cache.get("d", 0);
+
+        // touch first so b becomes least recently used
+        assertSame(first, cache.get("a", 0));
+        cache.get("e", 0);
+
+        assertEquals(4, cache.size());
+        assertEquals(1, cache.evictionCount());
+        assertSame(first, cache.get("a", 0));
+
+        long misses = cache.missCount();
+        cache.get("b", 0);
+        assertEquals(misses + 1, cache.missCount());
+    }
+
+    @Test
+    public void test_bounded() throws Exception {
+        PatternCache<ReversePattern> cache = new PatternCache<>(100, ReversePattern::compile);
+
+        for (int i = 0; i < 1000; i++) {
+            cache.get("a" + i, 0);
+        }
+
+        assertEquals(100, cache.size());
+        assertEquals(900, cache.evictionCount());
+    }
+
+    @Test
+    public void test_invalidNotCached() throws Exception {
+        PatternCache<ReversePattern> cache = new PatternCache<>(10, ReversePattern::compile);
+
+        try {
+            cache.get("(a", 0);
+            fail("expected PatternSyntaxException");
+        } catch (PatternSyntaxException ignored) {
+        }
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void test_staticHelpers() throws Exception {
+        assertSame(ReversePattern.compileCached("a+b"), ReversePattern.compileCached("a+b"));
+        assertSame(ForwardPattern.compileCached("a+b"), ForwardPattern.compileCached("a+b"));
+
+        long hits = ReversePattern.cache().hitCount();
+        assertTrue(ReversePattern.matches("a+b", "aab"));
+        assertTrue(ReversePattern.matches("a+b", "aaab"));
+        assertEquals(hits + 2, ReversePattern.cache().hitCount());
+
+        assertTrue(ForwardPattern.matches("a+b", "aab"));
+        assertFalse(ForwardPattern.matches("a+b", "aac"));
+    }
+}
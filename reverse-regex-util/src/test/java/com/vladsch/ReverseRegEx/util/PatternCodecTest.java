@@ -0,0 +1,142 @@
+package com.vladsch.ReverseRegEx.util;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.*;
+
+public class PatternCodecTest {
+    private static void assertSamePattern(ReversePattern expected, ReversePattern actual) {
+        assertEquals(expected.originalPattern(), actual.originalPattern());
+        assertEquals(expected.pattern(), actual.pattern());
+        assertEquals(expected.flags(), actual.flags());
+        assertEquals(expected.getCapturingGroupCount(), actual.getCapturingGroupCount());
+        for (int i = 0; i < expected.getCapturingGroupCount(); i++) {
+            assertEquals(expected.getReversedGroupIndex(i), actual.getReversedGroupIndex(i));
+            assertEquals(expected.getOriginalGroupIndex(i), actual.getOriginalGroupIndex(i));
+        }
+        assertEquals(expected.namedGroups(), actual.namedGroups());
+    }
+
+    @Test
+    public void test_reversePattern() throws Exception {
+        for (String p : Arrays.asList("", "abc", "a.a", "(a)(?<B>b)(c)\\3\\k<B>\\1", "\u00e9(\u4e2d)\\1", "(?i)\\b(id)\\b\\s*=\\s*(.+?)\\s*;$")) {
+            ReversePattern regEx = ReversePattern.compile(p, Pattern.MULTILINE);
+            ReversePattern decoded = (ReversePattern) PatternCodec.fromBytes(PatternCodec.toBytes(regEx));
+            assertSamePattern(regEx, decoded);
+        }
+    }
+
+    @Test
+    public void test_manyGroups() throws Exception {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 300; i++) {
+            sb.append("(a)");
+        }
+        sb.append("\\1");
+
+        ReversePattern regEx = ReversePattern.compile(sb.toString());
+        assertSamePattern(regEx, (ReversePattern) PatternCodec.fromBytes(PatternCodec.toBytes(regEx)));
+    }
+
+    @Test
+    public void test_forwardPattern() throws Exception {
+        ForwardPattern regEx = ForwardPattern.compile("(a)(b)\\1", Pattern.CASE_INSENSITIVE);
+        RegExPattern decoded = PatternCodec.fromBytes(PatternCodec.toBytes(regEx));
+        assertTrue(decoded instanceof ForwardPattern);
+        assertEquals(regEx.pattern(), decoded.pattern());
+        assertEquals(regEx.flags(), decoded.flags());
+    }
+
+    @Test
+    public void test_all() throws Exception {
+        List<RegExPattern> patterns = Arrays.asList(ReversePattern.compile("(a)b"), ForwardPattern.compile("cd"), ReversePattern.compile("e(?<F>f)"));
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        PatternCodec.writeAll(new DataOutputStream(bytes), patterns);
+        List<RegExPattern> decoded = PatternCodec.readAll(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+
+        assertEquals(patterns.size(), decoded.size());
+        for (int i = 0; i < patterns.size(); i++) {
+            assertEquals(patterns.get(i).getClass(), decoded.get(i).getClass());
+            assertEquals(patterns.get(i).pattern(), decoded.get(i).pattern());
+        }
+        assertSamePattern((ReversePattern) patterns.get(2), (ReversePattern) decoded.get(2));
+    }
+
+    @Test
+    public void test_typed() throws Exception {
+        byte[] bytes = PatternCodec.toBytes(ForwardPattern.compile("ab"));
+        assertEquals("ab", PatternCodec.readForwardPattern(new DataInputStream(new ByteArrayInputStream(bytes))).pattern());
+
+        try {
+            PatternCodec.readReversePattern(new DataInputStream(new ByteArrayInputStream(bytes)));
+            fail("expected StreamCorruptedException");
+        } catch (StreamCorruptedException ignored) {
+        }
+    }
+
+    @Test
+    public void test_invalid() throws Exception {
+        byte[] bytes = PatternCodec.toBytes(ReversePattern.compile("(a)(b)"));
+
+        byte[] version = bytes.clone();
+        version[0] = (byte) (PatternCodec.FORMAT_VERSION + 1);
+        try {
+            PatternCodec.fromBytes(version);
+            fail("expected StreamCorruptedException");
+        } catch (StreamCorruptedException ignored) {
+        }
+
+        // reversed group out of range
+        byte[] group = bytes.clone();
+        group[bytes.length - 6] = 9;
+        try {
+            PatternCodec.fromBytes(group);
+            fail("expected StreamCorruptedException");
+        } catch (StreamCorruptedException ignored) {
+        }
+
+        // reversed group of both groups is 2
+        byte[] duplicate = bytes.clone();
+        duplicate[bytes.length - 6] = duplicate[bytes.length - 5];
+        try {
+            PatternCodec.fromBytes(duplicate);
+            fail("expected StreamCorruptedException");
+        } catch (StreamCorruptedException ignored) {
+        }
+
+        // group count larger than the pattern
+        byte[] groups = bytes.clone();
+        groups[bytes.length - 10] = 0x7F;
+        try {
+            PatternCodec.fromBytes(groups);
+            fail("expected StreamCorruptedException");
+        } catch (StreamCorruptedException ignored) {
+        }
+
+        // pattern length larger than the input
+        byte[] length = bytes.clone();
+        length[2] = 0x7F;
+        try {
+            PatternCodec.fromBytes(length);
+            fail("expected IOException");
+        } catch (IOException ignored) {
+        }
+
+        try {
+            PatternCodec.fromBytes(Arrays.copyOf(bytes, bytes.length - 1));
+            fail("expected IOException");
+        } catch (IOException ignored) {
+        }
+    }
+}
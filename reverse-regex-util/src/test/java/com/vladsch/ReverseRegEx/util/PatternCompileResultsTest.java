@@ -0,0 +1,63 @@
+package com.vladsch.ReverseRegEx.util;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.*;
+
+public class PatternCompileResultsTest {
+    @Test
+    public void test_reverseCompileAll() throws Exception {
+        List<String> patterns = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            patterns.add(i % 100 == 7 ? "(a" + i : "(a" + i + ")b\\1");
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            PatternCompileResults<ReversePattern> results = ReversePattern.compileAll(patterns, 0, executor);
+
+            assertEquals(patterns.size(), results.size());
+            assertTrue(results.hasErrors());
+            assertEquals(10, results.getErrorCount());
+
+            for (int i = 0; i < patterns.size(); i++) {
+                assertEquals(patterns.get(i), results.getPattern(i));
+                if (i % 100 == 7) {
+                    assertNull(results.get(i));
+                    assertNotNull(results.getError(i));
+                } else {
+                    assertNull(results.getError(i));
+                    assertEquals(ReversePattern.compile(patterns.get(i)).pattern(), results.get(i).pattern());
+                    assertSame(results.get(i), results.getPatterns().get(i));
+                }
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void test_forwardCompileAll() throws Exception {
+        PatternCompileResults<ForwardPattern> results = ForwardPattern.compileAll(List.of("a+", "[b", "c*"), 0);
+
+        assertEquals(3, results.size());
+        assertEquals(1, results.getErrorCount());
+        assertEquals("a+", results.get(0).pattern());
+        assertNotNull(results.getError(1));
+        assertNull(results.get(1));
+        assertEquals("c*", results.get(2).pattern());
+    }
+
+    @Test
+    public void test_empty() throws Exception {
+        PatternCompileResults<ReversePattern> results = ReversePattern.compileAll(Collections.emptyList(), 0);
+        assertEquals(0, results.size());
+        assertFalse(results.hasErrors());
+    }
+}
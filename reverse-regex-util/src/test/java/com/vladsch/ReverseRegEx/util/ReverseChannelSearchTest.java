@@ -0,0 +1,94 @@
+package com.vladsch.ReverseRegEx.util;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class ReverseChannelSearchTest {
+    private static String text(int lines) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < lines; i++) {
+            sb.append("id = ").append(i).append("; ").append(i % 3 == 0 ? "aaaaaaa" : "b").append(" value").append(i).append("\n");
+        }
+        return sb.toString();
+    }
+
+    private static List<String> expected(ReversePattern pattern, String text, int start, int end) {
+        ArrayList<String> matches = new ArrayList<>();
+        ReverseMatcher matcher = pattern.matcher(text.substring(start, end));
+        while (matcher.find()) {
+            matches.add("[" + (start + matcher.start()) + ", " + (start + matcher.end()) + ") " + matcher.group()
+                    + (matcher.groupCount() > 0 ? " " + (matcher.start(1) < 0 ? -1 : start + matcher.start(1)) : ""));
+        }
+        return matches;
+    }
+
+    private static List<String> search(ReverseChannelSearch search, FileChannel channel, long start, long end) throws IOException {
+        ArrayList<String> matches = new ArrayList<>();
+        search.search(channel, start, end, match -> {
+            matches.add(match + (match.groupCount() > 0 ? " " + match.start(1) : ""));
+            return true;
+        });
+        return matches;
+    }
+
+    @Test
+    public void test_search() throws IOException {
+        Path file = Files.createTempFile("reversed", ".log");
+        try {
+            String text = text(40);
+            Files.write(file, text.getBytes(StandardCharsets.ISO_8859_1));
+
+            String[] patterns = { "id = (\\d+);", "a+", "(?m)^id = \\d", "(?m)\\d$", "\\bvalue(\\d)\\b", "(?<=; )a+", "a*", "(x)?b", "\\n", };
+            int[] blockSizes = { 1, 3, 16, 100, 4096, };
+
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                for (String pattern : patterns) {
+                    ReversePattern regEx = ReversePattern.compile(pattern);
+                    for (int blockSize : blockSizes) {
+                        ReverseChannelSearch search = new ReverseChannelSearch(regEx, blockSize, 32, 8);
+                        String message = pattern + " " + blockSize;
+                        assertEquals(message, expected(regEx, text, 0, text.length()), search(search, channel, 0, channel.size()));
+                        assertEquals(message, expected(regEx, text, 0, 50), search(search, channel, 0, 50));
+                    }
+                }
+            }
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    public void test_stop() throws IOException {
+        Path file = Files.createTempFile("reversed", ".log");
+        try {
+            String text = text(1000);
+            Files.write(file, text.getBytes(StandardCharsets.ISO_8859_1));
+
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                ReverseChannelSearch search = new ReverseChannelSearch(ReversePattern.compile("id = (\\d+);"), 256, 64, 16);
+                ArrayList<String> ids = new ArrayList<>();
+                long count = search.search(channel, match -> {
+                    ids.add(match.group(1));
+                    assertEquals(text.lastIndexOf("id = " + match.group(1) + ";"), match.start());
+                    return ids.size() < 3;
+                });
+
+                assertEquals(3, count);
+                assertEquals("[999, 998, 997]", ids.toString());
+                assertEquals(256 + 64 + 16, search.getBlockSize() + search.getMaxMatchLength() + search.getContextLength());
+            }
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+}
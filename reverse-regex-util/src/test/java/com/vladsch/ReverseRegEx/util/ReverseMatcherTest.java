@@ -1,8 +1,18 @@
 package com.vladsch.ReverseRegEx.util;
 
+import org.junit.Assume;
 import org.junit.Test;
 
+import java.io.StringWriter;
+import java.lang.management.ManagementFactory;
+import java.nio.CharBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.MatchResult;
+import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import java.util.stream.Collectors;
 
 import static org.junit.Assert.*;
 
@@ -43,6 +53,19 @@ public class ReverseMatcherTest {
         assertEquals(false, matcher.find(10));
     }
 
+    @Test
+    public void test_sharedCompiledPattern() throws Exception {
+        ReversePattern regEx = ReversePattern.compile("\\s*,\\s*");
+        ReversePattern other = ReversePattern.compile("a+");
+
+        ReverseMatcher matcher = regEx.matcher("a , b");
+        assertSame(regEx.compiled(), matcher.pattern());
+        assertSame(matcher.pattern(), regEx.matcher("c,d").pattern());
+
+        matcher.usePattern(other);
+        assertSame(other.compiled(), matcher.pattern());
+    }
+
     @Test
     public void test_split() throws Exception {
         ReversePattern regEx = ReversePattern.compile("\\s*,\\s*");
@@ -57,4 +80,564 @@ public class ReverseMatcherTest {
 
         assertArrayEquals(originalSplit, reversedSplit);
     }
+
+    @Test
+    public void test_inputs() throws Exception {
+        ReversePattern regEx = ReversePattern.compile("\\b(id)\\b\\s*=\\s*(.+?)\\s*;$");
+        final String text = "test.id  = def;";
+        CharBuffer buffer = CharBuffer.wrap(("xx" + text).toCharArray());
+        buffer.position(2);
+
+        CharSequence[] inputs = { text, new StringBuilder(text), ReversedCharSequence.of(text.toCharArray()), buffer };
+        for (CharSequence input : inputs) {
+            String message = input.getClass().getSimpleName();
+            ReverseMatcher matcher = new ReverseMatcher(regEx, input);
+            assertEquals(message, true, matcher.find());
+            assertEquals(message, "id  = def;", matcher.group());
+            assertEquals(message, 5, matcher.start(1));
+            assertEquals(message, 7, matcher.end(1));
+            assertEquals(message, "def", text.substring(matcher.start(2), matcher.end(2)));
+        }
+    }
+
+    @Test
+    public void test_splitLimits() throws Exception {
+        String[] patterns = { "\\s*,\\s*", ",", "x*", "" };
+        String[] texts = { "a , abc,def, xyz", ",a,,b,,", "", "abc", "axbxxc" };
+        int[] limits = { -1, 0, 1, 2, 3, 10 };
+
+        for (String pattern : patterns) {
+            ReversePattern regEx = ReversePattern.compile(pattern);
+            for (String text : texts) {
+                for (int limit : limits) {
+                    // reference: split of reversed text with each result reversed
+                    String[] expected = regEx.compiled().split(ReversedCharSequence.of(text), limit);
+                    for (int i = 0; i < expected.length; i++) {
+                        expected[i] = ReverseMatcher.reversedString(expected[i]);
+                    }
+
+                    assertArrayEquals("'" + pattern + "' split '" + text + "', " + limit, expected, regEx.split(text, limit));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void test_groups() throws Exception {
+        ReversePattern regEx = ReversePattern.compile("(?<key>\\w+)(?:=(\\d+))?;");
+        final String text = "a=1;bc;";
+        CharSequence[] inputs = { text, new StringBuilder(text), ReversedCharSequence.of(text.toCharArray()) };
+
+        for (CharSequence input : inputs) {
+            String message = input.getClass().getSimpleName();
+            ReverseMatcher matcher = new ReverseMatcher(regEx, input);
+            assertEquals(message, true, matcher.find());
+            assertEquals(message, "bc;", matcher.group());
+            assertEquals(message, "bc", matcher.group(1));
+            assertEquals(message, "bc", matcher.group("key"));
+            assertEquals(message, null, matcher.group(2));
+            assertEquals(message, true, matcher.find());
+            assertEquals(message, "a=1;", matcher.group());
+            assertEquals(message, "1", matcher.group(2));
+        }
+    }
+
+    @Test
+    public void test_resetRange() throws Exception {
+        ReversePattern regEx = ReversePattern.compile("(\\w+)=(\\d+)");
+        final String text = "a=1 b=2 c=3";
+        ReverseMatcher matcher = regEx.matcher("");
+
+        matcher.reset(text, 0, 7);
+        assertEquals(true, matcher.find());
+        assertEquals("b=2", matcher.group());
+        assertEquals(4, matcher.start());
+        assertEquals(7, matcher.end());
+        assertEquals(true, matcher.find());
+        assertEquals("a", matcher.group(1));
+        assertEquals(false, matcher.find());
+
+        matcher.reset(text, 4, 11);
+        assertEquals(true, matcher.find());
+        assertEquals("c=3", matcher.group());
+        assertEquals(8, matcher.start(1));
+
+        matcher.reset("x=9");
+        assertEquals(true, matcher.find());
+        assertEquals("9", matcher.group(2));
+        assertEquals(2, matcher.start(2));
+    }
+
+    /**
+     * Bytes allocated by the current thread running test, best of several rounds so a round with one-time
+     * allocations is ignored. Skips the calling test if the JVM does not count allocated bytes.
+     */
+    static long allocatedBytes(Runnable test) {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue("thread allocated bytes not available", bean instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) bean;
+        Assume.assumeTrue("thread allocated bytes not enabled", threadBean.isThreadAllocatedMemorySupported() && threadBean.isThreadAllocatedMemoryEnabled());
+
+        long threadId = Thread.currentThread().getId();
+        long allocated = Long.MAX_VALUE;
+        for (int round = 0; round < 5; round++) {
+            long before = threadBean.getThreadAllocatedBytes(threadId);
+            test.run();
+            allocated = Math.min(allocated, threadBean.getThreadAllocatedBytes(threadId) - before);
+        }
+        return allocated;
+    }
+
+    @Test
+    public void test_resetAllocation() throws Exception {
+        ReversePattern regEx = ReversePattern.compile("\\b(id)\\b\\s*=");
+        String[] inputs = new String[64];
+        for (int i = 0; i < inputs.length; i++) {
+            inputs[i] = i % 3 == 0 ? "test.id = " + i : "no match " + i;
+        }
+
+        ReverseMatcher matcher = regEx.matcher("");
+        int iterations = 100000;
+        int[] found = new int[1];
+
+        long allocated = allocatedBytes(() -> {
+            for (int i = 0; i < iterations; i++) {
+                String input = inputs[i & 63];
+                if (matcher.reset(input).find()) found[0]++;
+                if (matcher.reset(input, 1, input.length()).find()) found[0] += matcher.start();
+            }
+        });
+
+        assertTrue("found matches", found[0] > 0);
+        // one object per iteration would be at least 16 bytes
+        assertTrue("allocated " + allocated + " bytes for " + iterations + " iterations", allocated < iterations);
+    }
+
+    @Test
+    public void test_supplementary() throws Exception {
+        // U+1F600 as a surrogate pair
+        String emoji = "\uD83D\uDE00";
+        String input = "x a" + emoji + "b y a" + emoji + "b";
+        String[] patterns = { "a" + emoji + "b", "a.b", "a[" + emoji + "]b", "a\\x{1F600}b", "a[\\x{1F000}-\\x{1FFFF}]b", "a\\p{So}b", };
+
+        for (String pattern : patterns) {
+            ReverseMatcher matcher = ReversePattern.compile(pattern).matcher(input);
+            assertTrue(pattern, matcher.find());
+            assertEquals(pattern, 9, matcher.start());
+            assertEquals(pattern, 13, matcher.end());
+            assertEquals(pattern, "a" + emoji + "b", matcher.group());
+            assertTrue(pattern, matcher.find());
+            assertEquals(pattern, 2, matcher.start());
+            assertFalse(pattern, matcher.find());
+
+            matcher = new ReverseMatcher(ReversePattern.compile(pattern), ReversedCharSequence.of(input));
+            assertTrue(pattern, matcher.find());
+            assertEquals(pattern, 9, matcher.start());
+
+            CharBuffer buffer = CharBuffer.wrap(("zz" + input).toCharArray());
+            buffer.position(2);
+            matcher = ReversePattern.compile(pattern).matcher(buffer);
+            assertTrue(pattern, matcher.find());
+            assertEquals(pattern, 9, matcher.start());
+            assertEquals(pattern, "a" + emoji + "b", matcher.group());
+
+            matcher = ReversePattern.compile(pattern).matcher(new StringBuilder(input));
+            assertTrue(pattern, matcher.find());
+            assertEquals(pattern, 9, matcher.start());
+        }
+
+        ReversePattern regEx = ReversePattern.compile("(.)b");
+        assertEquals("x a!b y a!b", regEx.matcher(input).replaceAll("!b"));
+        assertEquals("x a" + emoji + "b y a" + emoji + emoji + "b", regEx.matcher(input).replaceFirst(emoji + emoji + "b"));
+        assertArrayEquals(new String[] { "b", "b y a", "x a" }, ReversePattern.compile(emoji).split(input));
+
+        ReverseMatcher matcher = regEx.matcher(input);
+        assertTrue(matcher.find());
+        assertEquals(emoji, matcher.group(1));
+
+        // unpaired surrogates are reversed as single chars
+        String unpaired = "a\uDE00\uD83Db";
+        matcher = ReversePattern.compile("\uDE00\uD83Db").matcher(unpaired);
+        assertTrue(matcher.find());
+        assertEquals(1, matcher.start());
+    }
+
+    @Test
+    public void test_rangeMatcher() throws Exception {
+        String text = "id=0; id=1; id=2; id=3";
+        RegExPattern[] patterns = { ReversePattern.compile("\\bid=(\\d)$"), ForwardPattern.compile("\\bid=(\\d)$"), ReversePattern.compile("^id=(\\d)"), ForwardPattern.compile("^id=(\\d)"), };
+
+        for (RegExPattern pattern : patterns) {
+            for (int from = 0; from <= text.length(); from++) {
+                for (int to = from; to <= text.length(); to++) {
+                    String message = pattern + " [" + from + ", " + to + ")";
+                    RegExMatcher expected = pattern.matcher(text.substring(from, to));
+                    RegExMatcher matcher = pattern.matcher(text, from, to);
+
+                    assertEquals(message, from, matcher.regionStart());
+                    assertEquals(message, to, matcher.regionEnd());
+                    boolean found = expected.find();
+                    assertEquals(message, found, matcher.find());
+                    if (found) {
+                        assertEquals(message, expected.start() + from, matcher.start());
+                        assertEquals(message, expected.end() + from, matcher.end());
+                        assertEquals(message, expected.start(1) + from, matcher.start(1));
+                        assertEquals(message, expected.group(1), matcher.group(1));
+                    }
+
+                    // reset keeps the range
+                    matcher.reset();
+                    assertEquals(message, from, matcher.regionStart());
+                    assertEquals(message, to, matcher.regionEnd());
+                    assertEquals(message, found, matcher.find());
+                    if (found) assertEquals(message, expected.start() + from, matcher.start());
+
+                    // replace returns all of input
+                    String before = text.substring(0, from);
+                    String after = text.substring(to);
+                    assertEquals(message, before + expected.replaceAll("<$1>") + after, matcher.replaceAll("<$1>"));
+                    assertEquals(message, before + expected.replaceFirst("<$1>") + after, matcher.replaceFirst("<$1>"));
+                }
+            }
+        }
+
+        ReverseMatcher matcher = ReversePattern.compile("id=(\\d)").matcher(text, 6, 16);
+        assertTrue(matcher.find());
+        assertEquals(12, matcher.start());
+        assertEquals(16, matcher.end());
+        assertEquals("2", matcher.group(1));
+        assertEquals(15, matcher.start(1));
+        assertTrue(matcher.find());
+        assertEquals(6, matcher.start());
+        assertFalse(matcher.find());
+        matcher.reset();
+        assertTrue(matcher.find());
+        assertEquals(12, matcher.start());
+
+        assertEquals("id=0; <1>; <2>; id=3", matcher.replaceAll("<$1>"));
+        assertEquals("id=0; id=1; <2>; id=3", matcher.replaceFirst("<$1>"));
+
+        ForwardMatcher forward = ForwardPattern.compile("id=(\\d)").matcher(text, 6, 16);
+        assertTrue(forward.find());
+        assertEquals(6, forward.start());
+        assertTrue(forward.find());
+        assertEquals(12, forward.start());
+        assertFalse(forward.find());
+        forward.reset();
+        assertTrue(forward.find());
+        assertEquals(6, forward.start());
+        assertEquals("id=0; <1>; <2>; id=3", forward.replaceAll("<$1>"));
+        assertEquals("id=0; <1>; id=2; id=3", forward.replaceFirst("<$1>"));
+
+        forward.reset(text);
+        assertEquals(0, forward.regionStart());
+        forward.reset();
+        assertEquals(text.length(), forward.regionEnd());
+    }
+
+    @Test
+    public void test_matchResult() throws Exception {
+        String text = "a=1; bb=2; c; dd=4";
+        ReverseMatcher matcher = ReversePattern.compile("(\\w+)(?:=(\\d))?;?").matcher(text);
+        assertFalse(matcher.toMatchResult().groupCount() > 0);
+        try {
+            matcher.toMatchResult().start();
+            fail("expected IllegalStateException");
+        } catch (IllegalStateException ignored) {
+        }
+
+        MatchResult[] results = new MatchResult[4];
+        for (int i = 0; i < results.length; i++) {
+            assertTrue(matcher.find());
+            results[i] = matcher.toMatchResult();
+            assertEquals(matcher.start(), results[i].start());
+            assertEquals(matcher.end(), results[i].end());
+            for (int g = 0; g <= matcher.groupCount(); g++) {
+                assertEquals(matcher.start(g), results[i].start(g));
+                assertEquals(matcher.end(g), results[i].end(g));
+                assertEquals(matcher.group(g), results[i].group(g));
+            }
+        }
+
+        // results do not change with the matcher
+        matcher.reset("other");
+        assertEquals("dd", results[0].group(1));
+        assertEquals("4", results[0].group(2));
+        assertEquals("c", results[1].group(1));
+        assertEquals(null, results[1].group(2));
+        assertEquals(-1, results[1].start(2));
+        assertEquals(8, results[2].start(2));
+        assertEquals("a=1;", results[3].group());
+        assertEquals(2, results[3].groupCount());
+
+        ReverseMatcher range = ReversePattern.compile("(\\w+)=(\\d)").matcher(text, 5, 10);
+        assertTrue(range.find());
+        MatchResult result = range.toMatchResult();
+        assertEquals(5, result.start());
+        assertEquals("bb", result.group(1));
+
+        ForwardMatcher forward = ForwardPattern.compile("(\\w+)=(\\d)").matcher(text);
+        assertTrue(forward.find());
+        result = forward.toMatchResult();
+        assertTrue(result instanceof RegExMatchResult);
+        assertTrue(forward.find());
+        assertEquals("a", result.group(1));
+        assertEquals(2, result.start(2));
+        assertEquals("bb", forward.toMatchResult().group(1));
+
+        ReverseMatcher single = ReversePattern.compile("(x)?(?:\\w)").matcher("ab");
+        assertTrue(single.find());
+        result = single.toMatchResult();
+        assertEquals(1, result.groupCount());
+        assertEquals("b", result.group());
+        assertEquals(-1, result.start(1));
+        assertNull(result.group(1));
+        try {
+            result.start(2);
+            fail("expected IndexOutOfBoundsException");
+        } catch (IndexOutOfBoundsException ignored) {
+        }
+
+        ReverseMatcher none = ReversePattern.compile("\\w").matcher("ab");
+        assertTrue(none.find());
+        result = none.toMatchResult();
+        assertEquals(0, result.groupCount());
+        assertEquals(1, result.start(0));
+        assertEquals("b", result.group(0));
+    }
+
+    @Test
+    public void test_matchResultAllocation() throws Exception {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            sb.append("id=").append(i).append("; ");
+        }
+        String text = sb.toString();
+        ReverseMatcher matcher = ReversePattern.compile("id=(\\d+)").matcher(text);
+        MatchResult[] results = new MatchResult[1000];
+
+        long allocated = allocatedBytes(() -> {
+            matcher.reset();
+            int count = 0;
+            while (matcher.find()) {
+                results[count++] = matcher.toMatchResult();
+            }
+            assertEquals(results.length, count);
+        });
+
+        assertEquals("999", results[0].group(1));
+        // a result of one group is a single object of less than 48 bytes, a bounds array would add at least 24
+        assertTrue("allocated " + allocated + " bytes for " + results.length + " results", allocated < 48 * results.length);
+    }
+
+    @Test
+    public void test_groupView() throws Exception {
+        StringBuilder text = new StringBuilder("a=1; bb=22; c; dd=4");
+        CharSequence[] inputs = { text.toString(), text, ReversedCharSequence.of(text.toString()), ReversedCharSequence.ofSegments("a=1; b", "b=22; c; dd=4"), };
+
+        for (CharSequence input : inputs) {
+            ReverseMatcher matcher = new ReverseMatcher(ReversePattern.compile("(?<name>\\w+)(?:=(\\d+))?;"), input);
+            assertTrue(matcher.find());
+            assertEquals("c", matcher.groupView(1).toString());
+            assertEquals(null, matcher.groupView(2));
+            assertTrue(matcher.find());
+
+            CharSequence view = matcher.groupView(0);
+            assertEquals("bb=22;", view.toString());
+            assertEquals(6, view.length());
+            assertEquals('=', view.charAt(2));
+            assertEquals("=2", view.subSequence(2, 4).toString());
+            assertEquals("22", matcher.groupView(2).toString());
+            assertEquals("bb", matcher.groupView("name").toString());
+            assertEquals(matcher.group(), matcher.groupView(0).toString());
+            assertEquals(matcher.group(2), matcher.groupView(2).toString());
+        }
+
+        ForwardMatcher forward = ForwardPattern.compile("(?<name>\\w+)(?:=(\\d+))?;").matcher(text);
+        assertTrue(forward.find());
+        assertEquals("1", forward.groupView(2).toString());
+        assertEquals("a", forward.groupView("name").toString());
+        assertTrue(forward.find());
+        assertTrue(forward.find());
+        assertEquals(null, forward.groupView(2));
+    }
+
+    @Test
+    public void test_results() throws Exception {
+        String text = "a=1; bb=22; c; dd=4";
+        ReverseMatcher matcher = ReversePattern.compile("(\\w+)(?:=(\\d+))?;?").matcher(text);
+
+        assertEquals(Arrays.asList("dd=4", "c;", "bb=22;", "a=1;"), matcher.results().map(MatchResult::group).collect(Collectors.toList()));
+        assertEquals(0, matcher.results().count());
+
+        // short-circuit stops finding, the matcher continues after the last result
+        matcher.reset();
+        assertEquals(Arrays.asList(15, 12), matcher.results().limit(2).map(MatchResult::start).collect(Collectors.toList()));
+        assertTrue(matcher.find());
+        assertEquals("bb", matcher.group(1));
+
+        matcher.reset();
+        List<MatchResult> results = matcher.results().filter(result -> result.group(2) != null).collect(Collectors.toList());
+        assertEquals(3, results.size());
+        assertTrue(results.get(0) instanceof RegExMatchResult);
+        assertEquals("4", results.get(0).group(2));
+        assertEquals("22", results.get(1).group(2));
+        assertEquals(2, results.get(2).start(2));
+
+        Pattern pattern = Pattern.compile("(\\w+)(?:=(\\d+))?;?");
+        ForwardMatcher forward = new ForwardMatcher(pattern.matcher(text), text);
+        assertEquals(pattern.matcher(text).results().map(result -> result.start() + "-" + result.end() + ":" + result.group(2)).collect(Collectors.toList()),
+                forward.results().map(result -> result.start() + "-" + result.end() + ":" + result.group(2)).collect(Collectors.toList()));
+    }
+
+    @Test
+    public void test_forEachMatch() throws Exception {
+        String text = "a=1; bb=22; c; dd=4";
+        ReverseMatcher matcher = ReversePattern.compile("(\\w+)(?:=(\\d+))?;?").matcher(text);
+        List<String> visited = new ArrayList<>();
+        MatchCursor[] cursors = new MatchCursor[2];
+
+        int count = matcher.forEachMatch(match -> {
+            visited.add(match.start() + "-" + match.end() + " " + match.start(1) + "-" + match.end(1) + " " + match.start(2) + " " + match.groupView(1));
+            if (cursors[0] == null) cursors[0] = match;
+            cursors[1] = match;
+            return true;
+        });
+
+        assertEquals(4, count);
+        assertEquals(Arrays.asList("15-19 15-17 18 dd", "12-14 12-13 -1 c", "5-11 5-7 8 bb", "0-4 0-1 2 a"), visited);
+        assertSame(cursors[0], cursors[1]);
+        assertEquals(2, cursors[0].groupCount());
+
+        matcher.reset();
+        // the match which stops the visit is counted
+        assertEquals(3, matcher.forEachMatch(match -> match.start() > 10));
+        assertEquals(5, matcher.start());
+        assertTrue(matcher.find());
+        assertEquals(0, matcher.start());
+
+        ForwardMatcher forward = ForwardPattern.compile("(\\w+)(?:=(\\d+))?;?").matcher(text);
+        visited.clear();
+        assertEquals(4, forward.forEachMatch(match -> visited.add(match.start(2) + " " + match.groupView(1))));
+        assertEquals(Arrays.asList("2 a", "8 bb", "-1 c", "18 dd"), visited);
+    }
+
+    @Test
+    public void test_forEachMatchAllocation() throws Exception {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 10000; i++) {
+            sb.append("id=").append(i).append("; ");
+        }
+        String text = sb.toString();
+        ReverseMatcher matcher = ReversePattern.compile("id=(\\d+)").matcher(text);
+        long[] sum = new long[1];
+        MatchVisitor visitor = match -> {
+            sum[0] += match.end(1) - match.start(1) + match.start();
+            return true;
+        };
+
+        long allocated = allocatedBytes(() -> assertEquals(10000, matcher.reset().forEachMatch(visitor)));
+
+        assertTrue(sum[0] > 0);
+        // one object per match would be at least 16 bytes
+        assertTrue("allocated " + allocated + " bytes for 10000 matches", allocated < 10000);
+    }
+
+    @Test
+    public void test_replace() throws Exception {
+        String text = "a=1; bb=22; c; dd=4 \uD83D\uDE00=5";
+        String regex = "(?<name>[\\w\\x{1F600}]+)=(\\d+)";
+        ReversePattern regEx = ReversePattern.compile(regex);
+        String[] replacements = { "$2=$1", "${name}", "\\$1[$0]", "", "x$10", "\uD83D\uDE01$2", };
+
+        for (String replacement : replacements) {
+            String expected = text.replaceAll(regex, replacement);
+            ReverseMatcher matcher = regEx.matcher(text);
+            assertEquals(replacement, expected, matcher.replaceAll(replacement));
+            assertEquals(replacement, "> " + expected, matcher.replaceAll(replacement, new StringBuilder("> ")).toString());
+            assertEquals(replacement, expected, matcher.replaceAll(replacement, new StringWriter()).toString());
+
+            // first match found is the last in the text
+            Matcher last = Pattern.compile(regex).matcher(text);
+            int lastStart = -1;
+            int lastEnd = -1;
+            while (last.find()) {
+                lastStart = last.start();
+                lastEnd = last.end();
+            }
+            String lastReplaced = text.substring(0, lastStart) + text.substring(lastStart, lastEnd).replaceFirst(regex, replacement) + text.substring(lastEnd);
+            assertEquals(replacement, lastReplaced, matcher.replaceFirst(replacement));
+            assertEquals(replacement, lastReplaced, matcher.replaceFirst(replacement, new StringWriter()).toString());
+
+            // step by step output is reversed
+            StringBuilder sb = new StringBuilder();
+            matcher.reset();
+            while (matcher.find()) {
+                matcher.appendReplacement(sb, replacement);
+            }
+            assertEquals(replacement, expected, ReverseMatcher.reversedString(matcher.appendTail(sb)));
+
+            StringBuffer buffer = new StringBuffer();
+            matcher.reset();
+            while (matcher.find()) {
+                matcher.appendReplacement(buffer, replacement);
+            }
+            assertEquals(replacement, expected, ReverseMatcher.reversedString(matcher.appendTail(buffer)));
+
+            ForwardMatcher forward = ForwardPattern.compile(regex).matcher(text);
+            assertEquals(replacement, expected, forward.replaceAll(replacement, new StringBuilder()).toString());
+            assertEquals(replacement, expected, forward.replaceAll(replacement, new StringWriter()).toString());
+            assertEquals(replacement, text.replaceFirst(regex, replacement), forward.replaceFirst(replacement, new StringWriter()).toString());
+        }
+
+        // text outside the range of a range matcher is unchanged
+        assertEquals(text, regEx.matcher(text, 5, 13).replaceAll("$0"));
+        assertEquals("a=1; 22=bb; c; dd=4 \uD83D\uDE00=5", regEx.matcher(text, 5, 13).replaceAll("$2=$1"));
+        assertEquals(text, regEx.matcher(text, 12, 17).replaceAll("$2=$1"));
+
+        String[] invalid = { "$", "\\", "${}", "${name", "${other}", "$x", };
+        for (String replacement : invalid) {
+            try {
+                regEx.matcher(text).replaceAll(replacement);
+                fail("expected IllegalArgumentException for " + replacement);
+            } catch (IllegalArgumentException ignored) {
+            }
+        }
+
+        try {
+            regEx.matcher(text).replaceAll("$3");
+            fail("expected IndexOutOfBoundsException");
+        } catch (IndexOutOfBoundsException ignored) {
+        }
+    }
+
+    @Test
+    public void test_replaceLarge() throws Exception {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 20000; i++) {
+            sb.append("id=").append(i).append("; ");
+        }
+        String large = sb.toString();
+        String small = "id=1; id=2";
+        String regex = "id=(\\d+)";
+        ReverseMatcher matcher = ReversePattern.compile(regex).matcher(large);
+        Pattern pattern = Pattern.compile(regex);
+
+        // buffers grown for a large input are dropped after use and grown again when needed
+        assertEquals(pattern.matcher(large).replaceAll("<$1>"), matcher.replaceAll("<$1>"));
+        matcher.reset(small);
+        assertEquals("<1>; <2>", matcher.replaceAll("<$1>"));
+        matcher.reset(large);
+        assertEquals(pattern.matcher(large).replaceAll("$1=$0"), matcher.replaceAll("$1=$0"));
+        // first match of a reverse search is the last one in the text
+        assertEquals(large.substring(0, large.lastIndexOf("id=")) + "19999; ", matcher.replaceFirst("$1"));
+
+        String longGroup = "id=" + large.replaceAll("\\D", "");
+        assertEquals(pattern.matcher(longGroup).replaceAll("$1$1"), matcher.reset(longGroup).replaceAll("$1$1"));
+        matcher.reset(longGroup);
+        assertTrue(matcher.find());
+        StringBuilder reversed = new StringBuilder();
+        matcher.appendReplacement(reversed, "$1");
+        assertEquals(new StringBuilder(longGroup.substring(3)).reverse().toString(), reversed.toString());
+    }
 }
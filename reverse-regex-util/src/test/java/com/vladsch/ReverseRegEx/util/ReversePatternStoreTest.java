@@ -0,0 +1,125 @@
+package com.vladsch.ReverseRegEx.util;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.*;
+
+public class ReversePatternStoreTest {
+    private static final String[] PATTERNS = {
+            "\\b(id)\\b\\s*=\\s*(.+?)\\s*;$",
+            "(1(?<b>b)\\2)(c)\\3\\k<b>\\1",
+            "([a-zA-z_][a-zA-z_0-9]*)\\s*=\\s*\\1\\.([a-zA-z_][a-zA-z_0-9]*)\\(\\)",
+    };
+
+    private static void assertSamePattern(ReversePattern expected, ReversePattern actual) {
+        assertEquals(expected.originalPattern(), actual.originalPattern());
+        assertEquals(expected.pattern(), actual.pattern());
+        assertEquals(expected.flags(), actual.flags());
+        assertEquals(expected.getCapturingGroupCount(), actual.getCapturingGroupCount());
+        for (int i = 0; i < expected.getCapturingGroupCount(); i++) {
+            assertEquals(expected.getReversedGroupIndex(i), actual.getReversedGroupIndex(i));
+        }
+        assertEquals(expected.namedGroups(), actual.namedGroups());
+    }
+
+    @Test
+    public void test_saveLoad() throws Exception {
+        Path path = Files.createTempDirectory("reverse-regex").resolve("patterns.bin");
+
+        ReversePatternStore store = ReversePatternStore.open(path);
+        assertFalse(store.isStale());
+        assertFalse(store.isModified());
+
+        for (String pattern : PATTERNS) {
+            store.compile(pattern);
+        }
+        store.compile(PATTERNS[0], Pattern.CASE_INSENSITIVE);
+        assertSame(store.compile(PATTERNS[1]), store.compile(PATTERNS[1]));
+        assertTrue(store.isModified());
+        assertEquals(4, store.size());
+
+        store.save();
+        assertFalse(store.isModified());
+        assertTrue(Files.exists(path));
+
+        ReversePatternStore loaded = ReversePatternStore.open(path);
+        assertFalse(loaded.isStale());
+        assertEquals(4, loaded.size());
+        for (String pattern : PATTERNS) {
+            assertSamePattern(ReversePattern.compile(pattern), loaded.compile(pattern));
+        }
+        assertSamePattern(ReversePattern.compile(PATTERNS[0], Pattern.CASE_INSENSITIVE), loaded.compile(PATTERNS[0], Pattern.CASE_INSENSITIVE));
+        assertFalse(loaded.isModified());
+
+        // add to existing, keeping loaded entries
+        loaded.compile("a(b)c");
+        assertTrue(loaded.isModified());
+        loaded.save();
+        loaded.compile("d(e)f");
+        loaded.save();
+
+        ReversePatternStore reloaded = ReversePatternStore.open(path);
+        assertEquals(6, reloaded.size());
+        assertSamePattern(ReversePattern.compile("a(b)c"), reloaded.compile("a(b)c"));
+        assertSamePattern(ReversePattern.compile(PATTERNS[2]), reloaded.compile(PATTERNS[2]));
+        assertFalse(reloaded.isModified());
+    }
+
+    @Test
+    public void test_stale() throws Exception {
+        Path path = Files.createTempDirectory("reverse-regex").resolve("patterns.bin");
+
+        ReversePatternStore store = ReversePatternStore.open(path);
+        store.compile(PATTERNS[0]);
+        store.save();
+
+        // corrupt last byte of entries
+        byte[] bytes = Files.readAllBytes(path);
+        bytes[bytes.length - 1] ^= 1;
+        Files.write(path, bytes);
+
+        ReversePatternStore corrupted = ReversePatternStore.open(path);
+        assertTrue(corrupted.isStale());
+        assertTrue(corrupted.isModified());
+        assertEquals(0, corrupted.size());
+        assertSamePattern(ReversePattern.compile(PATTERNS[0]), corrupted.compile(PATTERNS[0]));
+
+        corrupted.save();
+        assertFalse(corrupted.isStale());
+
+        ReversePatternStore rebuilt = ReversePatternStore.open(path);
+        assertFalse(rebuilt.isStale());
+        assertEquals(1, rebuilt.size());
+    }
+
+    @Test
+    public void test_staleReversalVersion() throws Exception {
+        Path path = Files.createTempDirectory("reverse-regex").resolve("patterns.bin");
+
+        ReversePatternStore store = ReversePatternStore.open(path);
+        store.compile(PATTERNS[0]);
+        store.save();
+
+        // file written by a library which reversed patterns differently, entries and checksum are valid
+        ByteBuffer bytes = ByteBuffer.wrap(Files.readAllBytes(path));
+        assertEquals(ReversePatternParser.REVERSAL_VERSION, bytes.getInt(8));
+        bytes.putInt(8, ReversePatternParser.REVERSAL_VERSION - 1);
+        Files.write(path, bytes.array());
+
+        ReversePatternStore older = ReversePatternStore.open(path);
+        assertTrue(older.isStale());
+        assertEquals(0, older.size());
+        assertSamePattern(ReversePattern.compile(PATTERNS[0]), older.compile(PATTERNS[0]));
+
+        older.save();
+        ByteBuffer rebuilt = ByteBuffer.wrap(Files.readAllBytes(path));
+        assertEquals(ReversePatternParser.REVERSAL_VERSION, rebuilt.getInt(8));
+        assertFalse(ReversePatternStore.open(path).isStale());
+        assertEquals(1, ReversePatternStore.open(path).size());
+    }
+}
@@ -4,6 +4,8 @@ import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
 
+import java.util.concurrent.CountDownLatch;
+import java.util.regex.Pattern;
 import java.util.regex.PatternSyntaxException;
 
 import static org.junit.Assert.*;
@@ -296,6 +298,16 @@ public class ReversePatternTest {
         assertEquals("[\\Qabc\\E]",                  reversed("[\\Qabc\\E]"));
         assertEquals("[a-z]",                        reversed("[a-z]"));
         assertEquals("[^a-z]",                       reversed("[^a-z]"));
+        assertEquals("[a&b]",                        reversed("[a&b]"));
+        assertEquals("[&a]",                         reversed("[&a]"));
+        // @formatter:on
+    }
+
+    @Test
+    public void test_supplementaryCodePoints() throws Exception {
+        // @formatter:off
+        assertEquals("b\ud83d\ude00a",             reversed("a\ud83d\ude00b"));
+        assertEquals("c\ud83d\ude00\ud83d\ude01a", reversed("a\ud83d\ude01\ud83d\ude00c"));
         // @formatter:on
     }
 
@@ -321,5 +333,101 @@ public class ReversePatternTest {
         // @formatter:on
     }
 
+    @Test
+    public void test_parserReuse() throws Exception {
+        // many named back references, grows the parser buffers
+        StringBuilder sb = new StringBuilder("(?<g>a)");
+        for (int i = 0; i < 12; i++) {
+            sb.append("\\k<g>");
+        }
+        ReversePattern large = ReversePattern.compile(sb.toString());
+        assertEquals(2, large.getCapturingGroupCount());
+
+        try {
+            ReversePattern.compile("(?<x>a)(b");
+            fail("expected PatternSyntaxException");
+        } catch (PatternSyntaxException ignored) {
+        }
+
+        // nothing left over from the previous patterns
+        ReversePattern regEx = ReversePattern.compile("(?<x>b)(a)\\1");
+        assertEquals("(?<x>b)(a)\\1", regEx.pattern());
+        assertEquals(3, regEx.getCapturingGroupCount());
+        assertEquals(java.util.Collections.singletonMap("x", 1), regEx.namedGroups());
+        assertEquals(sb.toString(), large.originalPattern());
+        assertEquals(large.pattern(), ReversePattern.compile(sb.toString()).pattern());
+    }
+
+    @Test
+    public void test_compiledShared() throws Exception {
+        ReversePattern regEx = ReversePattern.compile("(a(b))(c)\\3\\2\\1");
+        int threads = 8;
+        Pattern[] compiled = new Pattern[threads];
+        CountDownLatch start = new CountDownLatch(1);
+        Thread[] workers = new Thread[threads];
+
+        for (int i = 0; i < threads; i++) {
+            int index = i;
+            workers[i] = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException ignored) {
+                }
+                compiled[index] = regEx.compiled();
+            });
+            workers[i].start();
+        }
+
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+
+        for (Pattern pattern : compiled) {
+            assertSame(compiled[0], pattern);
+        }
+        assertEquals(regEx.pattern(), compiled[0].pattern());
+    }
+
+    @Test
+    public void test_compileEager() throws Exception {
+        ReversePattern regEx = ReversePattern.compileEager("ab(c)", Pattern.CASE_INSENSITIVE);
+        assertEquals("(c)ba", regEx.pattern());
+        assertSame(regEx.compiled(), regEx.compiled());
+        assertEquals(Pattern.CASE_INSENSITIVE, regEx.compiled().flags());
+    }
+
+    @Test
+    public void test_precompiled() throws Exception {
+        ReversePattern regEx = ReversePattern.compile("(a)(?<B>b)(c)\\3\\k<B>\\1");
+        assertEquals(2, regEx.getOriginalNamedGroupIndex("B"));
+        assertEquals(-1, regEx.getOriginalNamedGroupIndex("C"));
+        assertEquals(java.util.Collections.singletonMap("B", 2), regEx.namedGroups());
+
+        int[] originalToReversed = new int[regEx.getCapturingGroupCount() - 1];
+        for (int i = 0; i < originalToReversed.length; i++) {
+            originalToReversed[i] = regEx.getReversedGroupIndex(i + 1);
+        }
 
+        ReversePattern precompiled = ReversePattern.precompiled(regEx.originalPattern(), regEx.flags(), regEx.pattern(), originalToReversed, new String[] { "B" }, new int[] { 2 });
+        assertEquals(regEx.pattern(), precompiled.pattern());
+        assertEquals(regEx.getCapturingGroupCount(), precompiled.getCapturingGroupCount());
+        for (int i = 0; i < regEx.getCapturingGroupCount(); i++) {
+            assertEquals(regEx.getReversedGroupIndex(i), precompiled.getReversedGroupIndex(i));
+            assertEquals(regEx.getOriginalGroupIndex(i), precompiled.getOriginalGroupIndex(i));
+        }
+        assertEquals(regEx.getReversedNamedGroupIndex("B"), precompiled.getReversedNamedGroupIndex("B"));
+        assertEquals(regEx.namedGroups(), precompiled.namedGroups());
+
+        ReverseMatcher matcher = precompiled.matcher("xabccba");
+        assertTrue(matcher.find());
+        assertEquals("abccba", matcher.group());
+        assertEquals(5, matcher.start(2));
+
+        try {
+            ReversePattern.precompiled(regEx.originalPattern(), regEx.flags(), regEx.pattern(), new int[] { 1, 1, 2 }, new String[0], new int[0]);
+            fail("expected IllegalArgumentException");
+        } catch (IllegalArgumentException ignored) {
+        }
+    }
 }
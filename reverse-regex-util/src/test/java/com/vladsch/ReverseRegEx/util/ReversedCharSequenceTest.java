@@ -23,7 +23,20 @@ package com.vladsch.ReverseRegEx.util;
 
 import org.junit.Test;
 
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collections;
+
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
 
 @SuppressWarnings("SpellCheckingInspection")
 public class ReversedCharSequenceTest {
@@ -83,4 +96,296 @@ public class ReversedCharSequenceTest {
             }
         }
     }
+
+    private static void assertReversed(String message, String reved, ReversedCharSequence test) {
+        assertEquals(message, reved.length(), test.length());
+        assertEquals(message, reved, test.toString());
+        assertEquals(message, reved.hashCode(), test.hashCode());
+        for (int i = 0; i < reved.length(); i++) {
+            for (int j = i; j <= reved.length(); j++) {
+                assertEquals(message + " subSequence(" + i + "," + j + ")", reved.substring(i, j), test.subSequence(i, j).toString());
+            }
+        }
+
+        for (int i = 0; i < reved.length(); i++) {
+            for (int j = i; j <= reved.length(); j++) {
+                char[] chars = new char[j - i + 2];
+                test.getChars(i, j, chars, 1);
+                assertEquals(message + " getChars(" + i + "," + j + ")", reved.substring(i, j), new String(chars, 1, j - i));
+                assertEquals(message + " reversedString(" + i + "," + j + ")", new StringBuilder(reved.substring(i, j)).reverse().toString(), test.reversedString(i, j));
+            }
+        }
+
+        try {
+            test.getChars(0, reved.length() + 1, new char[reved.length() + 1], 0);
+            fail(message + " getChars(0, length + 1)");
+        } catch (IndexOutOfBoundsException ignored) {
+        }
+
+        try {
+            test.getChars(0, reved.length(), new char[reved.length()], 1);
+            fail(message + " getChars(0, length) to dst at 1");
+        } catch (IndexOutOfBoundsException ignored) {
+        }
+
+        try {
+            test.charAt(-1);
+            fail(message + " charAt(-1)");
+        } catch (IndexOutOfBoundsException ignored) {
+        }
+
+        try {
+            test.charAt(reved.length());
+            fail(message + " charAt(length)");
+        } catch (IndexOutOfBoundsException ignored) {
+        }
+    }
+
+    @Test
+    public void test_inputs() throws Exception {
+        String orig = "abcdef";
+        String reved = "fedcba";
+
+        assertReversed("String", reved, ReversedCharSequence.of(orig));
+        assertReversed("String range", "edc", ReversedCharSequence.of(orig, 2, 5));
+        assertReversed("char[]", reved, ReversedCharSequence.of(orig.toCharArray()));
+        assertReversed("char[] range", "edc", ReversedCharSequence.of(orig.toCharArray(), 2, 5));
+        assertReversed("CharBuffer", reved, ReversedCharSequence.of(CharBuffer.wrap(orig.toCharArray())));
+        assertReversed("StringBuilder", reved, ReversedCharSequence.of(new StringBuilder(orig)));
+        assertReversed("read only CharBuffer", reved, ReversedCharSequence.of(CharBuffer.wrap(orig.toCharArray()).asReadOnlyBuffer()));
+        assertReversed("reversed", orig, ReversedCharSequence.of(ReversedCharSequence.of(orig)));
+    }
+
+    @Test
+    public void test_charBufferPosition() throws Exception {
+        CharBuffer buffer = CharBuffer.wrap("..abcdef..".toCharArray());
+        buffer.position(1);
+        buffer = buffer.slice();
+        buffer.position(1).limit(7);
+
+        ReversedCharSequence test = ReversedCharSequence.of(buffer);
+        assertReversed("CharBuffer slice", "fedcba", test);
+        assertEquals(buffer, test.getReversedChars());
+
+        // indices map to the CharBuffer, relative to its position
+        assertEquals(0, test.mapBoundary(6));
+        assertEquals(2, test.mapBoundary(4));
+        assertEquals("dcb", ReversedCharSequence.of(buffer, 1, 4).toString());
+    }
+
+    @Test
+    public void test_charArrayReversedChars() throws Exception {
+        char[] chars = "abcdef".toCharArray();
+        ReversedCharSequence test = ReversedCharSequence.of(chars, 1, 3);
+        assertEquals("cb", test.toString());
+        assertEquals("abcdef", test.getReversedChars().toString());
+
+        // view, not a copy
+        chars[2] = 'x';
+        assertEquals("xb", test.toString());
+    }
+
+    @Test
+    public void test_outOfBounds() throws Exception {
+        try {
+            ReversedCharSequence.of("abc", 1, 4);
+            fail("String");
+        } catch (IndexOutOfBoundsException ignored) {
+        }
+
+        try {
+            ReversedCharSequence.of("abc".toCharArray(), 2, 1);
+            fail("char[]");
+        } catch (IndexOutOfBoundsException ignored) {
+        }
+
+        try {
+            CharBuffer buffer = CharBuffer.wrap("abcdef".toCharArray());
+            buffer.position(3);
+            ReversedCharSequence.of(buffer, 0, 4);
+            fail("CharBuffer");
+        } catch (IndexOutOfBoundsException ignored) {
+        }
+    }
+
+    @Test
+    public void test_latin1() throws Exception {
+        byte[] bytes = "abcd\u00e9f".getBytes(StandardCharsets.ISO_8859_1);
+        assertReversed("heap", "f\u00e9dcba", ReversedCharSequence.ofLatin1(ByteBuffer.wrap(bytes)));
+        assertReversed("heap range", "\u00e9dc", ReversedCharSequence.ofLatin1(ByteBuffer.wrap(bytes), 2, 5));
+
+        ByteBuffer direct = ByteBuffer.allocateDirect(bytes.length + 2);
+        direct.put((byte) '.').put(bytes).put((byte) '.').flip().position(1).limit(bytes.length + 1);
+        ReversedCharSequence test = ReversedCharSequence.ofLatin1(direct);
+        direct.position(0).limit(2);
+
+        assertReversed("direct", "f\u00e9dcba", test);
+        assertEquals("abcd\u00e9f", test.getReversedChars().toString());
+        assertEquals("bcd", test.getReversedChars().subSequence(1, 4).toString());
+        assertEquals(2, test.mapBoundary(4));
+    }
+
+    @Test
+    public void test_latin1Mapped() throws IOException {
+        Path file = Files.createTempFile("reversed", ".log");
+        try {
+            String text = "id = abc;\nother\nid = def;\ntail\n";
+            Files.write(file, text.getBytes(StandardCharsets.ISO_8859_1));
+
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                ReverseMatcher matcher = new ReverseMatcher(ReversePattern.compile("(?m)^id = (\\w+);$"), ReversedCharSequence.ofLatin1(mapped));
+
+                assertEquals(true, matcher.find());
+                assertEquals("def", matcher.group(1));
+                assertEquals(text.indexOf("def"), matcher.start(1));
+                assertEquals(text.indexOf("id = def"), matcher.start());
+                assertEquals(true, matcher.find());
+                assertEquals("abc", matcher.group(1));
+                assertEquals(0, matcher.start());
+                assertEquals(false, matcher.find());
+            }
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    public void test_segments() throws Exception {
+        String reved = "fedcba";
+
+        assertReversed("segments", reved, ReversedCharSequence.ofSegments("ab", "", "c", new StringBuilder("de"), "f"));
+        assertReversed("one segment", reved, ReversedCharSequence.ofSegments("abcdef"));
+        assertReversed("char segments", reved, ReversedCharSequence.ofSegments(Arrays.asList("a", "b", "c", "d", "e", "f")));
+        assertReversed("empty segments", "", ReversedCharSequence.ofSegments("", ""));
+        assertReversed("no segments", "", ReversedCharSequence.ofSegments(Collections.emptyList()));
+
+        ReversedCharSequence test = ReversedCharSequence.ofSegments("ab", "cd", "ef");
+        assertEquals("abcdef", test.getReversedChars().toString());
+        assertEquals("cde", test.reversedString(1, 4));
+
+        // random order access, not only from the last segment or its neighbours
+        int[] indices = { 5, 0, 3, 1, 4, 2, 5, 2 };
+        for (int index : indices) {
+            assertEquals("charAt(" + index + ")", reved.charAt(index), test.charAt(index));
+        }
+    }
+
+    @Test
+    public void test_gapBuffer() throws Exception {
+        char[] buffer = "abc____def".toCharArray();
+        String reved = "fedcba";
+
+        assertReversed("gap", reved, ReversedCharSequence.ofGapBuffer(buffer, 3, 7));
+        assertReversed("gap at start", reved, ReversedCharSequence.ofGapBuffer("____abcdef".toCharArray(), 0, 4));
+        assertReversed("gap at end", reved, ReversedCharSequence.ofGapBuffer("abcdef__".toCharArray(), 6, 8));
+        assertReversed("no gap", reved, ReversedCharSequence.ofGapBuffer("abcdef".toCharArray(), 2, 2));
+        assertEquals("abcdef", ReversedCharSequence.ofGapBuffer(buffer, 3, 7).getReversedChars().toString());
+
+        try {
+            ReversedCharSequence.ofGapBuffer(buffer, 3, 11);
+            fail("gap past end");
+        } catch (IndexOutOfBoundsException ignored) {
+        }
+    }
+
+    @Test
+    public void test_segmentsMatcher() throws Exception {
+        ReversePattern regEx = ReversePattern.compile("(?m)^id = (\\w+);$");
+        String text = "id = abc;\nother\nid = def;\ntail\n";
+
+        CharSequence[] inputs = {
+                ReversedCharSequence.ofSegments("id = abc;\n", "other\n", "id = d", "ef;\n", "tail\n"),
+                ReversedCharSequence.ofGapBuffer("id = abc;\nother\nid = d______ef;\ntail\n".toCharArray(), 22, 28),
+        };
+
+        for (CharSequence input : inputs) {
+            ReverseMatcher matcher = new ReverseMatcher(regEx, input);
+            assertEquals(true, matcher.find());
+            assertEquals("def", matcher.group(1));
+            assertEquals(text.indexOf("def"), matcher.start(1));
+            assertEquals(true, matcher.find());
+            assertEquals("abc", matcher.group(1));
+            assertEquals(false, matcher.find());
+        }
+    }
+
+    @Test
+    public void test_codePoints() throws Exception {
+        String text = "a\uD83D\uDE00b\uD83D\uDE01";
+        String expected = "\uD83D\uDE01b\uD83D\uDE00a";
+
+        for (ReversedCharSequence reversed : codePointViews(text)) {
+            String message = reversed.getClass().getSimpleName();
+            assertEquals(message, expected, reversed.toString());
+            assertEquals(message, expected.hashCode(), reversed.hashCode());
+            assertEquals(message, true, reversed.equals(expected));
+            assertEquals(message, text, ReverseMatcher.reversedString(reversed));
+            assertEquals(message, "\uD83D\uDE00b", reversed.reversedString(2, 5));
+            assertEquals(message, text, reversed.getReversedChars().toString());
+
+            char[] chars = new char[4];
+            reversed.getChars(1, 5, chars, 0);
+            assertEquals(message, "\uDE01b\uD83D\uDE00", new String(chars));
+
+            // chars of a pair map to the index they were read from, boundaries are the same as for chars
+            int[] indices = { 4, 5, 3, 1, 2, 0 };
+            for (int i = 0; i < indices.length; i++) {
+                assertEquals(message, text.charAt(indices[i]), reversed.charAt(i));
+                assertEquals(message, indices[i], reversed.mapIndex(i));
+                assertEquals(message, text.length() - i, reversed.mapBoundary(i));
+            }
+
+            assertEquals(message, "\uD83D\uDE00a", reversed.subSequence(3, 6).toString());
+            assertEquals(message, "b", reversed.subSequence(2, 3).toString());
+            // a pair split by the range is reversed as single chars
+            assertEquals(message, "\uD83Db", reversed.subSequence(1, 3).toString());
+        }
+
+        assertEquals(expected, ReverseMatcher.reversedString(text));
+        assertEquals("b\uDE00", ReversedCharSequence.of(text, 2, 4).toString());
+        assertEquals("cba", ReversedCharSequence.of("abc").toString());
+    }
+
+    @Test
+    public void test_codePointMatch() throws Exception {
+        // U+1F600, U+1F600, U+1F601
+        String text = "x\uD83D\uDE00\uD83D\uDE00y\uD83D\uDE01";
+
+        for (ReversedCharSequence reversed : codePointViews(text)) {
+            String message = reversed.getClass().getSimpleName();
+
+            ReverseMatcher matcher = new ReverseMatcher(ReversePattern.compile("\uD83D\uDE00+"), reversed);
+            assertEquals(message, true, matcher.find());
+            assertEquals(message, 1, matcher.start());
+            assertEquals(message, 5, matcher.end());
+            assertEquals(message, false, matcher.find());
+
+            for (String pattern : new String[] { "[\uD83D\uDE00-\uD83D\uDE4F]", "\\p{So}", }) {
+                matcher = new ReverseMatcher(ReversePattern.compile(pattern), reversed);
+                int count = 0;
+                while (matcher.find()) {
+                    assertEquals(message + " " + pattern, 2, matcher.end() - matcher.start());
+                    count++;
+                }
+                assertEquals(message + " " + pattern, 3, count);
+            }
+        }
+    }
+
+    /**
+     * @return reversed views of text, segments and gap split the first surrogate pair at index 2
+     */
+    private static ReversedCharSequence[] codePointViews(String text) {
+        char[] gapBuffer = (text.substring(0, 2) + "___" + text.substring(2)).toCharArray();
+        return new ReversedCharSequence[] {
+                ReversedCharSequence.of(text),
+                ReversedCharSequence.of(text.toCharArray()),
+                ReversedCharSequence.of(CharBuffer.wrap(text)),
+                ReversedCharSequence.of(new StringBuilder(text)),
+                ReversedCharSequence.ofUtf8(ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8))),
+                ReversedCharSequence.ofSegments(text.substring(0, 2), text.substring(2)),
+                ReversedCharSequence.ofGapBuffer(gapBuffer, 2, 5),
+        };
+    }
 }
@@ -0,0 +1,178 @@
+package com.vladsch.ReverseRegEx.util;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class ReversedUtf8SequenceTest {
+    private static final String TEXT = "a\u00e9b\u20acc\ud83d\ude00d\ud83d\ude01\ud83d\ude02e\u00df\u4e2d\u6587 end";
+
+    // reversed sequences keep surrogate pairs in order like StringBuilder.reverse()
+    private static String reverse(String s) {
+        return new StringBuilder(s).reverse().toString();
+    }
+
+    private static ReversedUtf8Sequence utf8(String s, int interval) {
+        return ReversedCharSequence.ofUtf8(ByteBuffer.wrap(s.getBytes(StandardCharsets.UTF_8)), interval);
+    }
+
+    @Test
+    public void test_sequential() throws Exception {
+        for (int interval : new int[] { 2, 3, 4, 256 }) {
+            ReversedUtf8Sequence test = utf8(TEXT, interval);
+            assertEquals(TEXT.length(), test.length());
+            assertEquals(TEXT.length(), test.getCharLength());
+            assertEquals(reverse(TEXT), test.toString());
+            assertEquals(reverse(TEXT).hashCode(), test.hashCode());
+            assertEquals(TEXT, test.getReversedChars().toString());
+        }
+    }
+
+    @Test
+    public void test_randomAccess() throws Exception {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 200; i++) {
+            int end = i % TEXT.length();
+            if (Character.isLowSurrogate(TEXT.charAt(end))) end++;
+            sb.append(TEXT, 0, end);
+        }
+        String text = sb.toString();
+        String reversed = reverse(text);
+
+        Random random = new Random(1);
+        for (int interval : new int[] { 2, 5, 16, 256 }) {
+            ReversedUtf8Sequence test = utf8(text, interval);
+            for (int j = 0; j < 5000; j++) {
+                int index = random.nextInt(text.length());
+                assertEquals("interval " + interval + " charAt(" + index + ")", reversed.charAt(index), test.charAt(index));
+            }
+        }
+    }
+
+    @Test
+    public void test_subSequence() throws Exception {
+        ReversedUtf8Sequence test = utf8(TEXT, 4);
+        int length = TEXT.length();
+        for (int i = 0; i < length; i++) {
+            for (int j = i; j <= length; j++) {
+                // a pair split by the range is reversed as single chars
+                assertEquals("subSequence(" + i + "," + j + ")", reverse(TEXT.substring(length - j, length - i)), test.subSequence(i, j).toString());
+            }
+        }
+    }
+
+    @Test
+    public void test_malformed() throws Exception {
+        byte[] bytes = {
+                'a',
+                (byte) 0x80,                                        // stray continuation
+                (byte) 0xC3,                                        // missing continuation
+                'b',
+                (byte) 0xE2, (byte) 0x82,                           // truncated 3 byte
+                (byte) 0xC0, (byte) 0x80,                           // overlong
+                (byte) 0xED, (byte) 0xA0, (byte) 0x80,              // surrogate
+                (byte) 0xF8,                                        // invalid lead
+                (byte) 0xC3, (byte) 0xA9, (byte) 0xA9,              // extra continuation
+                (byte) 0xF0, (byte) 0x9F, (byte) 0x98, (byte) 0x80, // U+1F600
+                (byte) 0x80, (byte) 0x80, (byte) 0x80, (byte) 0x80, // stray continuations
+                (byte) 0xF0, (byte) 0x9F,                           // truncated at end
+        };
+        String expected = "a\ufffd\ufffdb\ufffd\ufffd\ufffd\ufffd\u00e9\ufffd\ud83d\ude00\ufffd\ufffd\ufffd\ufffd\ufffd";
+
+        for (int interval : new int[] { 2, 3, 256 }) {
+            ReversedUtf8Sequence test = ReversedCharSequence.ofUtf8(ByteBuffer.wrap(bytes), interval);
+            String reversed = reverse(expected);
+            assertEquals(reversed, test.toString());
+
+            // backward, forward and checkpoint access all agree
+            for (int i = expected.length(); i-- > 0; ) {
+                assertEquals("interval " + interval + " charAt(" + i + ")", reversed.charAt(i), test.charAt(i));
+            }
+            for (int i = 0; i < expected.length(); i += 3) {
+                assertEquals("interval " + interval + " charAt(" + i + ")", reversed.charAt(i), utf8Of(bytes, interval).charAt(i));
+            }
+        }
+    }
+
+    private static ReversedUtf8Sequence utf8Of(byte[] bytes, int interval) {
+        return ReversedCharSequence.ofUtf8(ByteBuffer.wrap(bytes), interval);
+    }
+
+    @Test
+    public void test_byteOffset() throws Exception {
+        ReversedUtf8Sequence test = utf8(TEXT, 2);
+        for (int i = 0; i <= TEXT.length(); i++) {
+            int codePointStart = i < TEXT.length() && Character.isLowSurrogate(TEXT.charAt(i)) ? i - 1 : i;
+            assertEquals("getByteOffset(" + i + ")", TEXT.substring(0, codePointStart).getBytes(StandardCharsets.UTF_8).length, test.getByteOffset(i));
+        }
+
+        try {
+            test.getByteOffset(TEXT.length() + 1);
+            fail("getByteOffset(length + 1)");
+        } catch (IndexOutOfBoundsException ignored) {
+        }
+    }
+
+    @Test
+    public void test_bufferPosition() throws Exception {
+        byte[] bytes = ("xx" + TEXT).getBytes(StandardCharsets.UTF_8);
+        ByteBuffer buffer = ByteBuffer.allocateDirect(bytes.length);
+        buffer.put(bytes).flip().position(2);
+
+        ReversedUtf8Sequence test = ReversedCharSequence.ofUtf8(buffer);
+        buffer.position(0);
+        assertEquals(reverse(TEXT), test.toString());
+        assertEquals(TEXT.getBytes(StandardCharsets.UTF_8).length, test.getByteOffset(TEXT.length()));
+    }
+
+    @Test
+    public void test_interval() throws Exception {
+        try {
+            ReversedCharSequence.ofUtf8(ByteBuffer.allocate(0), 1);
+            fail("interval 1");
+        } catch (IllegalArgumentException ignored) {
+        }
+
+        assertEquals(0, ReversedCharSequence.ofUtf8(ByteBuffer.allocate(0)).length());
+    }
+
+    @Test
+    public void test_mappedFile() throws IOException {
+        Path file = Files.createTempFile("reversed", ".log");
+        try {
+            String text = "id = \u00e9t\u00e9;\nother \ud83d\ude00\nid = \u4e2d\u6587;\ntail\n";
+            Files.write(file, text.getBytes(StandardCharsets.UTF_8));
+
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                ReversedUtf8Sequence chars = ReversedCharSequence.ofUtf8(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+                ReverseMatcher matcher = new ReverseMatcher(ReversePattern.compile("(?m)^id = (\\S+);$"), chars);
+
+                assertEquals(true, matcher.find());
+                assertEquals("\u4e2d\u6587", matcher.group(1));
+                int offset = chars.getByteOffset(matcher.start(1));
+                assertEquals(text.substring(0, text.indexOf("\u4e2d")).getBytes(StandardCharsets.UTF_8).length, offset);
+
+                ByteBuffer group = ByteBuffer.allocate(chars.getByteOffset(matcher.end(1)) - offset);
+                channel.read(group, offset);
+                assertEquals("\u4e2d\u6587", new String(group.array(), StandardCharsets.UTF_8));
+
+                assertEquals(true, matcher.find());
+                assertEquals("\u00e9t\u00e9", matcher.group(1));
+                assertEquals(0, chars.getByteOffset(matcher.start()));
+                assertEquals(false, matcher.find());
+            }
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+}
@@ -7,6 +7,14 @@ import org.junit.runners.Suite;
         ReversedCharSequenceTest.class,
         ReversePatternTest.class,
         ReverseMatcherTest.class,
+        PatternCacheTest.class,
+        ReversePatternStoreTest.class,
+        PatternCompileResultsTest.class,
+        GroupMapTest.class,
+        PatternCodecTest.class,
+        ReversedUtf8SequenceTest.class,
+        AdaptiveReversedSequenceTest.class,
+        ReverseChannelSearchTest.class,
 })
 public class UtilsTestSuite {
 }